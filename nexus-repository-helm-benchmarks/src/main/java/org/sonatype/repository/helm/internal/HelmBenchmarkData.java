@@ -0,0 +1,137 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Random;
+
+import org.sonatype.repository.helm.internal.metadata.ChartEntry;
+import org.sonatype.repository.helm.internal.metadata.ChartIndex;
+import org.sonatype.repository.helm.internal.util.YamlParser;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.asList;
+
+/**
+ * Synthetic charts and indexes used by the benchmarks, generated deterministically so runs are comparable.
+ *
+ * @since 1.0.22
+ */
+public final class HelmBenchmarkData
+{
+  /**
+   * Number of versions published for each synthetic chart name.
+   */
+  public static final int VERSIONS_PER_CHART = 10;
+
+  public static final String BASE_URL = "https://charts.example.com/stable/";
+
+  private static final DateTime CREATED = new DateTime(2020, 6, 1, 12, 0, DateTimeZone.UTC);
+
+  private HelmBenchmarkData() {
+    // no instances
+  }
+
+  public static String chartName(final int chart) {
+    return String.format("chart-%05d", chart);
+  }
+
+  public static String chartVersion(final int version) {
+    return String.format("1.%d.0", version);
+  }
+
+  public static String chartYaml(final String name, final String version) {
+    return "apiVersion: v1\n" +
+        "name: " + name + "\n" +
+        "version: " + version + "\n" +
+        "appVersion: 4.0.3\n" +
+        "description: Synthetic chart used to benchmark Helm metadata handling\n" +
+        "home: https://example.com/" + name + "\n" +
+        "icon: https://example.com/" + name + "/icon.png\n" +
+        "keywords:\n- benchmark\n- " + name + "\n" +
+        "maintainers:\n- name: maintainer\n  email: maintainer@example.com\n" +
+        "sources:\n- https://github.com/example/" + name + "\n";
+  }
+
+  /**
+   * Builds a chart archive with {@code templateBytes} of incompressible template content ahead of {@code Chart.yaml},
+   * which is the worst case for a parser that scans the archive looking for the chart metadata.
+   */
+  public static byte[] chartTgz(final String name, final String version, final int templateBytes) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(templateBytes + 4096);
+    try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(out))) {
+      byte[] template = new byte[templateBytes];
+      new Random(templateBytes).nextBytes(template);
+      addEntry(tar, name + "/templates/deployment.yaml", template);
+      addEntry(tar, name + "/Chart.yaml", chartYaml(name, version).getBytes(UTF_8));
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  private static void addEntry(final TarArchiveOutputStream tar, final String path, final byte[] bytes)
+      throws IOException
+  {
+    TarArchiveEntry entry = new TarArchiveEntry(path);
+    entry.setSize(bytes.length);
+    tar.putArchiveEntry(entry);
+    tar.write(bytes);
+    tar.closeArchiveEntry();
+  }
+
+  /**
+   * Builds an index holding {@code entries} chart versions, spread over chart names {@link #VERSIONS_PER_CHART} at a
+   * time, with download urls rooted at {@code baseUrl}.
+   */
+  public static ChartIndex chartIndex(final int entries, final String baseUrl) {
+    ChartIndex index = new ChartIndex();
+    index.setApiVersion("v1");
+    index.setGenerated(CREATED);
+    for (int i = 0; i < entries; i++) {
+      String name = chartName(i / VERSIONS_PER_CHART);
+      String version = chartVersion(i % VERSIONS_PER_CHART);
+      ChartEntry entry = new ChartEntry();
+      entry.setName(name);
+      entry.setVersion(version);
+      entry.setAppVersion("4.0.3");
+      entry.setDescription("Synthetic chart used to benchmark Helm metadata handling");
+      entry.setIcon("https://example.com/" + name + "/icon.png");
+      entry.setCreated(CREATED.plusMinutes(i));
+      entry.setDigest(String.format("%064x", i));
+      entry.setUrls(Collections.singletonList(baseUrl + name + "-" + version + ".tgz"));
+      entry.setSources(asList("https://github.com/example/" + name));
+      entry.setMaintainers(Collections.singletonList(
+          ImmutableMap.of("name", "maintainer", "email", "maintainer@example.com")));
+      index.addEntry(entry);
+    }
+    return index;
+  }
+
+  public static byte[] indexYaml(final ChartIndex index) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new YamlParser().write(out, index);
+    return out.toByteArray();
+  }
+}
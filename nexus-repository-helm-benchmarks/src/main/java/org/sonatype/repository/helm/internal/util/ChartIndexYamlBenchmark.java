@@ -0,0 +1,64 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.repository.helm.internal.HelmBenchmarkData;
+import org.sonatype.repository.helm.internal.metadata.ChartIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializing a {@link ChartIndex} to {@code index.yaml}, as done on every index rebuild of a hosted repository.
+ *
+ * @since 1.0.22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ChartIndexYamlBenchmark
+{
+  /**
+   * Number of chart versions in the index.
+   */
+  @Param({"1000", "10000", "100000"})
+  public int entries;
+
+  private final YamlParser yamlParser = new YamlParser();
+
+  private ChartIndex index;
+
+  @Setup
+  public void setUp() {
+    index = HelmBenchmarkData.chartIndex(entries, HelmBenchmarkData.BASE_URL);
+  }
+
+  @Benchmark
+  public String getYamlContent() {
+    return yamlParser.getYamlContent(index);
+  }
+}
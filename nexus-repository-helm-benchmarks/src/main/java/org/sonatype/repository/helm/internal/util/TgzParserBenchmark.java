@@ -0,0 +1,70 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.repository.helm.internal.HelmBenchmarkData;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extracting {@code Chart.yaml} from chart archives of increasing size.
+ *
+ * @since 1.0.22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class TgzParserBenchmark
+{
+  /**
+   * Bytes of template content stored ahead of {@code Chart.yaml} in the archive.
+   */
+  @Param({"0", "65536", "1048576", "10485760"})
+  public int templateBytes;
+
+  private final TgzParser tgzParser = new TgzParser();
+
+  private byte[] chart;
+
+  @Setup
+  public void setUp() {
+    chart = HelmBenchmarkData.chartTgz("mongodb", "0.4.9", templateBytes);
+  }
+
+  @Benchmark
+  public byte[] getChartFromInputStream() throws IOException {
+    try (InputStream in = tgzParser.getChartFromInputStream(new ByteArrayInputStream(chart))) {
+      byte[] buf = new byte[in.available()];
+      in.read(buf);
+      return buf;
+    }
+  }
+}
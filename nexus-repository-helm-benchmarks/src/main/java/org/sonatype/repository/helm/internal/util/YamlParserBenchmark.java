@@ -0,0 +1,74 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.sonatype.repository.helm.internal.HelmBenchmarkData;
+
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Parsing a typical {@code Chart.yaml}, as done for every chart uploaded or fetched through a proxy.
+ *
+ * {@link #loadWithNewEngine()} is the previous implementation, which read the document into a string and built a new
+ * SnakeYAML engine for every call, kept as a baseline.
+ *
+ * @since 1.0.22
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class YamlParserBenchmark
+{
+  private final YamlParser yamlParser = new YamlParser();
+
+  private byte[] chartYaml;
+
+  @Setup
+  public void setUp() {
+    chartYaml = HelmBenchmarkData.chartYaml("mongodb", "0.4.9").getBytes(UTF_8);
+  }
+
+  @Benchmark
+  public Map<String, Object> load() throws IOException {
+    return yamlParser.load(new ByteArrayInputStream(chartYaml));
+  }
+
+  @Benchmark
+  public Map<String, Object> loadWithNewEngine() throws IOException {
+    String data = IOUtils.toString(new UnicodeReader(new ByteArrayInputStream(chartYaml)));
+    return new Yaml(new SafeConstructor()).load(data);
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal
+
+import org.sonatype.nexus.repository.view.Context
+import org.sonatype.nexus.repository.view.Matcher
+import org.sonatype.nexus.repository.view.matchers.ActionMatcher
+import org.sonatype.nexus.repository.view.matchers.LiteralMatcher
+import org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher
+import org.sonatype.repository.helm.internal.metadata.IndexShardHandler
+
+import static org.sonatype.nexus.repository.http.HttpMethods.GET
+import static org.sonatype.nexus.repository.http.HttpMethods.HEAD
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX
+import static org.sonatype.repository.helm.internal.createindex.SlimIndexConfig.SLIM_INDEX_YAML
+
+/**
+ * Matchers shared by the Helm recipes of both storage layers.
+ *
+ * @since 1.0.22
+ */
+final class HelmMatchers
+{
+  private HelmMatchers() {
+    // no instance
+  }
+
+  /**
+   * Matcher for the index of a single chart.
+   */
+  static Matcher shardMatcher() {
+    LogicMatchers.and(
+        new ActionMatcher(GET, HEAD),
+        new TokenMatcher(IndexShardHandler.SHARD_PATTERN)
+    )
+  }
+
+  /**
+   * Matcher for the slim index.yaml.
+   */
+  static Matcher slimIndexMatcher() {
+    LogicMatchers.and(
+        new ActionMatcher(GET, HEAD),
+        new LiteralMatcher(SLIM_INDEX_YAML),
+        new Matcher() {
+          @Override
+          boolean matches(final Context context) {
+            context.attributes.set(AssetKind.class, HELM_INDEX)
+            return true
+          }
+        }
+    )
+  }
+}
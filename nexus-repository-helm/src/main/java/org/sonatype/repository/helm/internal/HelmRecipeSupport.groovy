@@ -40,9 +40,11 @@ import org.sonatype.nexus.repository.view.matchers.ActionMatcher
 import org.sonatype.nexus.repository.view.matchers.LiteralMatcher
 import org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher
+import org.sonatype.repository.helm.internal.metadata.IndexShardHandler
 import org.sonatype.repository.helm.internal.orient.HelmFacet
 import org.sonatype.repository.helm.HelmRestoreFacet
 import org.sonatype.repository.helm.internal.orient.HelmComponentMaintenanceFacet
+import org.sonatype.repository.helm.internal.orient.metadata.IndexYamlGzipHandler
 import org.sonatype.repository.helm.internal.security.HelmSecurityFacet
 
 import static org.sonatype.nexus.repository.http.HttpMethods.GET
@@ -89,6 +91,12 @@ abstract class HelmRecipeSupport
   @Inject
   ContentHeadersHandler contentHeadersHandler
 
+  @Inject
+  IndexYamlGzipHandler indexYamlGzipHandler
+
+  @Inject
+  IndexShardHandler indexShardHandler
+
   @Inject
   UnitOfWorkHandler unitOfWorkHandler
 
@@ -13,18 +13,22 @@
 package org.sonatype.repository.helm.internal.content;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Optional;
 
 import javax.annotation.Nullable;
 
+import org.sonatype.nexus.common.entity.Continuation;
 import org.sonatype.nexus.repository.Facet;
 import org.sonatype.nexus.repository.content.facet.ContentFacet;
-import org.sonatype.nexus.repository.content.fluent.FluentAsset;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Payload;
 import org.sonatype.nexus.repository.view.payloads.TempBlob;
 import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.internal.AssetKind;
+import org.sonatype.repository.helm.internal.content.store.HelmChartData;
+import org.sonatype.repository.helm.internal.metadata.UpstreamChartUrls;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndex;
 
 /**
  * @since 1.0.11
@@ -33,17 +37,55 @@ import org.sonatype.repository.helm.internal.AssetKind;
 public interface HelmContentFacet
     extends ContentFacet
 {
-  Iterable<FluentAsset> browseAssets();
+  /**
+   * Browse just the chart fields needed for index.yaml entries one page at a time, without loading whole assets.
+   */
+  Continuation<HelmChartData> browseChartData(int limit, @Nullable String continuationToken);
+
+  /**
+   * Browse just the paths and blob checksums of charts one page at a time, the other fields are left unset.
+   */
+  Continuation<HelmChartData> browseChartDigests(int limit, @Nullable String continuationToken);
 
   Optional<Content> getAsset(String path);
 
-  Content putIndex(String path, Content content, AssetKind assetKind);
+  /**
+   * Opens the content of the asset at the given path for internal use, without marking the asset as downloaded.
+   */
+  Optional<InputStream> openAssetBlob(String path) throws IOException;
+
+  /**
+   * Returns the gzip compressed copy of the index at the given path, provided it matches the current index content.
+   */
+  Optional<Content> getGzipCopy(String path);
+
+  /**
+   * Stores a proxied index.yaml with its absolute chart URLs rewritten as relative.
+   *
+   * @param chartUrls receives the filename and original URL of every rewritten chart URL, its table is stored with
+   *                  the index under {@link UpstreamChartUrls#CHART_URLS}
+   */
+  Content putIndex(String path, Content content, AssetKind assetKind, UpstreamChartUrls.Recorder chartUrls);
+
+  Content putIndex(String path, TempBlob indexYaml, AssetKind assetKind);
 
   Content putComponent(String path, Content content, AssetKind assetKind) throws IOException;
 
+  /**
+   * Stores a proxied chart, provided its sha256 matches the digest published for it. The chart's attributes are taken
+   * from the published entry when it has them, rather than read from the chart.
+   *
+   * @param published the chart's entry in the upstream index.yaml, if any
+   * @throws IOException if the content doesn't match the published digest, in which case nothing is stored
+   */
+  Content putComponent(String path, Content content, AssetKind assetKind, @Nullable UpstreamIndex.Entry published)
+      throws IOException;
+
   Content putComponent(String path, TempBlob tempBlob, HelmAttributes helmAttrs, Content content, AssetKind assetKind);
 
   TempBlob getTempBlob(Payload payload);
 
+  TempBlob getTempBlob(InputStream inputStream, @Nullable String contentType);
+
   boolean delete(String path);
 }
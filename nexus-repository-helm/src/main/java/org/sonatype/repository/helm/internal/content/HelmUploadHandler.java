@@ -35,6 +35,7 @@ import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.HelmUploadHandlerSupport;
 import org.sonatype.repository.helm.internal.AssetKind;
 import org.sonatype.repository.helm.internal.content.recipe.HelmHostedFacet;
+import org.sonatype.repository.helm.internal.util.ChartYamlExtractingInputStream;
 import org.sonatype.repository.helm.internal.util.HelmAttributeParser;
 
 import org.apache.commons.lang3.StringUtils;
@@ -75,8 +76,9 @@ public class HelmUploadHandler
       throw new IllegalArgumentException("Unsupported extension. Extension must be .tgz or .tgz.prov");
     }
 
-    try (TempBlob tempBlob = helmContentFacet.getTempBlob(payload)) {
-      HelmAttributes attributesFromInputStream = helmPackageParser.getAttributes(assetKind, tempBlob.get());
+    try (ChartYamlExtractingInputStream in = new ChartYamlExtractingInputStream(payload.openInputStream());
+         TempBlob tempBlob = helmContentFacet.getTempBlob(in, payload.getContentType())) {
+      HelmAttributes attributesFromInputStream = helmPackageParser.getAttributes(assetKind, in, tempBlob);
       String extension = assetKind.getExtension();
       String name = attributesFromInputStream.getName();
       String version = attributesFromInputStream.getVersion();
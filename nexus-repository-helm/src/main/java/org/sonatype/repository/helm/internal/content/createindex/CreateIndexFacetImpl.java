@@ -12,16 +12,21 @@
  */
 package org.sonatype.repository.helm.internal.content.createindex;
 
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.sonatype.nexus.common.event.EventAware.Asynchronous;
-import org.sonatype.nexus.common.event.EventManager;
 import org.sonatype.nexus.common.stateguard.Guarded;
 import org.sonatype.nexus.repository.FacetSupport;
 import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.config.Configuration;
 import org.sonatype.nexus.repository.content.event.asset.AssetCreatedEvent;
 import org.sonatype.nexus.repository.content.event.asset.AssetDeletedEvent;
 import org.sonatype.nexus.repository.content.event.asset.AssetEvent;
@@ -30,19 +35,27 @@ import org.sonatype.nexus.repository.content.event.asset.AssetUpdatedEvent;
 import org.sonatype.nexus.repository.content.event.asset.AssetUploadedEvent;
 import org.sonatype.nexus.repository.manager.RepositoryCreatedEvent;
 import org.sonatype.nexus.repository.manager.RepositoryDeletedEvent;
-import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.TempBlob;
+import org.sonatype.repository.helm.internal.HelmFormat;
 import org.sonatype.repository.helm.internal.content.HelmContentFacet;
 import org.sonatype.repository.helm.internal.content.recipe.HelmHostedFacet;
 import org.sonatype.repository.helm.internal.createindex.CreateIndexFacet;
-import org.sonatype.repository.helm.internal.createindex.HelmIndexInvalidationEvent;
+import org.sonatype.repository.helm.internal.createindex.HelmIndexRebuildScheduler;
+import org.sonatype.repository.helm.internal.createindex.SlimIndexConfig;
+import org.sonatype.repository.helm.internal.metadata.ChartIndex;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexShards;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import org.joda.time.DateTime;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport.State.STARTED;
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
+import static org.sonatype.repository.helm.internal.createindex.SlimIndexConfig.SLIM_INDEX_YAML;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.GZ_EXTENSION;
 
 /**
  * Facet for rebuilding Helm index.yaml files
@@ -56,30 +69,56 @@ public class CreateIndexFacetImpl
 {
   private static final String INDEX_YAML = "/index.yaml";
 
-  private final EventManager eventManager;
+  private final HelmIndexRebuildScheduler rebuildScheduler;
 
-  private final long interval;
+  private final HelmIndexShards indexShards;
 
-  private final AtomicBoolean acceptingEvents = new AtomicBoolean(true);
+  private final boolean incremental;
 
   private static final String UPDATING_INDEX_LOG = "Updating index.yaml for hosted repository {}";
 
-  //Prevents the same event from being fired multiple times
-  private final AtomicBoolean eventFired = new AtomicBoolean(false);
+  // Chart paths changed since the last rebuild, applied to the stored index when running incrementally
+  private final Set<String> changedPaths = ConcurrentHashMap.newKeySet();
+
+  private final AtomicBoolean fullRebuild = new AtomicBoolean(false);
+
+  private volatile int slimIndexVersions;
 
   private CreateIndexService createIndexService;
 
   @Inject
   public CreateIndexFacetImpl(
-      final EventManager eventManager,
+      final HelmIndexRebuildScheduler rebuildScheduler,
       final CreateIndexService createIndexService,
-      @Named("${nexus.helm.createrepo.interval:-1000}") final long interval)
+      final HelmIndexShards indexShards,
+      @Named("${nexus.helm.createrepo.incremental:-true}") final boolean incremental)
   {
-    this.eventManager = checkNotNull(eventManager);
-    this.interval = interval;
+    this.rebuildScheduler = checkNotNull(rebuildScheduler);
+    this.indexShards = checkNotNull(indexShards);
+    this.incremental = incremental;
     this.createIndexService = checkNotNull(createIndexService);
   }
 
+  @Override
+  protected void doConfigure(final Configuration configuration) throws Exception {
+    super.doConfigure(configuration);
+    slimIndexVersions = SlimIndexConfig.versions(configuration);
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    super.doStart();
+    // the slim index is only written along with the full one, so have both rewritten when its settings changed
+    if (slimIndexVersions != writtenSlimIndexVersions()) {
+      invalidateIndex();
+    }
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    rebuildScheduler.cancel(getRepository().getName());
+  }
+
   @Subscribe
   @Guarded(by = STARTED)
   @AllowConcurrentEvents
@@ -144,49 +183,134 @@ public class CreateIndexFacetImpl
   private void maybeInvalidateIndex(final AssetEvent event) {
     if (event.getAsset().kind().equals(HELM_PACKAGE.toString()) &&
         (getRepository().getName().equals(event.getRepository().getName()))) {
-      invalidateIndex();
+      changedPaths.add(event.getAsset().path());
+      scheduleRebuild();
     }
   }
 
-  @Subscribe
-  public void on(final HelmIndexInvalidationEvent event) {
-    if (shouldProcess(event)) {
-      acceptingEvents.set(false);
-      maybeWait(event);
+  /**
+   * Run by the {@link HelmIndexRebuildScheduler} once a burst of changes to this repository has settled.
+   */
+  @Guarded(by = STARTED)
+  protected void rebuildIndex() {
+    log.info("Rebuilding Helm index for repository {}", getRepository().getName());
+
+    try {
+      ChartIndex index = buildIndex();
+      int versions = slimIndexVersions;
+      String fingerprint = fingerprint(index, versions);
+      if (fingerprint.equals(storedFingerprint())) {
+        log.debug("Helm index for repository {} is unchanged, skipping write", getRepository().getName());
+        return;
+      }
+      // both indexes are stamped with the same time, so clients switching between them see one generation
+      index.setGenerated(new DateTime());
+      // the slim index goes first, as a stored fingerprint means both are up to date
+      updateSlimIndexYaml(index, versions);
+      try (TempBlob indexYaml = createIndexService.writeIndexYaml(getRepository(), index)) {
+        updateIndexYaml(indexYaml, fingerprint, versions);
+      }
+      // shards follow the stored index, shards lost to a restart are cut from it when next requested
+      indexShards.update(getRepository(), index);
+    }
+    catch (RuntimeException e) {
+      // changes drained for this run are lost, so make sure the next run starts from scratch
+      fullRebuild.set(true);
+      throw e;
+    }
+    finally {
+      log.info("Finished rebuilding Helm index for repository {}", getRepository().getName());
+    }
+  }
+
+  private ChartIndex buildIndex() {
+    boolean rebuild = fullRebuild.getAndSet(false) || !incremental;
+    Set<String> changes = drainChangedPaths();
+    if (!rebuild) {
+      ChartIndex index = createIndexService.patchIndex(getRepository(), changes);
+      if (index != null) {
+        log.debug("Applied {} changed charts to Helm index for repository {}", changes.size(),
+            getRepository().getName());
+        return index;
+      }
+    }
+    return createIndexService.buildIndex(getRepository());
+  }
 
-      log.info("Rebuilding Helm index for repository {}", getRepository().getName());
+  private static String fingerprint(final ChartIndex index, final int slimIndexVersions) {
+    String fingerprint = index.fingerprint();
+    return slimIndexVersions > 0 ? fingerprint + "/" + slimIndexVersions : fingerprint;
+  }
 
-      try {
-        acceptingEvents.set(true);
-        eventFired.set(false);
+  @Nullable
+  private String storedFingerprint() {
+    HelmContentFacet helmFacet = getRepository().facet(HelmContentFacet.class);
+    return helmFacet.assets().path(INDEX_YAML).find()
+        .filter(asset -> asset.blob().isPresent())
+        .map(asset -> (String) asset.attributes(HelmFormat.NAME).get(INDEX_FINGERPRINT))
+        .orElse(null);
+  }
 
-        updateIndexYaml(createIndexService.buildIndexYaml(getRepository()));
-      }
-      finally {
-        log.info("Finished rebuilding Helm index for repository {}", getRepository().getName());
-      }
+  /**
+   * @return the slim index setting the stored index.yaml was written with, the current one if there is none yet
+   */
+  private int writtenSlimIndexVersions() {
+    HelmContentFacet helmFacet = getRepository().facet(HelmContentFacet.class);
+    return helmFacet.assets().path(INDEX_YAML).find()
+        .map(asset -> asset.attributes(HelmFormat.NAME).get(SLIM_INDEX_VERSIONS_WRITTEN))
+        .map(versions -> versions instanceof Number ? ((Number) versions).intValue() : 0)
+        .orElse(slimIndexVersions);
+  }
+
+  private Set<String> drainChangedPaths() {
+    Set<String> changes = new HashSet<>();
+    Iterator<String> iterator = changedPaths.iterator();
+    while (iterator.hasNext()) {
+      changes.add(iterator.next());
+      iterator.remove();
     }
+    return changes;
   }
 
-  protected void updateIndexYaml(final Content indexYaml) {
+  protected void updateIndexYaml(@Nullable final TempBlob indexYaml, final String fingerprint, final int versions) {
     if (indexYaml == null) {
       deleteIndexYaml();
     }
     else {
-      createIndexYaml(indexYaml);
+      createIndexYaml(indexYaml, fingerprint, versions);
     }
   }
 
-  private void createIndexYaml(final Content indexYaml) {
+  private void updateSlimIndexYaml(final ChartIndex index, final int versions) {
+    HelmContentFacet helmFacet = getRepository().facet(HelmContentFacet.class);
+    if (versions > 0) {
+      try (TempBlob slimIndexYaml = createIndexService.writeSlimIndexYaml(getRepository(), index, versions)) {
+        helmFacet.putIndex(SLIM_INDEX_YAML, slimIndexYaml, HELM_INDEX);
+      }
+    }
+    else if (helmFacet.assets().path(SLIM_INDEX_YAML).find().isPresent()) {
+      HelmHostedFacet hosted = getRepository().facet(HelmHostedFacet.class);
+      hosted.delete(SLIM_INDEX_YAML);
+      hosted.delete(SLIM_INDEX_YAML + GZ_EXTENSION);
+    }
+  }
+
+  private void createIndexYaml(final TempBlob indexYaml, final String fingerprint, final int versions) {
     Repository repository = getRepository();
     HelmContentFacet helmFacet = repository.facet(HelmContentFacet.class);
     helmFacet.putIndex(INDEX_YAML, indexYaml, HELM_INDEX);
+    helmFacet.assets().path(INDEX_YAML).find()
+        .ifPresent(asset -> asset.withAttribute(HelmFormat.NAME,
+            ImmutableMap.of(INDEX_FINGERPRINT, fingerprint, SLIM_INDEX_VERSIONS_WRITTEN, versions)));
   }
 
   private void deleteIndexYaml() {
     log.debug("Empty index.yaml returned, proceeding to delete asset");
     HelmHostedFacet hosted = getRepository().facet(HelmHostedFacet.class);
     boolean result = hosted.delete(INDEX_YAML);
+    hosted.delete(INDEX_YAML + GZ_EXTENSION);
+    hosted.delete(SLIM_INDEX_YAML);
+    hosted.delete(SLIM_INDEX_YAML + GZ_EXTENSION);
     if (result) {
       log.info("Deleted index.yaml because of empty asset list");
     }
@@ -195,34 +319,17 @@ public class CreateIndexFacetImpl
     }
   }
 
-  private boolean shouldProcess(final HelmIndexInvalidationEvent event) {
-    return getRepository().getName().equals(event.getRepositoryName());
-  }
-
-  private void maybeWait(final HelmIndexInvalidationEvent event) {
-    if (event.isWaitBeforeRebuild()) {
-      try {
-        Thread.sleep(interval);
-      }
-      catch (InterruptedException e) { // NOSONAR
-        log.warn("Helm invalidation thread interrupted, proceeding with invalidation");
-      }
-    }
-  }
-
   /**
-   * We are accepting that the boolean values can change in the middle of this if statement. For example if
-   * acceptingEvents is true and eventFired is false but before we check eventFired acceptingEvents is toggled, we will
-   * add one additional process request which will be handled synchronously and not cause any issues.
+   * Rebuilds the whole index from every chart in the repository rather than applying individual changes.
    */
   @Override
-  public synchronized void invalidateIndex() {
-    if (acceptingEvents.get() && !eventFired.get()) {
-      log.info("Scheduling rebuild of Helm metadata to start in {} seconds", interval / 1000);
+  public void invalidateIndex() {
+    fullRebuild.set(true);
+    scheduleRebuild();
+  }
 
-      // Prevent another event being fired if one is already queued up
-      eventFired.set(true);
-      eventManager.post(new HelmIndexInvalidationEvent(getRepository().getName(), true));
-    }
+  private void scheduleRebuild() {
+    log.debug("Scheduling rebuild of Helm metadata for repository {}", getRepository().getName());
+    rebuildScheduler.schedule(getRepository().getName(), this::rebuildIndex);
   }
 }
@@ -12,8 +12,13 @@
  */
 package org.sonatype.repository.helm.internal.content.createindex;
 
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
 import org.sonatype.nexus.repository.Repository;
-import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.TempBlob;
+import org.sonatype.repository.helm.internal.metadata.ChartIndex;
 
 /**
  * Build index.yaml file for Helm Hosted
@@ -22,5 +27,28 @@ import org.sonatype.nexus.repository.view.Content;
  */
 public interface CreateIndexService
 {
-  Content buildIndexYaml(final Repository repository);
+  /**
+   * Build the index from every chart in the repository.
+   */
+  ChartIndex buildIndex(final Repository repository);
+
+  /**
+   * Apply the given changed chart paths to the stored index.yaml instead of browsing every chart in the repository.
+   *
+   * @return the updated index, or null when there is no stored index or it has drifted from the repository and a
+   * full rebuild is needed
+   */
+  @Nullable
+  ChartIndex patchIndex(final Repository repository, final Collection<String> paths);
+
+  /**
+   * Serialize the index as index.yaml, with the generated time the caller stamped on it.
+   */
+  TempBlob writeIndexYaml(final Repository repository, final ChartIndex index);
+
+  /**
+   * Serialize the newest {@code versions} versions of every chart of an index written by
+   * {@link #writeIndexYaml(Repository, ChartIndex)} as the slim index.yaml, with the same generated time.
+   */
+  TempBlob writeSlimIndexYaml(final Repository repository, final ChartIndex index, final int versions);
 }
@@ -12,9 +12,14 @@
  */
 package org.sonatype.repository.helm.internal.content.createindex;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -23,18 +28,22 @@ import javax.inject.Singleton;
 
 import org.sonatype.goodies.common.ComponentSupport;
 import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.common.entity.Continuation;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.content.Asset;
 import org.sonatype.nexus.repository.content.AssetBlob;
-import org.sonatype.nexus.repository.view.Content;
-import org.sonatype.nexus.repository.view.payloads.StringPayload;
+import org.sonatype.nexus.repository.view.payloads.TempBlob;
+import org.sonatype.nexus.thread.io.StreamCopier;
 import org.sonatype.repository.helm.internal.AssetKind;
 import org.sonatype.repository.helm.internal.HelmFormat;
 import org.sonatype.repository.helm.internal.content.HelmContentFacet;
+import org.sonatype.repository.helm.internal.content.store.HelmChartData;
 import org.sonatype.repository.helm.internal.metadata.ChartEntry;
 import org.sonatype.repository.helm.internal.metadata.ChartIndex;
+import org.sonatype.repository.helm.internal.metadata.ChartsDigest;
 import org.sonatype.repository.helm.internal.util.YamlParser;
 
+import org.apache.commons.io.FilenameUtils;
 import org.joda.time.DateTime;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -61,6 +70,13 @@ public class CreateIndexServiceImpl
 
   private static final String INDEX_YAML_CONTENT_TYPE = "text/x-yaml";
 
+  private static final String INDEX_YAML = "/index.yaml";
+
+  private static final String SHA256 = "sha256";
+
+  // charts are read one page at a time so only a page of assets is held in memory alongside the index
+  private static final int BROWSE_LIMIT = 1000;
+
   private final YamlParser yamlParser;
 
   @Inject
@@ -68,44 +84,154 @@ public class CreateIndexServiceImpl
     this.yamlParser = checkNotNull(yamlParser);
   }
 
-  @Nullable
-  public Content buildIndexYaml(final Repository repository) {
+  @Override
+  public ChartIndex buildIndex(final Repository repository) {
     HelmContentFacet helmFacet = repository.facet(HelmContentFacet.class);
 
     ChartIndex index = new ChartIndex();
+    index.setApiVersion(API_VERSION);
+
+    String continuationToken = null;
+    Continuation<HelmChartData> page;
+    do {
+      page = helmFacet.browseChartData(BROWSE_LIMIT, continuationToken);
+      for (HelmChartData chart : page) {
+        Map<String, String> checksums = chart.checksums();
+        ChartEntry chartEntry = createChartEntry(chart.attributes(), chart.created(),
+            checksums != null ? checksums.get(SHA256) : null);
+        if (chartEntry != null) {
+          index.addEntry(chartEntry);
+        }
+      }
+      continuationToken = page.isEmpty() ? null : page.nextContinuationToken();
+    }
+    while (page.size() == BROWSE_LIMIT);
+
+    return index;
+  }
 
-    for (Asset asset : helmFacet.browseAssets()) {
-      if (AssetKind.HELM_PACKAGE.toString().equals(asset.kind())) {
-        parseAssetIntoChartEntry(index, asset);
+  @Override
+  @Nullable
+  public ChartIndex patchIndex(final Repository repository, final Collection<String> paths) {
+    HelmContentFacet helmFacet = repository.facet(HelmContentFacet.class);
+
+    ChartIndex index = loadIndex(helmFacet);
+    if (index == null) {
+      return null;
+    }
+
+    for (String path : paths) {
+      String filename = FilenameUtils.getName(path);
+      ChartEntry chartEntry = helmFacet.assets().path(path).find()
+          .filter(asset -> AssetKind.HELM_PACKAGE.name().equals(asset.kind()))
+          .map(this::createChartEntry)
+          .orElse(null);
+      index.removeEntry(filename);
+      if (chartEntry != null) {
+        chartEntry.getUrls().stream().filter(url -> !url.equals(filename)).forEach(index::removeEntry);
+        index.addEntry(chartEntry);
       }
     }
 
+    int charts = helmFacet.assets().byKind(AssetKind.HELM_PACKAGE.name()).count();
+    if (index.countEntries() != charts) {
+      log.info("Helm index for repository {} has {} entries but there are {} charts, a full rebuild is required",
+          repository.getName(), index.countEntries(), charts);
+      return null;
+    }
+    // the same number of charts can still be other charts, missed changes are caught by their files and digests
+    if (!index.chartsDigest().equals(chartsDigest(helmFacet))) {
+      log.info("Helm index for repository {} does not list the charts it holds, a full rebuild is required",
+          repository.getName());
+      return null;
+    }
+
     index.setApiVersion(API_VERSION);
-    index.setGenerated(new DateTime());
+    return index;
+  }
+
+  private ChartsDigest chartsDigest(final HelmContentFacet helmFacet) {
+    ChartsDigest digest = new ChartsDigest();
+    String continuationToken = null;
+    Continuation<HelmChartData> page;
+    do {
+      page = helmFacet.browseChartDigests(BROWSE_LIMIT, continuationToken);
+      for (HelmChartData chart : page) {
+        Map<String, String> checksums = chart.checksums();
+        digest.add(FilenameUtils.getName(chart.path()), checksums != null ? checksums.get(SHA256) : null);
+      }
+      continuationToken = page.isEmpty() ? null : page.nextContinuationToken();
+    }
+    while (page.size() == BROWSE_LIMIT);
+    return digest;
+  }
+
+  @Override
+  public TempBlob writeIndexYaml(final Repository repository, final ChartIndex index) {
+    return write(repository, index);
+  }
+
+  @Override
+  public TempBlob writeSlimIndexYaml(final Repository repository, final ChartIndex index, final int versions) {
+    return write(repository, index.latest(versions));
+  }
+
+  private TempBlob write(final Repository repository, final ChartIndex index) {
+    HelmContentFacet helmFacet = repository.facet(HelmContentFacet.class);
+
+    return new StreamCopier<>(
+        outputStream -> yamlParser.write(outputStream, index),
+        inputStream -> helmFacet.getTempBlob(inputStream, INDEX_YAML_CONTENT_TYPE)).read();
+  }
+
+  @Nullable
+  private ChartIndex loadIndex(final HelmContentFacet helmFacet) {
+    // read the blob directly so that background rebuilds don't count as downloads of index.yaml
+    try {
+      Optional<InputStream> indexYaml = helmFacet.openAssetBlob(INDEX_YAML);
+      if (!indexYaml.isPresent()) {
+        return null;
+      }
+      try (InputStream inputStream = indexYaml.get()) {
+        return yamlParser.loadIndex(inputStream);
+      }
+    }
+    catch (IOException e) {
+      log.warn("Unable to read stored index.yaml, a full rebuild is required", e);
+      return null;
+    }
+  }
 
-    return new Content(new StringPayload(yamlParser.getYamlContent(index), INDEX_YAML_CONTENT_TYPE));
+  @Nullable
+  private ChartEntry createChartEntry(final Asset asset) {
+    AssetBlob blob = asset.blob().orElse(null);
+    return createChartEntry(asset.attributes(), asset.created(), blob != null ? blob.checksums().get(SHA256) : null);
   }
 
-  private void parseAssetIntoChartEntry(final ChartIndex index, final Asset asset) {
-    NestedAttributesMap formatAttributes = asset.attributes().child(HelmFormat.NAME);
+  @Nullable
+  private ChartEntry createChartEntry(final NestedAttributesMap attributes,
+                                      final OffsetDateTime created,
+                                      @Nullable final String digest)
+  {
+    NestedAttributesMap formatAttributes = attributes.child(HelmFormat.NAME);
     if (formatAttributes != null) {
       ChartEntry chartEntry = new ChartEntry();
       chartEntry.setName(formatAttributes.get(NAME.getPropertyName(), String.class));
       chartEntry.setVersion(formatAttributes.get(VERSION.getPropertyName(), String.class));
       chartEntry.setDescription(formatAttributes.get(DESCRIPTION.getPropertyName(), String.class));
       chartEntry.setIcon(formatAttributes.get(ICON.getPropertyName(), String.class));
-      chartEntry.setCreated(new DateTime(asset.created().toString()));
+      chartEntry.setCreated(new DateTime(created.toString()));
 
       @SuppressWarnings("unchecked")
       List<Map<String, String>> maintainers = formatAttributes.get(MAINTAINERS.getPropertyName(), List.class);
       chartEntry.setMaintainers(maintainers);
       chartEntry.setAppVersion(formatAttributes.get(APP_VERSION.getPropertyName(), String.class));
-      AssetBlob blob = asset.blob().orElse(null);
-      chartEntry.setDigest(blob != null ? blob.checksums().get("sha256") : null);
+      chartEntry.setDigest(digest);
       createListOfRelativeUrls(formatAttributes, chartEntry);
       chartEntry.setSources(formatAttributes.get(SOURCES.getPropertyName(), List.class));
-      index.addEntry(chartEntry);
+      return chartEntry;
     }
+    return null;
   }
 
   private void createListOfRelativeUrls(final NestedAttributesMap formatAttributes, final ChartEntry chartEntry) {
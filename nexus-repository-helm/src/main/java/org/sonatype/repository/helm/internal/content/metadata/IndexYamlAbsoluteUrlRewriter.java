@@ -13,13 +13,13 @@
 package org.sonatype.repository.helm.internal.content.metadata;
 
 import java.io.InputStream;
+import java.util.function.BiConsumer;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.view.payloads.TempBlob;
-import org.sonatype.nexus.thread.io.StreamCopier;
 import org.sonatype.repository.helm.internal.content.HelmContentFacet;
 import org.sonatype.repository.helm.internal.metadata.IndexYamlAbsoluteUrlRewriterSupport;
 
@@ -37,16 +37,33 @@ public class IndexYamlAbsoluteUrlRewriter
 {
   private static final String contentType = "text/x-yaml";
 
-  private HelmContentFacet contentFacet;
-
   public TempBlob removeUrlsFromIndexYamlAndWriteToTempBlob(final TempBlob index,
                                                             final Repository repository)
   {
-    contentFacet = repository.facet(HelmContentFacet.class);
-    return new StreamCopier<>(outputStream -> updateUrls(index.get(), outputStream), this::createTempBlob).read();
+    return removeUrlsFromIndexYamlAndWriteToTempBlob(index, repository, (fileName, url) -> { });
+  }
+
+  /**
+   * @param chartUrls receives the filename and original URL of every absolute URL rewritten as relative
+   */
+  public TempBlob removeUrlsFromIndexYamlAndWriteToTempBlob(final TempBlob index,
+                                                            final Repository repository,
+                                                            final BiConsumer<String, String> chartUrls)
+  {
+    return removeUrlsFromIndexYamlAndWriteToTempBlob(index.get(), repository, chartUrls);
   }
 
-  private TempBlob createTempBlob(final InputStream is) {
-    return contentFacet.blobs().ingest(is, contentType, HASH_ALGORITHMS);
+  /**
+   * Rewrites the index while it is read from {@code index}, typically straight from the remote, into a single
+   * {@link TempBlob}.
+   *
+   * @param chartUrls receives the filename and original URL of every absolute URL rewritten as relative
+   */
+  public TempBlob removeUrlsFromIndexYamlAndWriteToTempBlob(final InputStream index,
+                                                            final Repository repository,
+                                                            final BiConsumer<String, String> chartUrls)
+  {
+    HelmContentFacet contentFacet = repository.facet(HelmContentFacet.class);
+    return rewriteUrls(index, chartUrls, in -> contentFacet.blobs().ingest(in, contentType, HASH_ALGORITHMS));
   }
 }
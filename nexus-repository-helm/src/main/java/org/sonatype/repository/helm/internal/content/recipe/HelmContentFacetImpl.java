@@ -13,6 +13,8 @@
 package org.sonatype.repository.helm.internal.content.recipe;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -20,8 +22,11 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.sonatype.nexus.blobstore.api.Blob;
+import org.sonatype.nexus.common.entity.Continuation;
 import org.sonatype.nexus.common.hash.HashAlgorithm;
 import org.sonatype.nexus.repository.content.Asset;
+import org.sonatype.nexus.repository.content.AssetBlob;
 import org.sonatype.nexus.repository.content.facet.ContentFacetSupport;
 import org.sonatype.nexus.repository.content.facet.WritePolicy;
 import org.sonatype.nexus.repository.content.fluent.FluentAsset;
@@ -34,15 +39,27 @@ import org.sonatype.repository.helm.internal.AssetKind;
 import org.sonatype.repository.helm.internal.HelmFormat;
 import org.sonatype.repository.helm.internal.content.HelmContentFacet;
 import org.sonatype.repository.helm.internal.content.metadata.IndexYamlAbsoluteUrlRewriter;
+import org.sonatype.repository.helm.internal.content.store.HelmAssetStore;
+import org.sonatype.repository.helm.internal.content.store.HelmChartData;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexShards;
+import org.sonatype.repository.helm.internal.metadata.UpstreamChartUrls;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndex;
+import org.sonatype.repository.helm.internal.util.ChartYamlExtractingInputStream;
 import org.sonatype.repository.helm.internal.util.HelmAttributeParser;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sonatype.nexus.common.hash.HashAlgorithm.MD5;
 import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
 import static org.sonatype.nexus.repository.content.facet.WritePolicy.ALLOW_ONCE;
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
+import static org.sonatype.repository.helm.internal.metadata.UpstreamChartUrls.CHART_URLS;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.GZ_EXTENSION;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.SOURCE_SHA1;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.gzip;
 
 /**
  * @since 1.0.11
@@ -52,21 +69,28 @@ public class HelmContentFacetImpl
     extends ContentFacetSupport
     implements HelmContentFacet
 {
-  private static final Iterable<HashAlgorithm> HASHING = ImmutableList.of(MD5, SHA1);
+  private static final Iterable<HashAlgorithm> HASHING = ImmutableList.of(MD5, SHA1, SHA256);
+
+  private final FormatStoreManager formatStoreManager;
 
   private final HelmAttributeParser helmAttributeParser;
 
   private final IndexYamlAbsoluteUrlRewriter indexYamlAbsoluteUrlRewriter;
 
+  private final HelmIndexShards indexShards;
+
   @Inject
   public HelmContentFacetImpl(
       @Named(HelmFormat.NAME) final FormatStoreManager formatStoreManager,
       final HelmAttributeParser helmAttributeParser,
-      final IndexYamlAbsoluteUrlRewriter indexYamlAbsoluteUrlRewriter)
+      final IndexYamlAbsoluteUrlRewriter indexYamlAbsoluteUrlRewriter,
+      final HelmIndexShards indexShards)
   {
     super(formatStoreManager);
+    this.formatStoreManager = checkNotNull(formatStoreManager);
     this.helmAttributeParser = checkNotNull(helmAttributeParser);
     this.indexYamlAbsoluteUrlRewriter = checkNotNull(indexYamlAbsoluteUrlRewriter);
+    this.indexShards = checkNotNull(indexShards);
   }
 
   @Override
@@ -81,8 +105,15 @@ public class HelmContentFacetImpl
   }
 
   @Override
-  public Iterable<FluentAsset> browseAssets() {
-    return assets().browse(Integer.MAX_VALUE, null);
+  public Continuation<HelmChartData> browseChartData(final int limit, @Nullable final String continuationToken) {
+    HelmAssetStore assetStore = formatStoreManager.assetStore(stores().contentStoreName);
+    return assetStore.browseChartData(contentRepositoryId(), HELM_PACKAGE.name(), limit, continuationToken);
+  }
+
+  @Override
+  public Continuation<HelmChartData> browseChartDigests(final int limit, @Nullable final String continuationToken) {
+    HelmAssetStore assetStore = formatStoreManager.assetStore(stores().contentStoreName);
+    return assetStore.browseChartDigests(contentRepositoryId(), HELM_PACKAGE.name(), limit, continuationToken);
   }
 
   @Override
@@ -91,19 +122,81 @@ public class HelmContentFacetImpl
   }
 
   @Override
-  public Content putIndex(final String path, final Content content, final AssetKind assetKind)
+  public Optional<InputStream> openAssetBlob(final String path) throws IOException {
+    Optional<AssetBlob> assetBlob = assets().path(path).find().flatMap(Asset::blob);
+    if (!assetBlob.isPresent()) {
+      return Optional.empty();
+    }
+    Blob blob = stores().blobStore.get(assetBlob.get().blobRef().getBlobId());
+    return blob == null ? Optional.empty() : Optional.of(blob.getInputStream());
+  }
+
+  @Override
+  public Optional<Content> getGzipCopy(final String path) {
+    Optional<String> sha1 = assets().path(path).find()
+        .flatMap(Asset::blob)
+        .map(blob -> blob.checksums().get(SHA1.name()));
+    if (!sha1.isPresent()) {
+      return Optional.empty();
+    }
+    return assets().path(path + GZ_EXTENSION).find()
+        .filter(gzipAsset -> sha1.get().equals(gzipAsset.attributes(HelmFormat.NAME).get(SOURCE_SHA1)))
+        .map(FluentAsset::download);
+  }
+
+  @Override
+  public Content putIndex(final String path,
+                          final Content content,
+                          final AssetKind assetKind,
+                          final UpstreamChartUrls.Recorder chartUrls)
   {
-    try (TempBlob blob = blobs().ingest(content, HASHING)) {
-      try (TempBlob newTempBlob = indexYamlAbsoluteUrlRewriter
-          .removeUrlsFromIndexYamlAndWriteToTempBlob(blob, getRepository())) {
-        return assets()
-            .path(path)
-            .kind(assetKind.name())
-            .getOrCreate()
-            .attach(newTempBlob)
-            .markAsCached(content)
-            .download();
-      }
+    try (InputStream in = content.openInputStream();
+         TempBlob newTempBlob = indexYamlAbsoluteUrlRewriter
+             .removeUrlsFromIndexYamlAndWriteToTempBlob(in, getRepository(), chartUrls)) {
+      FluentAsset index = assets()
+          .path(path)
+          .kind(assetKind.name())
+          .getOrCreate()
+          .attach(newTempBlob)
+          .markAsCached(content)
+          .withAttribute(HelmFormat.NAME, ImmutableMap.of(CHART_URLS, chartUrls.table()));
+      putGzipCopy(index, newTempBlob);
+      Content stored = index.download();
+      indexShards.update(getRepository(), stored, newTempBlob.get());
+      return stored;
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public Content putIndex(final String path, final TempBlob indexYaml, final AssetKind assetKind) {
+    FluentAsset index = assets()
+        .path(path)
+        .kind(assetKind.name())
+        .getOrCreate()
+        .attach(indexYaml);
+    putGzipCopy(index, indexYaml);
+    return index.download();
+  }
+
+  /**
+   * Stores a gzip compressed copy of the index next to it; failures are logged as the copy is optional.
+   */
+  private void putGzipCopy(final FluentAsset index, final TempBlob indexYaml) {
+    String sha1 = indexYaml.getHashes().get(SHA1).toString();
+    String contentType = index.blob().map(AssetBlob::contentType).orElse(null);
+    try (TempBlob gzipIndex = gzip(indexYaml.get(), in -> blobs().ingest(in, contentType, HASHING))) {
+      assets()
+          .path(index.path() + GZ_EXTENSION)
+          .kind(index.kind())
+          .getOrCreate()
+          .attach(gzipIndex)
+          .withAttribute(HelmFormat.NAME, ImmutableMap.of(SOURCE_SHA1, sha1));
+    }
+    catch (RuntimeException e) {
+      log.warn("Could not store gzip copy of {}: {}", index.path(), e.getMessage(), e);
     }
   }
 
@@ -112,24 +205,37 @@ public class HelmContentFacetImpl
     return blobs().ingest(payload, HASHING);
   }
 
+  @Override
+  public TempBlob getTempBlob(final InputStream inputStream, @Nullable final String contentType) {
+    return blobs().ingest(inputStream, contentType, HASHING);
+  }
+
   @Override
   public Content putComponent(final String path, final Content content, final AssetKind assetKind) throws IOException
   {
-    try (TempBlob blob = blobs().ingest(content, HASHING)) {
-      HelmAttributes helmAttributes = helmAttributeParser.getAttributes(assetKind, blob.get());
+    return putComponent(path, content, assetKind, null);
+  }
 
-      return assets()
-          .path(path)
-          .kind(assetKind.name())
-          .component(components()
-              .name(helmAttributes.getName())
-              .version(helmAttributes.getVersion())
-              .getOrCreate())
-          .getOrCreate()
-          .attach(blob)
-          .markAsCached(content)
-          .withAttribute(HelmFormat.NAME, helmAttributes)
-          .download();
+  @Override
+  public Content putComponent(final String path,
+                              final Content content,
+                              final AssetKind assetKind,
+                              @Nullable final UpstreamIndex.Entry published) throws IOException
+  {
+    String digest = published == null ? null : published.getDigest();
+    HelmAttributes publishedAttributes = published == null ? null : published.getAttributes();
+    if (publishedAttributes != null) {
+      try (InputStream in = content.openInputStream();
+           TempBlob blob = blobs().ingest(in, content.getContentType(), HASHING)) {
+        UpstreamIndex.verifyDigest(path, digest, blob.getHashes().get(SHA256));
+        return putComponent(path, blob, publishedAttributes, content, assetKind);
+      }
+    }
+    try (ChartYamlExtractingInputStream in = new ChartYamlExtractingInputStream(content.openInputStream());
+         TempBlob blob = blobs().ingest(in, content.getContentType(), HASHING)) {
+      UpstreamIndex.verifyDigest(path, digest, blob.getHashes().get(SHA256));
+      HelmAttributes helmAttributes = helmAttributeParser.getAttributes(assetKind, in, blob);
+      return putComponent(path, blob, helmAttributes, content, assetKind);
     }
   }
 
@@ -15,6 +15,7 @@ package org.sonatype.repository.helm.internal.content.recipe;
 import java.io.IOException;
 
 import javax.annotation.Nullable;
+import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.sonatype.nexus.repository.FacetSupport;
@@ -25,6 +26,7 @@ import org.sonatype.nexus.repository.view.payloads.TempBlob;
 import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.internal.AssetKind;
 import org.sonatype.repository.helm.internal.content.HelmContentFacet;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexCache;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
@@ -41,8 +43,17 @@ public class HelmHostedFacetImpl
     extends FacetSupport
     implements HelmHostedFacet
 {
+  private static final String INDEX_YAML = "/index.yaml";
+
+  private final HelmIndexCache indexCache;
+
   private HelmContentFacet helmContentFacet;
 
+  @Inject
+  public HelmHostedFacetImpl(final HelmIndexCache indexCache) {
+    this.indexCache = checkNotNull(indexCache);
+  }
+
   @Override
   protected void doInit(final Configuration configuration) throws Exception {
     super.doInit(configuration);
@@ -53,6 +64,9 @@ public class HelmHostedFacetImpl
   @Override
   public Content get(final String path) {
     checkNotNull(path);
+    if (INDEX_YAML.equals(path)) {
+      return indexCache.getIndex(getRepository(), () -> helmContentFacet.getAsset(path).orElse(null));
+    }
     return helmContentFacet.getAsset(path).orElse(null);
   }
 
@@ -49,6 +49,8 @@ import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher
 import org.sonatype.repository.helm.internal.AssetKind
 import org.sonatype.repository.helm.internal.HelmFormat
 import org.sonatype.repository.helm.internal.content.HelmContentFacet
+import org.sonatype.repository.helm.internal.content.metadata.IndexYamlGzipHandler
+import org.sonatype.repository.helm.internal.metadata.IndexShardHandler
 import org.sonatype.repository.helm.internal.content.createindex.CreateIndexFacetImpl
 import org.sonatype.repository.helm.internal.security.HelmSecurityFacet
 
@@ -59,6 +61,8 @@ import static org.sonatype.nexus.repository.http.HttpMethods.PUT
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PROVENANCE
+import static org.sonatype.repository.helm.internal.HelmMatchers.shardMatcher
+import static org.sonatype.repository.helm.internal.HelmMatchers.slimIndexMatcher
 
 /**
  * Helm Hosted Recipe
@@ -120,6 +124,12 @@ class HelmHostedRecipe
   @Inject
   ContentHeadersHandler contentHeadersHandler
 
+  @Inject
+  IndexYamlGzipHandler indexYamlGzipHandler
+
+  @Inject
+  IndexShardHandler indexShardHandler
+
   @Inject
   HandlerContributor handlerContributor
 
@@ -186,7 +196,18 @@ class HelmHostedRecipe
 
     addBrowseUnsupportedRoute(builder)
 
-    [indexMatcher(), packageMatcher()].each { matcher ->
+    builder.route(new Route.Builder().matcher(shardMatcher())
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(conditionalRequestHandler)
+        .handler(partialFetchHandler)
+        .handler(contentHeadersHandler)
+        .handler(indexShardHandler)
+        .create())
+
+    [indexMatcher(), slimIndexMatcher(), packageMatcher()].each { matcher ->
       builder.route(new Route.Builder().matcher(matcher)
           .handler(timingHandler)
           .handler(securityHandler)
@@ -194,6 +215,7 @@ class HelmHostedRecipe
           .handler(handlerContributor)
           .handler(partialFetchHandler)
           .handler(contentHeadersHandler)
+          .handler(indexYamlGzipHandler)
           .handler(hostedHandlers.get)
           .create())
     }
@@ -13,21 +13,44 @@
 package org.sonatype.repository.helm.internal.content.recipe;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
+import org.sonatype.nexus.repository.cache.CacheInfo;
+import org.sonatype.nexus.repository.cache.NegativeCacheFacet;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.content.Asset;
 import org.sonatype.nexus.repository.content.facet.ContentProxyFacetSupport;
+import org.sonatype.nexus.repository.content.fluent.FluentAsset;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Context;
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
 import org.sonatype.repository.helm.internal.AssetKind;
+import org.sonatype.repository.helm.internal.HelmFormat;
 import org.sonatype.repository.helm.internal.content.HelmContentFacet;
+import org.sonatype.repository.helm.internal.metadata.ChartPrefetchPolicy;
+import org.sonatype.repository.helm.internal.metadata.HelmChartPrefetcher;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexCache;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexRefresher;
+import org.sonatype.repository.helm.internal.metadata.UpstreamChartUrls;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndex;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndexView;
+import org.sonatype.repository.helm.internal.mirror.HelmMirrorFacet;
 import org.sonatype.repository.helm.internal.util.HelmPathUtils;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
+import static org.sonatype.repository.helm.internal.metadata.UpstreamChartUrls.CHART_URLS;
 
 /**
  * @since 1.0.11
@@ -35,35 +58,263 @@ import static com.google.common.base.Preconditions.checkNotNull;
 @Named
 public class HelmProxyFacet
     extends ContentProxyFacetSupport
+    implements HelmMirrorFacet
 {
   private final HelmPathUtils helmPathUtils;
 
+  private final HelmIndexCache indexCache;
+
+  private final HelmIndexRefresher indexRefresher;
+
+  private final HelmChartPrefetcher chartPrefetcher;
+
+  private final boolean immutablePackages;
+
+  private final boolean notFoundFromIndex;
+
+  private final UpstreamChartUrls upstreamChartUrls = new UpstreamChartUrls();
+
+  private final UpstreamIndexView upstreamIndex = new UpstreamIndexView();
+
+  private volatile ChartPrefetchPolicy prefetchPolicy = ChartPrefetchPolicy.NONE;
+
+  // context attribute handing the chart looked up by get() over to the proxy, so it is not looked up twice
+  private static final String CACHED_CHART = HelmProxyFacet.class.getName() + ".cachedChart";
+
   private static final String INDEX_YAML = "/index.yaml";
 
   @Inject
-  public HelmProxyFacet(final HelmPathUtils helmPathUtils)
+  public HelmProxyFacet(final HelmPathUtils helmPathUtils,
+                        final HelmIndexCache indexCache,
+                        final HelmIndexRefresher indexRefresher,
+                        final HelmChartPrefetcher chartPrefetcher,
+                        @Named("${nexus.helm.proxy.immutablePackages:-false}") final boolean immutablePackages,
+                        @Named("${nexus.helm.proxy.notFoundFromIndex:-false}") final boolean notFoundFromIndex)
   {
     this.helmPathUtils = checkNotNull(helmPathUtils);
+    this.indexCache = checkNotNull(indexCache);
+    this.indexRefresher = checkNotNull(indexRefresher);
+    this.chartPrefetcher = checkNotNull(chartPrefetcher);
+    this.immutablePackages = immutablePackages;
+    this.notFoundFromIndex = notFoundFromIndex;
+  }
+
+  @Override
+  protected void doConfigure(final Configuration configuration) throws Exception {
+    super.doConfigure(configuration);
+    prefetchPolicy = ChartPrefetchPolicy.read(configuration);
+  }
+
+  /**
+   * A stale index.yaml may be served while it is refreshed in the background, see {@link HelmIndexRefresher}. Cached
+   * charts that match the digest published in the index are served without revalidation when
+   * {@code nexus.helm.proxy.immutablePackages} is set. When {@code nexus.helm.proxy.notFoundFromIndex} is set, charts
+   * that are neither cached nor listed in the index are not found without asking the remote; storing a new index clears
+   * the negative cache, so such charts show up with it.
+   */
+  @Override
+  public Content get(final Context context) throws IOException {
+    AssetKind assetKind = context.getAttributes().require(AssetKind.class);
+    if (assetKind == HELM_INDEX) {
+      // the refresh outlives this request, so it gets a context of its own
+      Content stale = indexRefresher.maybeServeStale(getRepository(), getCachedContent(context),
+          getCacheController(context), () -> super.get(HelmMirrorFacet.indexContext(getRepository())));
+      if (stale != null) {
+        return stale;
+      }
+    }
+    else if (assetKind == HELM_PACKAGE && (immutablePackages || notFoundFromIndex)) {
+      String fileName = helmPathUtils.filename(helmPathUtils.matcherState(context));
+      Content cached = getCachedContent(context);
+      if (cached == null) {
+        if (notFoundFromIndex && isUnpublished(fileName)) {
+          log.debug("{} is not listed in the index.yaml of {}", fileName, getRepository().getName());
+          return null;
+        }
+      }
+      else if (immutablePackages && isPublished(fileName, cached)) {
+        return cached;
+      }
+      context.getAttributes().set(CACHED_CHART, Optional.ofNullable(cached));
+    }
+    return super.get(context);
+  }
+
+  /**
+   * Charts missing from the stored index are not fetched, provenance files are not listed in the index so they are
+   * always fetched.
+   */
+  private boolean isUnpublished(final String fileName) throws IOException {
+    if (!fileName.endsWith(HELM_PACKAGE.getExtension())) {
+      return false;
+    }
+    UpstreamIndex index = upstreamIndex.get(this::getCachedIndex);
+    return index != null && !index.contains(fileName);
+  }
+
+  private boolean isPublished(final String fileName, final Content content) throws IOException {
+    UpstreamIndex index = upstreamIndex.get(this::getCachedIndex);
+    UpstreamIndex.Entry entry = index == null ? null : index.get(fileName);
+    String sha256 = Optional.ofNullable(content.getAttributes().get(Asset.class))
+        .flatMap(Asset::blob)
+        .map(blob -> blob.checksums().get(SHA256.name()))
+        .orElse(null);
+    return entry != null && entry.hasDigest(sha256);
+  }
+
+  @Nullable
+  private Content getCachedIndex() {
+    return indexCache.getIndex(getRepository(), () -> content().getAsset(INDEX_YAML).orElse(null));
   }
 
   @Override
+  @SuppressWarnings("unchecked")
   protected Content getCachedContent(final Context context)  throws IOException {
+    if (context.getAttributes().require(AssetKind.class) == HELM_INDEX) {
+      return getCachedIndex();
+    }
+    Optional<Content> cached = (Optional<Content>) context.getAttributes().remove(CACHED_CHART);
+    if (cached != null) {
+      return cached.orElse(null);
+    }
     return content().getAsset(getUrl(context)).orElse(null);
   }
 
+  @Override
+  protected void indicateVerified(final Context context, final Content content, final CacheInfo cacheInfo)
+      throws IOException
+  {
+    super.indicateVerified(context, content, cacheInfo);
+    if (context.getAttributes().require(AssetKind.class) == HELM_INDEX) {
+      // the cached copy still carries the old cache info
+      indexCache.invalidate(getRepository().getName());
+    }
+  }
+
   @Override
   protected Content store(final Context context, final Content content) throws IOException {
     AssetKind assetKind = context.getAttributes().require(AssetKind.class);
     switch (assetKind) {
       case HELM_INDEX:
-        return content().putIndex(getUrl(context), content, assetKind);
+        UpstreamChartUrls.Recorder chartUrls = upstreamChartUrls.record(getRemoteUrl());
+        Content index = content().putIndex(getUrl(context), content, assetKind, chartUrls);
+        chartUrls.publish();
+        upstreamIndex.invalidate();
+        // charts not found in the previous index may be listed in this one
+        optionalFacet(NegativeCacheFacet.class).ifPresent(NegativeCacheFacet::invalidate);
+        prefetchCharts();
+        return index;
       case HELM_PACKAGE:
-        return content().putComponent(getUrl(context), content, assetKind);
+        String path = getUrl(context);
+        UpstreamIndex.Entry published = upstreamIndex.getEntry(
+            this::getCachedIndex, helmPathUtils.filename(helmPathUtils.matcherState(context)));
+        return content().putComponent(path, content, assetKind, published);
       default:
         throw new IllegalStateException("Received an invalid AssetKind of type: " + assetKind.name());
     }
   }
 
+  /**
+   * Fetches the charts the {@link ChartPrefetchPolicy} selects from the newly stored index, unless already cached.
+   */
+  private void prefetchCharts() {
+    ChartPrefetchPolicy policy = prefetchPolicy;
+    if (policy.isEnabled()) {
+      chartPrefetcher.prefetch(getRepository(),
+          () -> selectUncached(policy),
+          this::fetchChart);
+    }
+  }
+
+  private List<String> selectUncached(final ChartPrefetchPolicy policy) throws IOException {
+    UpstreamIndex index = upstreamIndex.get(this::getCachedIndex);
+    if (index == null) {
+      return Collections.emptyList();
+    }
+    return policy.select(index).stream().filter(path -> !isCached(path)).collect(Collectors.toList());
+  }
+
+  @Nullable
+  @Override
+  public UpstreamIndex getUpstreamIndex() throws IOException {
+    get(HelmMirrorFacet.indexContext(getRepository()));
+    return upstreamIndex.get(this::getCachedIndex);
+  }
+
+  @Override
+  public boolean isCached(final String path) {
+    return content().assets().path('/' + path).find().isPresent();
+  }
+
+  @Nullable
+  @Override
+  public Content fetchChart(final String path) throws IOException {
+    return get(HelmMirrorFacet.chartContext(getRepository(), path));
+  }
+
+  /**
+   * A stale index.yaml is revalidated with a conditional request, so an unchanged upstream index only costs a 304;
+   * unless the stored index predates storing where its charts live, then the whole index is fetched to learn that.
+   * Charts the upstream index.yaml points elsewhere are fetched from there rather than from the remote, and charts
+   * whose download doesn't match the digest published in the index are rejected before they are stored.
+   */
+  @Override
+  protected Content fetch(final Context context, final Content stale) throws IOException {
+    AssetKind assetKind = context.getAttributes().require(AssetKind.class);
+    if (assetKind == HELM_INDEX && chartUrlsMissing()) {
+      return super.fetch(context, null);
+    }
+    if (assetKind == HELM_PACKAGE) {
+      if (chartUrlsMissing()) {
+        refreshIndex();
+      }
+      String upstreamUrl = upstreamChartUrls.get(helmPathUtils.filename(helmPathUtils.matcherState(context)));
+      if (upstreamUrl != null) {
+        return fetch(upstreamUrl, context, stale);
+      }
+    }
+    return super.fetch(context, stale);
+  }
+
+  /**
+   * @return whether the stored index.yaml predates storing where its charts live; otherwise the stored table is
+   * restored after a restart, and without a stored index charts are fetched from the remote until one is
+   */
+  @SuppressWarnings("unchecked")
+  private boolean chartUrlsMissing() {
+    if (upstreamChartUrls.isRecorded()) {
+      return false;
+    }
+    Optional<FluentAsset> index = content().assets().path(INDEX_YAML).find();
+    return index.isPresent()
+        && !upstreamChartUrls.restore((Map<String, String>) index.get().attributes(HelmFormat.NAME).get(CHART_URLS));
+  }
+
+  /**
+   * Fetches and stores the whole upstream index.yaml, regardless of its age, to learn where its charts live. Charts
+   * are fetched from the remote when that fails.
+   */
+  private void refreshIndex() {
+    Context indexContext = HelmMirrorFacet.indexContext(getRepository());
+    try {
+      Content index = fetch(indexContext, null);
+      if (index != null) {
+        store(indexContext, index);
+      }
+    }
+    catch (IOException e) {
+      log.warn("Unable to refresh index.yaml of {} to learn where its charts live", getRepository().getName(), e);
+    }
+  }
+
+  /**
+   * Concurrent misses for the same asset share a single upstream fetch; query parameters are not part of the key as
+   * they are neither sent upstream nor part of the stored asset.
+   */
+  @Override
+  protected String getRequestKey(final Context context) {
+    return getUrl(context);
+  }
 
   @Override
   protected String getUrl(@Nonnull final Context context) {
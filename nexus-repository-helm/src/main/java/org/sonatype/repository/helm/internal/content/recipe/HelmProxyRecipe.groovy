@@ -51,6 +51,8 @@ import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher
 import org.sonatype.repository.helm.internal.AssetKind
 import org.sonatype.repository.helm.internal.HelmFormat
 import org.sonatype.repository.helm.internal.content.HelmContentFacet
+import org.sonatype.repository.helm.internal.content.metadata.IndexYamlGzipHandler
+import org.sonatype.repository.helm.internal.metadata.IndexShardHandler
 import org.sonatype.repository.helm.internal.security.HelmSecurityFacet
 
 import static org.sonatype.nexus.repository.http.HttpHandlers.notFound
@@ -58,6 +60,7 @@ import static org.sonatype.nexus.repository.http.HttpMethods.GET
 import static org.sonatype.nexus.repository.http.HttpMethods.HEAD
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE
+import static org.sonatype.repository.helm.internal.HelmMatchers.shardMatcher
 
 /**
  * @since 1.0.11
@@ -105,6 +108,12 @@ class HelmProxyRecipe
   @Inject
   ContentHeadersHandler contentHeadersHandler
 
+  @Inject
+  IndexYamlGzipHandler indexYamlGzipHandler
+
+  @Inject
+  IndexShardHandler indexShardHandler
+
   @Inject
   ExceptionHandler exceptionHandler
 
@@ -189,6 +198,18 @@ class HelmProxyRecipe
 
     addBrowseUnsupportedRoute(builder)
 
+    builder.route(new Route.Builder().matcher(shardMatcher())
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(routingRuleHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(conditionalRequestHandler)
+        .handler(partialFetchHandler)
+        .handler(contentHeadersHandler)
+        .handler(indexShardHandler)
+        .create())
+
     [indexMatcher(), packageMatcher()].each { matcher ->
       builder.route(new Route.Builder().matcher(matcher)
           .handler(timingHandler)
@@ -200,6 +221,7 @@ class HelmProxyRecipe
           .handler(conditionalRequestHandler)
           .handler(partialFetchHandler)
           .handler(contentHeadersHandler)
+          .handler(indexYamlGzipHandler)
           .handler(proxyHandler)
           .create())
     }
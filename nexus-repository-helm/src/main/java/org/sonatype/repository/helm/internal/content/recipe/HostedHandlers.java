@@ -48,7 +48,8 @@ public class HostedHandlers
     AssetKind assetKind = context.getAttributes().require(AssetKind.class);
     String path;
     if (assetKind == AssetKind.HELM_INDEX) {
-      path = "/index.yaml";
+      // the full or the slim index, stored at the path they are requested from
+      path = context.getRequest().getPath();
     }
     else {
       State state = context.getAttributes().require(State.class);
@@ -12,13 +12,38 @@
  */
 package org.sonatype.repository.helm.internal.content.store;
 
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.common.entity.Continuation;
 import org.sonatype.nexus.repository.content.store.AssetDAO;
 
+import org.apache.ibatis.annotations.Param;
+
 /**
  * @since 1.0.11
  */
 public interface HelmAssetDAO
     extends AssetDAO
 {
-  // nothing to add...
+  /**
+   * Browse the fields of chart assets and their blobs that make up index.yaml entries, one page at a time.
+   *
+   * @since 1.0.22
+   */
+  Continuation<HelmChartData> browseChartData(
+      @Param("repositoryId") int repositoryId,
+      @Param("kind") String kind,
+      @Param("limit") int limit,
+      @Param("continuationToken") @Nullable String continuationToken);
+
+  /**
+   * Browse just the paths of chart assets and the checksums of their blobs, one page at a time.
+   *
+   * @since 1.0.22
+   */
+  Continuation<HelmChartData> browseChartDigests(
+      @Param("repositoryId") int repositoryId,
+      @Param("kind") String kind,
+      @Param("limit") int limit,
+      @Param("continuationToken") @Nullable String continuationToken);
 }
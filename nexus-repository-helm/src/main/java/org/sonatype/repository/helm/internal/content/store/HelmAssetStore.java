@@ -0,0 +1,64 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.content.store;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+
+import org.sonatype.nexus.common.entity.Continuation;
+import org.sonatype.nexus.datastore.api.DataSessionSupplier;
+import org.sonatype.nexus.repository.content.store.AssetStore;
+import org.sonatype.nexus.transaction.Transactional;
+
+import com.google.inject.assistedinject.Assisted;
+
+/**
+ * Helm {@link AssetStore} with the kind-filtered paging used to build and check index.yaml.
+ *
+ * @since 1.0.22
+ */
+public class HelmAssetStore
+    extends AssetStore<HelmAssetDAO>
+{
+  @Inject
+  public HelmAssetStore(final DataSessionSupplier sessionSupplier,
+                        @Assisted final String contentStoreName,
+                        @Assisted final Class<HelmAssetDAO> daoClass)
+  {
+    super(sessionSupplier, contentStoreName, daoClass);
+  }
+
+  /**
+   * Browse the index.yaml fields of assets of the given kind, joined with their blob checksums, one page at a time.
+   */
+  @Transactional
+  public Continuation<HelmChartData> browseChartData(final int repositoryId,
+                                                    final String kind,
+                                                    final int limit,
+                                                    @Nullable final String continuationToken)
+  {
+    return dao().browseChartData(repositoryId, kind, limit, continuationToken);
+  }
+
+  /**
+   * Browse the paths of assets of the given kind and the checksums of their blobs, one page at a time.
+   */
+  @Transactional
+  public Continuation<HelmChartData> browseChartDigests(final int repositoryId,
+                                                       final String kind,
+                                                       final int limit,
+                                                       @Nullable final String continuationToken)
+  {
+    return dao().browseChartDigests(repositoryId, kind, limit, continuationToken);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.content.store;
+
+import java.time.OffsetDateTime;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.common.entity.ContinuationAware;
+
+/**
+ * The columns of a chart asset and its blob needed for an index.yaml entry, read in a single joined row.
+ *
+ * @since 1.0.22
+ */
+public class HelmChartData
+    implements ContinuationAware
+{
+  private Integer assetId;
+
+  private String path;
+
+  private NestedAttributesMap attributes;
+
+  private OffsetDateTime created;
+
+  @Nullable
+  private Map<String, String> checksums;
+
+  public String path() {
+    return path;
+  }
+
+  public NestedAttributesMap attributes() {
+    return attributes;
+  }
+
+  public OffsetDateTime created() {
+    return created;
+  }
+
+  /**
+   * @return checksums of the chart blob, or null if the asset has no blob attached
+   */
+  @Nullable
+  public Map<String, String> checksums() {
+    return checksums;
+  }
+
+  public void setAssetId(final int assetId) {
+    this.assetId = assetId;
+  }
+
+  public void setPath(final String path) {
+    this.path = path;
+  }
+
+  public void setAttributes(final NestedAttributesMap attributes) {
+    this.attributes = attributes;
+  }
+
+  public void setCreated(final OffsetDateTime created) {
+    this.created = created;
+  }
+
+  public void setChecksums(@Nullable final Map<String, String> checksums) {
+    this.checksums = checksums;
+  }
+
+  @Override
+  public String nextContinuationToken() {
+    return Integer.toString(assetId);
+  }
+
+}
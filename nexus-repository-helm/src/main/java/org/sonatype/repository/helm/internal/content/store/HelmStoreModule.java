@@ -14,18 +14,21 @@ package org.sonatype.repository.helm.internal.content.store;
 
 import javax.inject.Named;
 
+import org.sonatype.nexus.repository.content.store.AssetBlobStore;
+import org.sonatype.nexus.repository.content.store.BespokeFormatStoreModule;
+import org.sonatype.nexus.repository.content.store.ComponentStore;
+import org.sonatype.nexus.repository.content.store.ContentRepositoryStore;
 import org.sonatype.repository.helm.internal.HelmFormat;
-import org.sonatype.nexus.repository.content.store.FormatStoreModule;
 
 /**
  * @since 1.0.11
  */
 @Named(HelmFormat.NAME)
 public class HelmStoreModule
-    extends FormatStoreModule<HelmContentRepositoryDAO,
-    HelmComponentDAO,
-    HelmAssetDAO,
-    HelmAssetBlobDAO>
+    extends BespokeFormatStoreModule<ContentRepositoryStore<HelmContentRepositoryDAO>,
+    ComponentStore<HelmComponentDAO>,
+    HelmAssetStore,
+    AssetBlobStore<HelmAssetBlobDAO>>
 {
   // nothing to add...
 }
@@ -24,6 +24,16 @@ import org.sonatype.nexus.repository.Facet.Exposed;
 public interface CreateIndexFacet
     extends Facet
 {
+  /**
+   * Attribute on the stored index.yaml holding the fingerprint of the chart entries it was written from.
+   */
+  String INDEX_FINGERPRINT = "index_fingerprint";
+
+  /**
+   * Attribute on the stored index.yaml holding how many versions of each chart the slim index written with it lists.
+   */
+  String SLIM_INDEX_VERSIONS_WRITTEN = "slim_index_versions";
+
   /**
    * Mark the helm index yaml as invalidated such that it will be rebuilt after waiting for a configured amount of time
    * to prevent unnecessary successive rebuilds of the metadata.
@@ -0,0 +1,227 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.createindex;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.common.app.ManagedLifecycle;
+import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
+import org.sonatype.nexus.jmx.reflect.ManagedAttribute;
+import org.sonatype.nexus.jmx.reflect.ManagedObject;
+import org.sonatype.nexus.thread.NexusThreadFactory;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.sonatype.nexus.common.app.ManagedLifecycle.Phase.TASKS;
+
+/**
+ * Coalesces index rebuild requests per repository and runs them on a dedicated pool, so that waiting out a burst of
+ * chart changes never parks an event bus thread.
+ *
+ * A rebuild runs once no further request has arrived for the quiet period, but never later than the max latency after
+ * the first request it covers. Only one rebuild runs per repository at a time; requests arriving while it runs cause
+ * one follow-up rebuild. Requests made before the scheduler starts, e.g. by repositories starting up, are held until
+ * it does. The number of repositories waiting for a rebuild is published over JMX.
+ *
+ * @since 1.0.22
+ */
+@Named
+@Singleton
+@ManagedLifecycle(phase = TASKS)
+@ManagedObject
+public class HelmIndexRebuildScheduler
+    extends StateGuardLifecycleSupport
+{
+  private final long quietPeriodNanos;
+
+  private final long maxLatencyNanos;
+
+  private final int threads;
+
+  private final ConcurrentMap<String, PendingRebuild> rebuilds = new ConcurrentHashMap<>();
+
+  private volatile ScheduledExecutorService executor;
+
+  @Inject
+  public HelmIndexRebuildScheduler(
+      @Named("${nexus.helm.createrepo.interval:-1000}") final long quietPeriod,
+      @Named("${nexus.helm.createrepo.maxLatency:-30000}") final long maxLatency,
+      @Named("${nexus.helm.createrepo.threads:-4}") final int threads)
+  {
+    checkArgument(threads > 0, "threads must be positive");
+    this.quietPeriodNanos = MILLISECONDS.toNanos(Math.max(quietPeriod, 0));
+    this.maxLatencyNanos = MILLISECONDS.toNanos(Math.max(maxLatency, quietPeriod));
+    this.threads = threads;
+  }
+
+  @Override
+  protected void doStart() {
+    executor = Executors.newScheduledThreadPool(threads, new NexusThreadFactory("helm-index", "helm-index-rebuild"));
+    for (PendingRebuild pending : rebuilds.values()) {
+      synchronized (pending) {
+        if (pending.waiting && !pending.running && pending.future == null) {
+          pending.future = executor.schedule(() -> run(pending), quietPeriodNanos, NANOSECONDS);
+        }
+      }
+    }
+  }
+
+  @Override
+  protected void doStop() {
+    executor.shutdownNow();
+    executor = null;
+    rebuilds.clear();
+  }
+
+  /**
+   * Request a rebuild of the given repository's index, replacing the rebuild of any request still waiting.
+   */
+  public void schedule(final String repositoryName, final Runnable rebuild) {
+    checkNotNull(repositoryName);
+    checkNotNull(rebuild);
+    while (true) {
+      PendingRebuild pending = rebuilds.computeIfAbsent(repositoryName, PendingRebuild::new);
+      synchronized (pending) {
+        if (pending.retired) {
+          continue; // it finished and left the map after we looked it up
+        }
+        long now = System.nanoTime();
+        pending.rebuild = rebuild;
+        pending.lastRequested = now;
+        if (!pending.waiting) {
+          pending.waiting = true;
+          pending.firstRequested = now;
+          ScheduledExecutorService current = executor;
+          if (!pending.running && current != null) {
+            pending.future = current.schedule(() -> run(pending), quietPeriodNanos, NANOSECONDS);
+          }
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Drop any rebuild still waiting for the given repository; a rebuild that is already running is left to finish.
+   */
+  public void cancel(final String repositoryName) {
+    PendingRebuild pending = rebuilds.get(repositoryName);
+    if (pending != null) {
+      synchronized (pending) {
+        pending.waiting = false;
+        if (pending.future != null) {
+          pending.future.cancel(false);
+          pending.future = null;
+        }
+        retireIfIdle(pending);
+      }
+    }
+  }
+
+  /**
+   * @return the number of repositories with a rebuild waiting to run
+   */
+  @ManagedAttribute
+  public int getQueueDepth() {
+    return (int) rebuilds.values().stream().filter(pending -> pending.waiting).count();
+  }
+
+  private void run(final PendingRebuild pending) {
+    Runnable rebuild;
+    synchronized (pending) {
+      if (!pending.waiting) {
+        return;
+      }
+      long delay = remainingDelay(pending, System.nanoTime());
+      ScheduledExecutorService current = executor;
+      if (delay > 0 && current != null) {
+        pending.future = current.schedule(() -> run(pending), delay, NANOSECONDS);
+        return;
+      }
+      rebuild = pending.rebuild;
+      pending.waiting = false;
+      pending.running = true;
+      pending.future = null;
+    }
+
+    try {
+      rebuild.run();
+    }
+    catch (Exception e) {
+      log.warn("Failed to rebuild Helm index for repository {}", pending.repositoryName, e);
+    }
+    finally {
+      synchronized (pending) {
+        pending.running = false;
+        ScheduledExecutorService current = executor;
+        if (pending.waiting && current != null && !current.isShutdown()) {
+          long delay = Math.max(remainingDelay(pending, System.nanoTime()), 0);
+          pending.future = current.schedule(() -> run(pending), delay, NANOSECONDS);
+        }
+        retireIfIdle(pending);
+      }
+    }
+  }
+
+  /**
+   * Time left before a waiting rebuild should run: the rest of the quiet period, capped by the max latency.
+   */
+  private long remainingDelay(final PendingRebuild pending, final long now) {
+    long quiet = pending.lastRequested + quietPeriodNanos - now;
+    long latency = pending.firstRequested + maxLatencyNanos - now;
+    return Math.min(quiet, latency);
+  }
+
+  private void retireIfIdle(final PendingRebuild pending) {
+    if (!pending.waiting && !pending.running) {
+      pending.retired = true;
+      rebuilds.remove(pending.repositoryName, pending);
+    }
+  }
+
+  /**
+   * Rebuild state for a single repository, guarded by its own monitor.
+   */
+  private static class PendingRebuild
+  {
+    private final String repositoryName;
+
+    private Runnable rebuild;
+
+    private long firstRequested;
+
+    private long lastRequested;
+
+    private ScheduledFuture<?> future;
+
+    private boolean waiting;
+
+    private boolean running;
+
+    private boolean retired;
+
+    PendingRebuild(final String repositoryName) {
+      this.repositoryName = repositoryName;
+    }
+  }
+}
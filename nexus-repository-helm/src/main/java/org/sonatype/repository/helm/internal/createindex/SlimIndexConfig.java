@@ -0,0 +1,53 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.createindex;
+
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.repository.helm.internal.HelmFormat;
+
+/**
+ * Settings of the slim index.yaml a Helm hosted repository writes next to its full index, listing only the newest
+ * {@code slimIndexVersions} versions of every chart. It is read from the repository's {@code helm} configuration
+ * attributes and not written unless set.
+ *
+ * @since 1.0.22
+ */
+public final class SlimIndexConfig
+{
+  public static final String SLIM_INDEX_VERSIONS = "slimIndexVersions";
+
+  /**
+   * Request path of the slim index.
+   */
+  public static final String SLIM_INDEX_YAML = "/slim/index.yaml";
+
+  private SlimIndexConfig() {
+    // static utility
+  }
+
+  /**
+   * @return how many versions of each chart the slim index lists, or 0 when it is disabled
+   */
+  public static int versions(final Configuration configuration) {
+    Object versions = configuration.attributes(HelmFormat.NAME).get(SLIM_INDEX_VERSIONS);
+    if (versions instanceof Number) {
+      return Math.max(((Number) versions).intValue(), 0);
+    }
+    try {
+      return versions == null ? 0 : Math.max(Integer.parseInt(versions.toString().trim()), 0);
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
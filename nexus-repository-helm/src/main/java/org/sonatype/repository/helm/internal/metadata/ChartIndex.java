@@ -13,12 +13,25 @@
 package org.sonatype.repository.helm.internal.metadata;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
+import org.sonatype.repository.helm.internal.util.ChartVersions;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import org.joda.time.DateTime;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.nullsFirst;
+import static java.util.Comparator.nullsLast;
+
 /**
  * Object for storing attributes in a Helm index.yaml file
  *
@@ -26,10 +39,20 @@ import org.joda.time.DateTime;
  */
 public final class ChartIndex
 {
+  private static final Comparator<ChartEntry> ENTRY_ORDER =
+      comparing(ChartEntry::getVersion, nullsFirst(Comparator.<String>naturalOrder()))
+          .thenComparing(entry -> String.valueOf(entry.getUrls()));
+
+  private static final Comparator<ChartEntry> LATEST_FIRST =
+      comparing(ChartEntry::getVersion, nullsLast(ChartVersions.ORDER.reversed()));
+
   private String apiVersion;
   private Map<String, List<ChartEntry>> entries;
   private DateTime generated;
 
+  // entries by the chart files they are served from, built on the first removal and kept up to date from then on
+  private ListMultimap<String, ChartEntry> entriesByUrl;
+
   public ChartIndex() {
     this.entries = new HashMap<>();
   }
@@ -48,10 +71,142 @@ public final class ChartIndex
 
   public void addEntry(final ChartEntry chartEntry) {
     this.entries.computeIfAbsent(chartEntry.getName(), k -> new ArrayList<>()).add(chartEntry);
+    if (entriesByUrl != null && chartEntry.getUrls() != null) {
+      chartEntry.getUrls().forEach(url -> entriesByUrl.put(url, chartEntry));
+    }
+  }
+
+  /**
+   * Remove every entry served from the given url (the chart file name), dropping the chart name altogether once its
+   * last version is gone. Entries are looked up by url, through a table built on the first removal.
+   *
+   * @return true if at least one entry was removed
+   */
+  public boolean removeEntry(final String url) {
+    if (entriesByUrl == null) {
+      entriesByUrl = ArrayListMultimap.create();
+      entries.values().forEach(versions -> versions.forEach(entry -> {
+        if (entry.getUrls() != null) {
+          entry.getUrls().forEach(entryUrl -> entriesByUrl.put(entryUrl, entry));
+        }
+      }));
+    }
+    List<ChartEntry> removed = entriesByUrl.removeAll(url);
+    for (ChartEntry entry : removed) {
+      entry.getUrls().forEach(entryUrl -> entriesByUrl.remove(entryUrl, entry));
+      List<ChartEntry> versions = entries.get(entry.getName());
+      if (versions != null) {
+        versions.removeIf(version -> version == entry);
+        if (versions.isEmpty()) {
+          entries.remove(entry.getName());
+        }
+      }
+    }
+    return !removed.isEmpty();
+  }
+
+  /**
+   * @return the number of chart versions in this index
+   */
+  public int countEntries() {
+    return this.entries.values().stream().mapToInt(List::size).sum();
+  }
+
+  /**
+   * @return the digest of the chart files this index lists and their SHA-256 digests
+   */
+  public ChartsDigest chartsDigest() {
+    ChartsDigest digest = new ChartsDigest();
+    entries.values().forEach(versions -> versions.forEach(entry -> {
+      if (entry.getUrls() != null) {
+        entry.getUrls().forEach(url -> digest.add(url, entry.getDigest()));
+      }
+    }));
+    return digest;
+  }
+
+  /**
+   * Computes a SHA-256 fingerprint of the api version and chart entries. The generated timestamp and the order of the
+   * entries are ignored, so an unchanged set of charts always yields the same fingerprint.
+   */
+  public String fingerprint() {
+    Hasher hasher = Hashing.sha256().newHasher();
+    putField(hasher, apiVersion);
+    for (Map.Entry<String, List<ChartEntry>> chart : new TreeMap<>(entries).entrySet()) {
+      putField(hasher, chart.getKey());
+      List<ChartEntry> versions = new ArrayList<>(chart.getValue());
+      versions.sort(ENTRY_ORDER);
+      hasher.putInt(versions.size());
+      for (ChartEntry entry : versions) {
+        putField(hasher, entry.getName());
+        putField(hasher, entry.getVersion());
+        putField(hasher, entry.getDescription());
+        putField(hasher, entry.getAppVersion());
+        putField(hasher, entry.getIcon());
+        putField(hasher, entry.getDigest());
+        putField(hasher, entry.getCreated() != null ? entry.getCreated().getMillis() : null);
+        putList(hasher, entry.getUrls());
+        putList(hasher, entry.getSources());
+        List<Map<String, String>> maintainers = entry.getMaintainers();
+        hasher.putInt(maintainers != null ? maintainers.size() : -1);
+        if (maintainers != null) {
+          for (Map<String, String> maintainer : maintainers) {
+            putList(hasher, maintainer != null ? new ArrayList<>(new TreeMap<>(maintainer).entrySet()) : null);
+          }
+        }
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private static void putList(final Hasher hasher, final List<?> values) {
+    hasher.putInt(values != null ? values.size() : -1);
+    if (values != null) {
+      values.forEach(value -> putField(hasher, value));
+    }
+  }
+
+  private static void putField(final Hasher hasher, final Object value) {
+    if (value == null) {
+      hasher.putInt(-1);
+    }
+    else {
+      String string = value.toString();
+      hasher.putInt(string.length()).putString(string, UTF_8);
+    }
+  }
+
+  /**
+   * @return a copy of this index listing only the newest {@code versions} versions of every chart, by semantic version
+   */
+  public ChartIndex latest(final int versions) {
+    ChartIndex latest = new ChartIndex();
+    latest.setApiVersion(apiVersion);
+    latest.setGenerated(generated);
+    for (Map.Entry<String, List<ChartEntry>> chart : entries.entrySet()) {
+      List<ChartEntry> newest = new ArrayList<>(chart.getValue());
+      newest.sort(LATEST_FIRST);
+      latest.entries.put(chart.getKey(), new ArrayList<>(newest.subList(0, Math.min(versions, newest.size()))));
+    }
+    return latest;
+  }
+
+  /**
+   * @return a copy of this index listing only the versions of the given chart, without a generated timestamp
+   */
+  public ChartIndex only(final String chart) {
+    ChartIndex only = new ChartIndex();
+    only.setApiVersion(apiVersion);
+    List<ChartEntry> versions = entries.get(chart);
+    if (versions != null) {
+      only.entries.put(chart, versions);
+    }
+    return only;
   }
 
   public void setEntries(final Map<String, List<ChartEntry>> entries) {
     this.entries = entries;
+    this.entriesByUrl = null;
   }
 
   public DateTime getGenerated() { return this.generated; }
@@ -0,0 +1,122 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.repository.helm.internal.HelmFormat;
+import org.sonatype.repository.helm.internal.util.ChartVersions;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Which charts a Helm proxy fetches ahead of its clients once a refreshed index.yaml lists them: the latest
+ * {@code prefetchVersions} versions of every chart whose name matches one of the comma separated {@code prefetchCharts}
+ * glob patterns, both read from the repository's {@code helm} configuration attributes. Prefetching is off unless both
+ * are set.
+ *
+ * @since 1.0.22
+ */
+public final class ChartPrefetchPolicy
+{
+  public static final String PREFETCH_VERSIONS = "prefetchVersions";
+
+  public static final String PREFETCH_CHARTS = "prefetchCharts";
+
+  public static final ChartPrefetchPolicy NONE = new ChartPrefetchPolicy(0, emptyList());
+
+  private static final Comparator<UpstreamIndex.Entry> LATEST_FIRST =
+      Comparator.comparing(UpstreamIndex.Entry::getVersion, Comparator.nullsLast(ChartVersions.ORDER.reversed()));
+
+  private final int versions;
+
+  private final List<Pattern> charts;
+
+  private ChartPrefetchPolicy(final int versions, final List<Pattern> charts) {
+    this.versions = versions;
+    this.charts = charts;
+  }
+
+  public static ChartPrefetchPolicy create(final int versions, @Nullable final String charts) {
+    List<Pattern> patterns = new ArrayList<>();
+    for (String glob : Splitter.on(',').trimResults().omitEmptyStrings().split(Strings.nullToEmpty(charts))) {
+      patterns.add(glob(glob));
+    }
+    return versions <= 0 || patterns.isEmpty() ? NONE : new ChartPrefetchPolicy(versions, patterns);
+  }
+
+  public static ChartPrefetchPolicy read(final Configuration configuration) {
+    NestedAttributesMap attributes = configuration.attributes(HelmFormat.NAME);
+    Object versions = attributes.get(PREFETCH_VERSIONS);
+    Object charts = attributes.get(PREFETCH_CHARTS);
+    return create(versions instanceof Number ? ((Number) versions).intValue() : parseInt(versions),
+        charts == null ? null : charts.toString());
+  }
+
+  public boolean isEnabled() {
+    return this != NONE;
+  }
+
+  /**
+   * @return the paths of the charts in {@code index} to prefetch
+   */
+  public List<String> select(final UpstreamIndex index) {
+    Map<String, List<UpstreamIndex.Entry>> byName = new LinkedHashMap<>();
+    for (UpstreamIndex.Entry entry : index.entries()) {
+      if (entry.getName() != null && matches(entry.getName())) {
+        byName.computeIfAbsent(entry.getName(), name -> new ArrayList<>()).add(entry);
+      }
+    }
+    List<String> paths = new ArrayList<>();
+    for (List<UpstreamIndex.Entry> entries : byName.values()) {
+      entries.sort(LATEST_FIRST);
+      for (UpstreamIndex.Entry entry : entries.subList(0, Math.min(versions, entries.size()))) {
+        paths.add(entry.getPath());
+      }
+    }
+    return paths;
+  }
+
+  private boolean matches(final String name) {
+    return charts.stream().anyMatch(pattern -> pattern.matcher(name).matches());
+  }
+
+  private static Pattern glob(final String glob) {
+    List<String> regex = new ArrayList<>();
+    for (String literal : Splitter.on('*').split(glob)) {
+      regex.add(literal.isEmpty() ? "" : Pattern.quote(literal));
+    }
+    return Pattern.compile(String.join(".*", regex));
+  }
+
+  private static int parseInt(@Nullable final Object value) {
+    try {
+      return value == null ? 0 : Integer.parseInt(value.toString().trim());
+    }
+    catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
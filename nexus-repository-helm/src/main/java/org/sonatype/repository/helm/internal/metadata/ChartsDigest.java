@@ -0,0 +1,78 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Order-independent digest of a set of chart files and their SHA-256 digests, so the charts listed by an index can be
+ * compared with the charts of a repository however either is read.
+ *
+ * @since 1.0.22
+ */
+public final class ChartsDigest
+{
+  private final byte[] sum = new byte[32];
+
+  private int count;
+
+  /**
+   * Adds a chart file; files are summed up byte-wise, so the order they are added in does not matter.
+   */
+  public void add(final String filename, @Nullable final String sha256) {
+    byte[] hash = Hashing.sha256().newHasher()
+        .putInt(filename.length()).putString(filename, UTF_8)
+        .putString(sha256 != null ? sha256 : "", UTF_8)
+        .hash().asBytes();
+    for (int i = 0; i < sum.length; i++) {
+      sum[i] += hash[i];
+    }
+    count++;
+  }
+
+  /**
+   * @return the number of chart files added
+   */
+  public int count() {
+    return count;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ChartsDigest)) {
+      return false;
+    }
+    ChartsDigest that = (ChartsDigest) o;
+    return count == that.count && Arrays.equals(sum, that.sum);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(sum);
+  }
+
+  @Override
+  public String toString() {
+    return count + "/" + HashCode.fromBytes(sum);
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.common.app.ManagedLifecycle;
+import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.thread.NexusThreadFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.sonatype.nexus.common.app.ManagedLifecycle.Phase.TASKS;
+
+/**
+ * Fetches charts into proxy caches in the background, see {@link ChartPrefetchPolicy}. All proxies share a pool of at
+ * most {@code nexus.helm.prefetch.maxParallel} fetches at a time, and a chart already queued is not queued again. At
+ * most {@code nexus.helm.prefetch.maxQueued} fetches wait for the pool; charts beyond that are dropped, to be fetched
+ * on first request instead. Nothing is prefetched while it is not running.
+ *
+ * @since 1.0.22
+ */
+@Named
+@Singleton
+@ManagedLifecycle(phase = TASKS)
+public class HelmChartPrefetcher
+    extends StateGuardLifecycleSupport
+{
+  /**
+   * Fetches the chart at the given path into the proxy cache.
+   */
+  @FunctionalInterface
+  public interface Fetcher
+  {
+    void fetch(String path) throws Exception;
+  }
+
+  private final int maxParallel;
+
+  private final int maxQueued;
+
+  private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+  private volatile ExecutorService executor;
+
+  @Inject
+  public HelmChartPrefetcher(@Named("${nexus.helm.prefetch.maxParallel:-4}") final int maxParallel,
+                             @Named("${nexus.helm.prefetch.maxQueued:-1000}") final int maxQueued)
+  {
+    checkArgument(maxParallel > 0, "maxParallel must be positive");
+    checkArgument(maxQueued > 0, "maxQueued must be positive");
+    this.maxParallel = maxParallel;
+    this.maxQueued = maxQueued;
+  }
+
+  @Override
+  protected void doStart() {
+    ThreadPoolExecutor pool = new ThreadPoolExecutor(maxParallel, maxParallel, 60L, SECONDS,
+        new ArrayBlockingQueue<>(maxQueued), new NexusThreadFactory("helm-prefetch", "helm-chart-prefetch"));
+    pool.allowCoreThreadTimeOut(true);
+    executor = pool;
+  }
+
+  @Override
+  protected void doStop() {
+    executor.shutdownNow();
+    executor = null;
+    pending.clear();
+  }
+
+  /**
+   * Runs {@code plan} in the background and queues a fetch of every chart path it returns.
+   */
+  public void prefetch(final Repository repository, final Callable<Collection<String>> plan, final Fetcher fetcher) {
+    String repositoryName = repository.getName();
+    boolean planned = execute(() -> {
+      try {
+        Collection<String> paths = plan.call();
+        log.debug("Prefetching {} charts into {}", paths.size(), repositoryName);
+        int dropped = 0;
+        for (String path : paths) {
+          String key = repositoryName + ':' + path;
+          if (pending.add(key) && !execute(() -> fetch(repositoryName, path, fetcher), () -> pending.remove(key))) {
+            dropped++;
+          }
+        }
+        if (dropped > 0) {
+          log.info("Prefetch queue is full, {} charts are not prefetched into {}", dropped, repositoryName);
+        }
+      }
+      catch (Exception e) {
+        log.warn("Could not plan chart prefetch for {}: {}", repositoryName, e.toString(), log.isDebugEnabled() ? e : null);
+      }
+    }, () -> {});
+    if (!planned) {
+      log.debug("Prefetch into {} skipped, the prefetcher is busy or not running", repositoryName);
+    }
+  }
+
+  @VisibleForTesting
+  boolean isPending(final String repositoryName, final String path) {
+    return pending.contains(repositoryName + ':' + path);
+  }
+
+  private void fetch(final String repositoryName, final String path, final Fetcher fetcher) {
+    try {
+      fetcher.fetch(path);
+    }
+    catch (Exception e) {
+      log.warn("Could not prefetch {} into {}: {}", path, repositoryName, e.toString(), log.isDebugEnabled() ? e : null);
+    }
+  }
+
+  /**
+   * @return {@code false} if the task was dropped, in which case {@code done} has been run
+   */
+  private boolean execute(final Runnable task, final Runnable done) {
+    ExecutorService current = executor;
+    try {
+      if (current != null) {
+        current.execute(() -> {
+          try {
+            task.run();
+          }
+          finally {
+            done.run();
+          }
+        });
+        return true;
+      }
+    }
+    catch (RejectedExecutionException e) {
+      // queue is full or the pool was shut down
+    }
+    done.run();
+    return false;
+  }
+}
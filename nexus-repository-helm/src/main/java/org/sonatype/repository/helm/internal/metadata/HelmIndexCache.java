@@ -0,0 +1,259 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.collect.AttributesMap;
+import org.sonatype.nexus.common.event.EventAware;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.content.event.asset.AssetDownloadedEvent;
+import org.sonatype.nexus.repository.content.event.asset.AssetPurgedEvent;
+import org.sonatype.nexus.repository.manager.RepositoryDeletedEvent;
+import org.sonatype.nexus.repository.storage.AssetEvent;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.repository.helm.internal.HelmFormat;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.io.ByteStreams;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.repository.storage.AssetEntityAdapter.P_ASSET_KIND;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
+
+/**
+ * Keeps the bytes of each repository's current index.yaml, and of its gzip copy, in memory so that index reads do not
+ * go to the database or blob store. Entries are dropped when index assets of the repository change; hits are served
+ * with the attributes (ETag, Last-Modified, cache info) of the content they were loaded from.
+ *
+ * A read that started before a change can finish after the change has been seen, so every entry is tagged with the
+ * repository's generation at load time and only kept if no invalidation happened in between.
+ *
+ * @since 1.0.22
+ */
+@Named
+@Singleton
+public class HelmIndexCache
+    extends ComponentSupport
+    implements EventAware
+{
+  private final long maxEntryBytes;
+
+  @Nullable
+  private final Cache<Key, CachedContent> cache;
+
+  private final ConcurrentMap<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+  /**
+   * @param maxBytes      total size of the cached indexes, 0 to disable the cache
+   * @param maxEntryBytes size of the largest index that is cached, capped by {@code maxBytes}
+   */
+  @Inject
+  public HelmIndexCache(@Named("${nexus.helm.indexCache.maxBytes:-134217728}") final long maxBytes,
+                        @Named("${nexus.helm.indexCache.maxEntryBytes:-100663296}") final long maxEntryBytes)
+  {
+    if (maxBytes > 0) {
+      this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+      // a weight bound is split across segments, so a single segment lets one entry use the whole bound; reads don't
+      // lock, and writes only happen when an index changes
+      this.cache = CacheBuilder.newBuilder()
+          .concurrencyLevel(1)
+          .maximumWeight(maxBytes)
+          .weigher((Key key, CachedContent value) -> value.bytes.length)
+          .build();
+    }
+    else {
+      this.maxEntryBytes = 0;
+      this.cache = null;
+    }
+  }
+
+  /**
+   * Returns the index of the given repository, calling the loader only when it is not cached.
+   */
+  @Nullable
+  public Content getIndex(final Repository repository, final Supplier<Content> loader) {
+    return get(new Key(repository.getName(), false), () -> Optional.ofNullable(loader.get())).orElse(null);
+  }
+
+  /**
+   * Returns the gzip copy of the index of the given repository, calling the loader only when it is not cached.
+   */
+  public Optional<Content> getGzipIndex(final Repository repository, final Supplier<Optional<Content>> loader) {
+    return get(new Key(repository.getName(), true), loader);
+  }
+
+  /**
+   * Drops the cached index of the given repository and any load of it still in flight.
+   */
+  public void invalidate(final String repositoryName) {
+    checkNotNull(repositoryName);
+    generation(repositoryName).incrementAndGet();
+    if (cache != null) {
+      cache.invalidate(new Key(repositoryName, false));
+      cache.invalidate(new Key(repositoryName, true));
+    }
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache != null ? cache.size() : 0;
+  }
+
+  private Optional<Content> get(final Key key, final Supplier<Optional<Content>> loader) {
+    if (cache == null) {
+      return loader.get();
+    }
+    CachedContent cached = cache.getIfPresent(key);
+    if (cached != null) {
+      return Optional.of(cached.toContent());
+    }
+
+    AtomicLong generation = generation(key.repositoryName);
+    long loadedAt = generation.get();
+    Optional<Content> loaded = loader.get();
+    if (!loaded.isPresent() || loaded.get().getSize() > maxEntryBytes) {
+      return loaded;
+    }
+
+    try {
+      cached = new CachedContent(loaded.get());
+    }
+    catch (IOException e) {
+      log.debug("Unable to cache index of repository {}", key.repositoryName, e);
+      return loaded;
+    }
+    if (generation.get() == loadedAt) {
+      cache.put(key, cached);
+      if (generation.get() != loadedAt) {
+        cache.invalidate(key);
+      }
+    }
+    return Optional.of(cached.toContent());
+  }
+
+  private AtomicLong generation(final String repositoryName) {
+    return generations.computeIfAbsent(repositoryName, name -> new AtomicLong());
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetEvent event) {
+    if (HelmFormat.NAME.equals(event.getAsset().format())
+        && HELM_INDEX.name().equals(event.getAsset().formatAttributes().get(P_ASSET_KIND))) {
+      invalidate(event.getRepositoryName());
+    }
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final org.sonatype.nexus.repository.content.event.asset.AssetEvent event) {
+    if (!(event instanceof AssetDownloadedEvent)
+        && HelmFormat.NAME.equals(event.getFormat())
+        && HELM_INDEX.name().equals(event.getAsset().kind())) {
+      invalidate(event.getRepository().getName());
+    }
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final AssetPurgedEvent event) {
+    if (HelmFormat.NAME.equals(event.getFormat())) {
+      invalidate(event.getRepository().getName());
+    }
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryDeletedEvent event) {
+    invalidate(event.getRepository().getName());
+  }
+
+  private static final class Key
+  {
+    private final String repositoryName;
+
+    private final boolean gzip;
+
+    Key(final String repositoryName, final boolean gzip) {
+      this.repositoryName = repositoryName;
+      this.gzip = gzip;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return gzip == key.gzip && repositoryName.equals(key.repositoryName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(repositoryName, gzip);
+    }
+  }
+
+  /**
+   * Bytes and attributes of a loaded index, turned back into fresh {@link Content} for every hit.
+   */
+  private static final class CachedContent
+  {
+    private final byte[] bytes;
+
+    private final String contentType;
+
+    private final AttributesMap attributes = new AttributesMap();
+
+    CachedContent(final Content content) throws IOException {
+      try (InputStream in = content.openInputStream()) {
+        this.bytes = ByteStreams.toByteArray(in);
+      }
+      this.contentType = content.getContentType();
+      for (Entry<String, Object> entry : content.getAttributes()) {
+        attributes.set(entry.getKey(), entry.getValue());
+      }
+    }
+
+    Content toContent() {
+      Content content = new Content(new BytesPayload(bytes, contentType));
+      for (Entry<String, Object> entry : attributes) {
+        content.getAttributes().set(entry.getKey(), entry.getValue());
+      }
+      return content;
+    }
+  }
+}
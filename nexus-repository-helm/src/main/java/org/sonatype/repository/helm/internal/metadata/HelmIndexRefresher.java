@@ -0,0 +1,152 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.Time;
+import org.sonatype.nexus.common.app.ManagedLifecycle;
+import org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.cache.CacheController;
+import org.sonatype.nexus.repository.cache.CacheInfo;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.thread.NexusThreadFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.common.app.ManagedLifecycle.Phase.TASKS;
+
+/**
+ * Stale-while-revalidate for proxied index.yaml: an index that went stale less than the maximum staleness ago is
+ * served as it is while it gets refreshed in the background, with at most one refresh in flight per repository, so
+ * clients don't wait for a large upstream index to be downloaded and rewritten. Indexes that are staler than that, or
+ * whose cache was invalidated, are refreshed before they are served as usual. It is opt-in, as clients may then see an
+ * index older than the repository's metadata max age: the maximum staleness defaults to 0, which disables it, and is
+ * set with {@code nexus.helm.indexMaxStaleness}, e.g. {@code 1h}. Refreshes run on a fixed pool of
+ * {@code nexus.helm.indexRefresh.threads} threads; indexes are served as usual while it is not running.
+ *
+ * @since 1.0.22
+ */
+@Named
+@Singleton
+@ManagedLifecycle(phase = TASKS)
+public class HelmIndexRefresher
+    extends StateGuardLifecycleSupport
+{
+  private final long maxStalenessMillis;
+
+  private final int threads;
+
+  // at most one refresh per repository is queued or running, which bounds the pool's queue
+  private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+  private volatile ExecutorService executor;
+
+  @Inject
+  public HelmIndexRefresher(@Named("${nexus.helm.indexMaxStaleness:-0s}") final Time maxStaleness,
+                            @Named("${nexus.helm.indexRefresh.threads:-2}") final int threads)
+  {
+    checkArgument(threads > 0, "threads must be positive");
+    this.maxStalenessMillis = checkNotNull(maxStaleness).toMillis();
+    this.threads = threads;
+  }
+
+  @Override
+  protected void doStart() {
+    executor = Executors.newFixedThreadPool(threads, new NexusThreadFactory("helm-index", "helm-index-refresh"));
+  }
+
+  @Override
+  protected void doStop() {
+    executor.shutdownNow();
+    executor = null;
+    refreshing.clear();
+  }
+
+  /**
+   * Returns {@code index} if it can be served stale, in which case {@code refresh} is run in the background unless a
+   * refresh of the repository's index is already running; returns {@code null} if the index is to be served through
+   * the usual proxy path.
+   */
+  @Nullable
+  public Content maybeServeStale(final Repository repository,
+                                 @Nullable final Content index,
+                                 final CacheController cacheController,
+                                 final Callable<?> refresh)
+  {
+    if (maxStalenessMillis <= 0 || index == null) {
+      return null;
+    }
+    CacheInfo cacheInfo = index.getAttributes().get(CacheInfo.class);
+    if (cacheInfo == null || !cacheController.isStale(cacheInfo) || cacheInfo.isInvalidated()
+        || !Objects.equals(cacheInfo.getCacheToken(), cacheController.current().getCacheToken())) {
+      return null;
+    }
+    long staleSince = cacheInfo.getLastVerified().getMillis() + cacheController.getContentMaxAgeSeconds() * 1000L;
+    if (System.currentTimeMillis() - staleSince > maxStalenessMillis) {
+      return null;
+    }
+    return refreshInBackground(repository.getName(), refresh) ? index : null;
+  }
+
+  @VisibleForTesting
+  boolean isRefreshing(final String repositoryName) {
+    return refreshing.contains(repositoryName);
+  }
+
+  /**
+   * @return {@code false} if the refresh could not be started
+   */
+  private boolean refreshInBackground(final String repositoryName, final Callable<?> refresh) {
+    ExecutorService current = executor;
+    if (current == null) {
+      return false;
+    }
+    if (!refreshing.add(repositoryName)) {
+      return true;
+    }
+    try {
+      current.execute(() -> {
+        try {
+          refresh.call();
+        }
+        catch (Exception e) {
+          log.warn("Could not refresh index.yaml of {}: {}", repositoryName, e.toString(), log.isDebugEnabled() ? e : null);
+        }
+        finally {
+          refreshing.remove(repositoryName);
+        }
+      });
+      log.debug("Serving stale index.yaml of {} while it is refreshed", repositoryName);
+      return true;
+    }
+    catch (RejectedExecutionException e) {
+      refreshing.remove(repositoryName);
+      return false;
+    }
+  }
+}
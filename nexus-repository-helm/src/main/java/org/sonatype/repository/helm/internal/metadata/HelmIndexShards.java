@@ -0,0 +1,475 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.common.event.EventAware;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryDeletedEvent;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.repository.helm.internal.util.YamlParser;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.Hashing;
+import org.joda.time.DateTime;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.DumperOptions.FlowStyle;
+import org.yaml.snakeyaml.DumperOptions.ScalarStyle;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.emitter.Emitter;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ImplicitTuple;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keeps small index documents that list the versions of a single chart, so that clients interested in one chart don't
+ * have to download the whole index.yaml of a repository.
+ *
+ * The shards of a repository are replaced whenever its index.yaml is written: hosted repositories hand over the index
+ * they just built, proxies the upstream index they just stored. Only the shards of charts whose entries changed are
+ * replaced, the others keep their ETag and Last-Modified so clients keep validating them. Shards are kept in memory, so
+ * after a restart (or an eviction) they are cut from the stored index.yaml in a single pass, once for all charts and
+ * all concurrent requests of the repository.
+ *
+ * Shards of an index larger than {@code nexus.helm.indexShards.maxBytes} are not kept: such repositories are served
+ * their full index.yaml instead, which lists the chart as well, until their index fits again.
+ *
+ * @since 1.0.22
+ */
+@Named
+@Singleton
+public class HelmIndexShards
+    extends ComponentSupport
+    implements EventAware
+{
+  public static final String CONTENT_TYPE = "text/x-yaml";
+
+  private static final String API_VERSION = "apiVersion";
+
+  private static final String V1 = "v1";
+
+  private static final String ENTRIES = "entries";
+
+  private final YamlParser yamlParser;
+
+  private final long maxBytes;
+
+  private final Cache<String, Shards> cache;
+
+  private final ConcurrentMap<String, Object> loadLocks = new ConcurrentHashMap<>();
+
+  // repositories whose shards exceed the bound of the cache, by the size of the index found too large
+  private final ConcurrentMap<String, Long> oversized = new ConcurrentHashMap<>();
+
+  @Inject
+  public HelmIndexShards(final YamlParser yamlParser,
+                         @Named("${nexus.helm.indexShards.maxBytes:-67108864}") final long maxBytes)
+  {
+    this.yamlParser = checkNotNull(yamlParser);
+    this.maxBytes = Math.max(maxBytes, 0);
+    // a weight bound is split across segments, a single segment lets the shards of a large index use the whole bound
+    this.cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumWeight(this.maxBytes)
+        .weigher((String repositoryName, Shards shards) -> (int) Math.min(shards.bytes, Integer.MAX_VALUE))
+        .build();
+  }
+
+  /**
+   * Returns the index document of a single chart of the given repository. When no shards are kept for the repository,
+   * or they are older than {@code maxAgeMillis} and the index they were cut from has since changed, they are cut from
+   * the index {@code loader} returns; concurrent requests wait for that instead of loading the index as well. When the
+   * index is too large to keep its shards, the index itself is returned.
+   *
+   * @param maxAgeMillis how long shards are served before checking their index is still current, or 0 for as long as
+   *                     they are kept
+   * @param loader       returns the index.yaml the repository serves, or {@code null} if there is none
+   * @return the document, or empty if the index does not list the chart
+   */
+  public Optional<Content> getShard(final Repository repository,
+                                    final String chart,
+                                    final long maxAgeMillis,
+                                    final Callable<Content> loader) throws Exception
+  {
+    checkNotNull(chart);
+    String repositoryName = repository.getName();
+    if (oversized.containsKey(repositoryName)) {
+      Content index = loader.call();
+      if (index == null || !fits(repositoryName, index)) {
+        return Optional.ofNullable(index);
+      }
+    }
+    Shards shards = cache.getIfPresent(repositoryName);
+    if (shards == null || shards.isExpired(maxAgeMillis)) {
+      synchronized (loadLocks.computeIfAbsent(repositoryName, name -> new Object())) {
+        Shards current = cache.getIfPresent(repositoryName);
+        if (current == null || current.isExpired(maxAgeMillis)) {
+          Content index = loader.call();
+          if (index != null && !fits(repositoryName, index)) {
+            return Optional.of(index);
+          }
+          shards = load(repositoryName, current, index);
+        }
+        else {
+          shards = current;
+        }
+      }
+    }
+    return Optional.ofNullable(shards.charts.get(chart)).map(Shard::toContent);
+  }
+
+  /**
+   * Replaces the shards of a hosted repository with those of the index it just built, serializing only the charts
+   * whose entries changed.
+   */
+  public void update(final Repository repository, final ChartIndex index) {
+    if (oversized.containsKey(repository.getName())) {
+      // its shards were too large to keep, the next request checks whether the index fits again
+      return;
+    }
+    Shards previous = cache.getIfPresent(repository.getName());
+    Map<String, Shard> charts = new HashMap<>();
+    for (String chart : index.getEntries().keySet()) {
+      ChartIndex single = index.only(chart);
+      String fingerprint = single.fingerprint();
+      Shard shard = previous != null ? previous.charts.get(chart) : null;
+      if (shard == null || !shard.fingerprint.equals(fingerprint)) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        yamlParser.write(out, single);
+        shard = Shard.create(fingerprint, out.toByteArray(), shard);
+      }
+      charts.put(chart, shard);
+    }
+    put(repository.getName(), new Shards(null, charts), null);
+  }
+
+  /**
+   * Replaces the shards of a proxy repository with those cut from the index.yaml it just stored, in a single pass. On
+   * failure the shards are dropped, to be cut from the stored index when next requested.
+   *
+   * @param index     the stored index
+   * @param indexYaml the content of the stored index
+   */
+  public void update(final Repository repository, final Content index, final InputStream indexYaml) {
+    String repositoryName = repository.getName();
+    if (!fits(repositoryName, index)) {
+      return;
+    }
+    try {
+      put(repositoryName, cut(cache.getIfPresent(repositoryName), tag(index), indexYaml), index);
+    }
+    catch (Exception e) {
+      log.warn("Could not cut index.yaml of repository {} into shards: {}", repositoryName, e.toString(),
+          log.isDebugEnabled() ? e : null);
+      invalidate(repositoryName);
+    }
+  }
+
+  /**
+   * Drops the shards of the given repository.
+   */
+  public void invalidate(final String repositoryName) {
+    cache.invalidate(checkNotNull(repositoryName));
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  @Subscribe
+  @AllowConcurrentEvents
+  public void on(final RepositoryDeletedEvent event) {
+    String repositoryName = event.getRepository().getName();
+    invalidate(repositoryName);
+    loadLocks.remove(repositoryName);
+    oversized.remove(repositoryName);
+  }
+
+  @VisibleForTesting
+  boolean isTracked(final String repositoryName) {
+    return loadLocks.containsKey(repositoryName) || oversized.containsKey(repositoryName);
+  }
+
+  private Shards load(final String repositoryName, @Nullable final Shards current, @Nullable final Content index)
+      throws IOException
+  {
+    Shards updated = cache.getIfPresent(repositoryName);
+    if (updated != current && updated != null) {
+      // the index was stored while it was loaded, which replaced the shards already
+      return updated;
+    }
+    String indexTag = index != null ? tag(index) : null;
+    Shards shards;
+    if (current != null && indexTag != null && indexTag.equals(current.indexTag)) {
+      shards = new Shards(indexTag, current.charts);
+    }
+    else if (index == null) {
+      shards = new Shards(null, Collections.emptyMap());
+    }
+    else {
+      log.debug("Cutting index.yaml of repository {} into shards", repositoryName);
+      try (InputStream in = index.openInputStream()) {
+        shards = cut(current, indexTag, in);
+      }
+    }
+    put(repositoryName, shards, index);
+    return shards;
+  }
+
+  private void put(final String repositoryName, final Shards shards, @Nullable final Content index) {
+    cache.put(repositoryName, shards);
+    if (cache.getIfPresent(repositoryName) != shards) {
+      markOversized(repositoryName, index != null ? index.getSize() : shards.bytes);
+    }
+  }
+
+  /**
+   * @return whether the shards of the given index can be kept, judging by its size against the bound and against the
+   * size of an index of the repository whose shards did not fit
+   */
+  private boolean fits(final String repositoryName, final Content index) {
+    Long tooLarge = oversized.get(repositoryName);
+    if (index.getSize() > maxBytes || (tooLarge != null && index.getSize() >= tooLarge)) {
+      markOversized(repositoryName, index.getSize());
+      return false;
+    }
+    oversized.remove(repositoryName);
+    return true;
+  }
+
+  private void markOversized(final String repositoryName, final long bytes) {
+    invalidate(repositoryName);
+    if (oversized.put(repositoryName, bytes) == null) {
+      log.warn("Index of repository {} is too large to keep its chart shards ({} bytes, the bound is {} bytes), " +
+          "serving the full index.yaml for them instead", repositoryName, bytes, maxBytes);
+    }
+  }
+
+  private static Shards cut(@Nullable final Shards previous, @Nullable final String indexTag, final InputStream in)
+      throws IOException
+  {
+    Map<String, Shard> previousCharts = previous != null ? previous.charts : Collections.emptyMap();
+    Map<String, Shard> charts = new HashMap<>();
+    split(in, (chart, bytes) -> charts.put(chart, Shard.create(null, bytes, previousCharts.get(chart))));
+    return new Shards(indexTag, charts);
+  }
+
+  @Nullable
+  private static String tag(final Content index) {
+    String etag = index.getAttributes().get(Content.CONTENT_ETAG, String.class);
+    if (etag != null) {
+      return etag;
+    }
+    Object lastModified = index.getAttributes().get(Content.CONTENT_LAST_MODIFIED);
+    return lastModified == null ? null : lastModified + "/" + index.getSize();
+  }
+
+  /**
+   * Cuts an index.yaml into the index documents of its charts, handing each to {@code consumer} as it is read.
+   */
+  @VisibleForTesting
+  static void split(final InputStream in, final BiConsumer<String, byte[]> consumer) throws IOException {
+    Iterator<Event> events = new Yaml(new SafeConstructor()).parse(new UnicodeReader(in)).iterator();
+    Event event = first(events, MappingStartEvent.class);
+    if (event == null) {
+      return;
+    }
+    while (!((event = events.next()) instanceof CollectionEndEvent)) {
+      boolean entries = event instanceof ScalarEvent && ENTRIES.equals(((ScalarEvent) event).getValue());
+      skip(events, event, null);
+      event = events.next();
+      if (!entries || !(event instanceof MappingStartEvent)) {
+        skip(events, event, null);
+        continue;
+      }
+      while (!((event = events.next()) instanceof CollectionEndEvent)) {
+        String chart = event instanceof ScalarEvent ? ((ScalarEvent) event).getValue() : null;
+        skip(events, event, null);
+        event = events.next();
+        List<Event> versions = new ArrayList<>();
+        versions.add(event);
+        skip(events, event, versions);
+        if (chart != null) {
+          consumer.accept(chart, emit(chart, versions));
+        }
+      }
+    }
+  }
+
+  private static byte[] emit(final String chart, final List<Event> versions) throws IOException {
+    DumperOptions options = new DumperOptions();
+    options.setDefaultFlowStyle(FlowStyle.BLOCK);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(out, UTF_8);
+    Emitter emitter = new Emitter(writer, options);
+    emitter.emit(new StreamStartEvent(null, null));
+    emitter.emit(new DocumentStartEvent(null, null, false, null, null));
+    emitter.emit(new MappingStartEvent(null, null, true, null, null, FlowStyle.BLOCK));
+    emitter.emit(scalar(API_VERSION));
+    emitter.emit(scalar(V1));
+    emitter.emit(scalar(ENTRIES));
+    emitter.emit(new MappingStartEvent(null, null, true, null, null, FlowStyle.BLOCK));
+    emitter.emit(scalar(chart));
+    for (Event event : versions) {
+      emitter.emit(event);
+    }
+    emitter.emit(new MappingEndEvent(null, null));
+    emitter.emit(new MappingEndEvent(null, null));
+    emitter.emit(new DocumentEndEvent(null, null, false));
+    emitter.emit(new StreamEndEvent(null, null));
+    writer.flush();
+    return out.toByteArray();
+  }
+
+  @Nullable
+  private static Event first(final Iterator<Event> events, final Class<? extends Event> type) {
+    while (events.hasNext()) {
+      Event event = events.next();
+      if (type.isInstance(event)) {
+        return event;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Consumes the rest of the node started by {@code event}, adding its events to {@code collected} if given.
+   */
+  private static void skip(final Iterator<Event> events, final Event event, @Nullable final List<Event> collected) {
+    if (event instanceof CollectionStartEvent) {
+      int depth = 1;
+      while (depth > 0) {
+        Event next = events.next();
+        if (collected != null) {
+          collected.add(next);
+        }
+        if (next instanceof CollectionStartEvent) {
+          depth++;
+        }
+        else if (next instanceof CollectionEndEvent) {
+          depth--;
+        }
+      }
+    }
+  }
+
+  private static ScalarEvent scalar(final String value) {
+    return new ScalarEvent(null, null, new ImplicitTuple(true, false), value, null, null, ScalarStyle.PLAIN);
+  }
+
+  /**
+   * The shards of a repository, and the tag of the index they were cut from, if known.
+   */
+  private static final class Shards
+  {
+    @Nullable
+    private final String indexTag;
+
+    private final Map<String, Shard> charts;
+
+    private final long bytes;
+
+    private final long createdMillis = System.currentTimeMillis();
+
+    Shards(@Nullable final String indexTag, final Map<String, Shard> charts) {
+      this.indexTag = indexTag;
+      this.charts = charts;
+      this.bytes = charts.entrySet().stream()
+          .mapToLong(entry -> entry.getKey().length() + entry.getValue().bytes.length)
+          .sum();
+    }
+
+    boolean isExpired(final long maxAgeMillis) {
+      return maxAgeMillis > 0 && System.currentTimeMillis() - createdMillis > maxAgeMillis;
+    }
+  }
+
+  private static final class Shard
+  {
+    private final String fingerprint;
+
+    private final byte[] bytes;
+
+    private final String etag;
+
+    private final DateTime lastModified;
+
+    private Shard(final String fingerprint, final byte[] bytes, final String etag, final DateTime lastModified) {
+      this.fingerprint = fingerprint;
+      this.bytes = bytes;
+      this.etag = etag;
+      this.lastModified = lastModified;
+    }
+
+    /**
+     * @param fingerprint of the chart's entries, if not the ETag
+     * @param previous    the shard it replaces, whose Last-Modified is kept if the document did not change
+     */
+    static Shard create(@Nullable final String fingerprint, final byte[] bytes, @Nullable final Shard previous) {
+      String etag = Hashing.sha1().hashBytes(bytes).toString();
+      String entries = fingerprint != null ? fingerprint : etag;
+      if (previous != null && previous.etag.equals(etag)) {
+        return new Shard(entries, previous.bytes, etag, previous.lastModified);
+      }
+      return new Shard(entries, bytes, etag, DateTime.now());
+    }
+
+    Content toContent() {
+      Content content = new Content(new BytesPayload(bytes, CONTENT_TYPE));
+      content.getAttributes().set(Content.CONTENT_ETAG, etag);
+      content.getAttributes().set(Content.CONTENT_LAST_MODIFIED, lastModified);
+      return content;
+    }
+  }
+}
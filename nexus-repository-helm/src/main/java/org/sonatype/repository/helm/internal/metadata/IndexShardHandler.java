@@ -0,0 +1,94 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.goodies.common.Time;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.http.HttpResponses;
+import org.sonatype.nexus.repository.http.HttpStatus;
+import org.sonatype.nexus.repository.proxy.ProxyFacet;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.nexus.repository.view.ViewFacet;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.repository.http.HttpMethods.GET;
+
+/**
+ * Serves the index document of a single chart, from the shards {@link HelmIndexShards} keeps for the repository.
+ *
+ * When there are none, the index.yaml is obtained by dispatching a request for it through the repository's own view,
+ * so hosted and proxy repositories of either storage are served alike. A proxy's shards follow its stored index, so
+ * after the given maximum age they are checked against the index it serves, which may have it refreshed upstream.
+ * Repositories whose index is too large to keep shards for are served that index instead.
+ *
+ * @since 1.0.22
+ */
+@Named
+@Singleton
+public class IndexShardHandler
+    extends ComponentSupport
+    implements Handler
+{
+  public static final String CHART_TOKEN = "chart";
+
+  public static final String SHARD_PATTERN = "/index/{" + CHART_TOKEN + ":[^/]+}.yaml";
+
+  private static final String INDEX_YAML = "/index.yaml";
+
+  private final HelmIndexShards shards;
+
+  private final long proxyMaxAgeMillis;
+
+  @Inject
+  public IndexShardHandler(final HelmIndexShards shards,
+                           @Named("${nexus.helm.indexShards.proxyMaxAge:-5m}") final Time proxyMaxAge)
+  {
+    this.shards = checkNotNull(shards);
+    this.proxyMaxAgeMillis = checkNotNull(proxyMaxAge).toMillis();
+  }
+
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    String chart = context.getAttributes().require(TokenMatcher.State.class).getTokens().get(CHART_TOKEN);
+    Repository repository = context.getRepository();
+    long maxAgeMillis = repository.optionalFacet(ProxyFacet.class).isPresent() ? proxyMaxAgeMillis : 0;
+
+    Optional<Content> shard = shards.getShard(repository, chart, maxAgeMillis, () -> getIndex(repository));
+    return shard.isPresent() ? HttpResponses.ok(shard.get()) : HttpResponses.notFound("Chart not found: " + chart);
+  }
+
+  @Nullable
+  private Content getIndex(final Repository repository) throws Exception {
+    Response index = repository.facet(ViewFacet.class)
+        .dispatch(new Request.Builder().action(GET).path(INDEX_YAML).build());
+    if (index.getStatus().getCode() != HttpStatus.OK || !(index.getPayload() instanceof Content)) {
+      return null;
+    }
+    return (Content) index.getPayload();
+  }
+}
@@ -13,6 +13,7 @@
 package org.sonatype.repository.helm.internal.metadata;
 
 import java.io.InputStream;
+import java.util.function.BiConsumer;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -20,7 +21,6 @@ import javax.inject.Singleton;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.storage.StorageFacet;
 import org.sonatype.nexus.repository.storage.TempBlob;
-import org.sonatype.nexus.thread.io.StreamCopier;
 import org.sonatype.repository.helm.internal.metadata.IndexYamlAbsoluteUrlRewriterSupport;
 
 import static org.sonatype.repository.helm.internal.HelmFormat.HASH_ALGORITHMS;
@@ -35,18 +35,33 @@ import static org.sonatype.repository.helm.internal.HelmFormat.HASH_ALGORITHMS;
 public class IndexYamlAbsoluteUrlRewriter
     extends IndexYamlAbsoluteUrlRewriterSupport
 {
-  private StorageFacet storageFacet;
-
   public TempBlob removeUrlsFromIndexYamlAndWriteToTempBlob(final TempBlob index,
                                                             final Repository repository)
   {
-    storageFacet = repository.facet(StorageFacet.class);
+    return removeUrlsFromIndexYamlAndWriteToTempBlob(index, repository, (fileName, url) -> { });
+  }
 
-    return new StreamCopier<>(outputStream -> updateUrls(index.get(), outputStream),
-        this::createTempBlob).read();
+  /**
+   * @param chartUrls receives the filename and original URL of every absolute URL rewritten as relative
+   */
+  public TempBlob removeUrlsFromIndexYamlAndWriteToTempBlob(final TempBlob index,
+                                                            final Repository repository,
+                                                            final BiConsumer<String, String> chartUrls)
+  {
+    return removeUrlsFromIndexYamlAndWriteToTempBlob(index.get(), repository, chartUrls);
   }
 
-  private TempBlob createTempBlob(final InputStream is) {
-    return storageFacet.createTempBlob(is, HASH_ALGORITHMS);
+  /**
+   * Rewrites the index while it is read from {@code index}, typically straight from the remote, into a single
+   * {@link TempBlob}.
+   *
+   * @param chartUrls receives the filename and original URL of every absolute URL rewritten as relative
+   */
+  public TempBlob removeUrlsFromIndexYamlAndWriteToTempBlob(final InputStream index,
+                                                            final Repository repository,
+                                                            final BiConsumer<String, String> chartUrls)
+  {
+    StorageFacet storageFacet = repository.facet(StorageFacet.class);
+    return rewriteUrls(index, chartUrls, in -> storageFacet.createTempBlob(in, HASH_ALGORITHMS));
   }
 }
@@ -12,18 +12,26 @@
  */
 package org.sonatype.repository.helm.internal.metadata;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Reader;
 import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.annotation.Nullable;
 
 import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.thread.io.StreamCopier;
 
 import org.apache.http.client.utils.URIBuilder;
 import org.yaml.snakeyaml.DumperOptions;
@@ -34,6 +42,9 @@ import org.yaml.snakeyaml.events.CollectionEndEvent;
 import org.yaml.snakeyaml.events.CollectionStartEvent;
 import org.yaml.snakeyaml.events.Event;
 import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Removes absolute URL entries from index.yaml
@@ -45,11 +56,76 @@ public class IndexYamlAbsoluteUrlRewriterSupport
 {
   private static final String URLS = "urls";
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final int SNIFF_SIZE = 1024;
+
   protected void updateUrls(final InputStream is,
                             final OutputStream os)
   {
-    try (Reader reader = new InputStreamReader(is);
-         Writer writer = new OutputStreamWriter(os)) {
+    updateUrls(is, os, (fileName, url) -> { });
+  }
+
+  /**
+   * Block style documents, as generated by helm, are rewritten in a single streaming pass that leaves everything but
+   * the urls untouched; anything else (JSON, flow style) goes through a full YAML parse.
+   *
+   * @param chartUrls receives the filename and original URL of every absolute URL rewritten as relative
+   */
+  protected void updateUrls(final InputStream is,
+                            final OutputStream os,
+                            final BiConsumer<String, String> chartUrls)
+  {
+    try (InputStream in = new BufferedInputStream(is, BUFFER_SIZE);
+         OutputStream out = new BufferedOutputStream(os, BUFFER_SIZE)) {
+      if (isBlockStyle(in)) {
+        new StreamingIndexYamlUrlRewriter(in, out, url -> relativeUrl(url, chartUrls)).rewrite();
+      }
+      else {
+        updateUrlsWithEvents(in, out, chartUrls);
+      }
+    }
+    catch (IOException ex) {
+      log.error("Error rewriting urls in index.yaml", ex);
+    }
+  }
+
+  /**
+   * Hands {@code reader} the index with its urls rewritten while it is being read, so it can be stored in one pass;
+   * see {@link #updateUrls(InputStream, OutputStream, BiConsumer)} for how the urls are rewritten.
+   *
+   * @param chartUrls receives the filename and original URL of every absolute URL rewritten as relative
+   */
+  protected <T> T rewriteUrls(final InputStream is,
+                              final BiConsumer<String, String> chartUrls,
+                              final Function<InputStream, T> reader)
+  {
+    InputStream in = new BufferedInputStream(is, BUFFER_SIZE);
+    try {
+      if (!isBlockStyle(in)) {
+        return new StreamCopier<>(outputStream -> updateUrls(in, outputStream, chartUrls), reader).read();
+      }
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    try (InputStream rewritten = StreamingIndexYamlUrlRewriter.rewriting(in, url -> relativeUrl(url, chartUrls))) {
+      return reader.apply(rewritten);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Re-serialises the whole document through SnakeYAML, rewriting the urls on the way.
+   */
+  protected void updateUrlsWithEvents(final InputStream is,
+                                      final OutputStream os,
+                                      final BiConsumer<String, String> chartUrls) throws IOException
+  {
+    try (Reader reader = new UnicodeReader(is);
+         Writer writer = new OutputStreamWriter(os, UTF_8)) {
       Yaml yaml = new Yaml(new SafeConstructor());
       Emitter emitter = new Emitter(writer, new DumperOptions());
       boolean rewrite = false;
@@ -57,7 +133,7 @@ public class IndexYamlAbsoluteUrlRewriterSupport
         if (event instanceof ScalarEvent) {
           ScalarEvent scalarEvent = (ScalarEvent) event;
           if (rewrite) {
-            event = maybeSetAbsoluteUrlAsRelative(scalarEvent);
+            event = maybeSetAbsoluteUrlAsRelative(scalarEvent, chartUrls);
           }
           else if (URLS.equals(scalarEvent.getValue())) {
             rewrite = true;
@@ -72,29 +148,69 @@ public class IndexYamlAbsoluteUrlRewriterSupport
         emitter.emit(event);
       }
     }
-    catch (IOException ex) {
-      log.error("Error rewriting urls in index.yaml", ex);
+  }
+
+  protected Event maybeSetAbsoluteUrlAsRelative(ScalarEvent scalarEvent, final BiConsumer<String, String> chartUrls) {
+    String fileName = relativeUrl(scalarEvent.getValue(), chartUrls);
+    if (fileName != null) {
+      scalarEvent = new ScalarEvent(scalarEvent.getAnchor(), scalarEvent.getTag(),
+          scalarEvent.getImplicit(), fileName, scalarEvent.getStartMark(),
+          scalarEvent.getEndMark(), scalarEvent.getStyle());
     }
+    return scalarEvent;
   }
 
-  protected Event maybeSetAbsoluteUrlAsRelative(ScalarEvent scalarEvent) {
-    String oldUrl = scalarEvent.getValue();
+  /**
+   * @return the filename an absolute url is rewritten to, or {@code null} if it is left as it is
+   */
+  @Nullable
+  private String relativeUrl(final String oldUrl, final BiConsumer<String, String> chartUrls) {
     try {
       URI uri = new URIBuilder(oldUrl).build();
       if (uri.isAbsolute()) {
         String fileName = uri.getPath();
         // Rewrite absolute paths to relative
         if (!fileName.isEmpty()) {
-          fileName = Paths.get(fileName).getFileName().toString();
+          Path path = Paths.get(fileName).getFileName();
+          fileName = path == null ? "" : path.toString();
+          chartUrls.accept(fileName, oldUrl);
         }
-        scalarEvent = new ScalarEvent(scalarEvent.getAnchor(), scalarEvent.getTag(),
-            scalarEvent.getImplicit(), fileName, scalarEvent.getStartMark(),
-            scalarEvent.getEndMark(), scalarEvent.getStyle());
+        return fileName;
       }
     }
     catch (URISyntaxException ex) {
       log.error("Invalid URI in index.yaml", ex);
     }
-    return scalarEvent;
+    return null;
+  }
+
+  /**
+   * Peeks at the first significant byte to tell block style YAML from JSON, flow style or non UTF-8 documents.
+   */
+  private static boolean isBlockStyle(final InputStream in) throws IOException {
+    in.mark(SNIFF_SIZE);
+    try {
+      for (int i = 0; i < SNIFF_SIZE; i++) {
+        int b = in.read();
+        switch (b) {
+          case -1:
+            return true;
+          case ' ':
+          case '\t':
+          case '\r':
+          case '\n':
+          case 0xEF:
+          case 0xBB:
+          case 0xBF:
+            continue;
+          default:
+            return b != '{' && b != '[' && b != 0xFE && b != 0xFF && b != 0;
+        }
+      }
+      return true;
+    }
+    finally {
+      in.reset();
+    }
   }
 }
@@ -0,0 +1,67 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.Optional;
+
+import javax.annotation.Nonnull;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.http.HttpStatus;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Handler;
+import org.sonatype.nexus.repository.view.Response;
+import org.sonatype.repository.helm.internal.AssetKind;
+
+import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
+import static com.google.common.net.HttpHeaders.CONTENT_ENCODING;
+import static com.google.common.net.HttpHeaders.VARY;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.GZIP;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.acceptsGzip;
+
+/**
+ * Serves the stored gzip copy of index.yaml with {@code Content-Encoding: gzip} to clients that accept it.
+ *
+ * @since 1.0.22
+ */
+public abstract class IndexYamlGzipHandlerSupport
+    extends ComponentSupport
+    implements Handler
+{
+  @Nonnull
+  @Override
+  public Response handle(@Nonnull final Context context) throws Exception {
+    Response response = context.proceed();
+    if (context.getAttributes().get(AssetKind.class) != HELM_INDEX
+        || response.getStatus().getCode() != HttpStatus.OK
+        || !(response.getPayload() instanceof Content)) {
+      return response;
+    }
+
+    Response.Builder builder = new Response.Builder().copy(response).header(VARY, ACCEPT_ENCODING);
+    if (acceptsGzip(context.getRequest())) {
+      Optional<Content> gzipIndex = findGzipIndex(context);
+      if (gzipIndex.isPresent()) {
+        builder.payload(gzipIndex.get()).header(CONTENT_ENCODING, GZIP);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the gzip copy of the index served by this request, if it is up to date with the index.
+   */
+  protected abstract Optional<Content> findGzipIndex(Context context);
+}
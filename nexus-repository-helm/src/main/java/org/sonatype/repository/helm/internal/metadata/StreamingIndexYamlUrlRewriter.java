@@ -0,0 +1,508 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Rewrites the scalars of {@code urls:} sequences in a block style index.yaml line by line, copying every other byte
+ * through untouched. Block sequences and single line flow sequences are supported; anything fancier (anchors, tags,
+ * multi-line scalars, ...) is left as it is.
+ *
+ * @since 1.0.22
+ */
+class StreamingIndexYamlUrlRewriter
+{
+  private static final byte[] URLS = "urls".getBytes(UTF_8);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private enum State
+  {
+    NONE, AFTER_KEY, IN_SEQUENCE
+  }
+
+  private final InputStream in;
+
+  private final OutputStream out;
+
+  private final UnaryOperator<String> rewrite;
+
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+
+  private int position;
+
+  private int limit;
+
+  private byte[] line = new byte[256];
+
+  private int length;
+
+  /**
+   * End of the line content, excluding any line terminator.
+   */
+  private int end;
+
+  private State state = State.NONE;
+
+  private int keyIndent;
+
+  private int sequenceIndent;
+
+  @Nullable
+  private byte[] pendingOriginal;
+
+  @Nullable
+  private byte[] pendingRewritten;
+
+  /**
+   * @param rewrite returns the replacement for a url, or {@code null} to leave it as it is
+   */
+  StreamingIndexYamlUrlRewriter(final InputStream in, final OutputStream out, final UnaryOperator<String> rewrite) {
+    this.in = checkNotNull(in);
+    this.out = checkNotNull(out);
+    this.rewrite = checkNotNull(rewrite);
+  }
+
+  /**
+   * @return a stream of {@code in} with its urls rewritten as it is read
+   */
+  static InputStream rewriting(final InputStream in, final UnaryOperator<String> rewrite) {
+    return new RewritingInputStream(in, rewrite);
+  }
+
+  void rewrite() throws IOException {
+    while (rewriteLine()) {
+      // keep going
+    }
+  }
+
+  /**
+   * @return {@code false} once the end of the input has been reached and everything has been written
+   */
+  private boolean rewriteLine() throws IOException {
+    if (readLine()) {
+      processLine();
+      return true;
+    }
+    commitPending(true);
+    out.flush();
+    return false;
+  }
+
+  private void processLine() throws IOException {
+    int indent = indent();
+    boolean blank = indent == end || line[indent] == '#';
+
+    if (state == State.IN_SEQUENCE) {
+      if (!blank && indent > sequenceIndent) {
+        // continuation of the previous item, which therefore can't be rewritten on its own
+        commitPending(false);
+        write(line, length);
+        return;
+      }
+      commitPending(true);
+    }
+
+    if (state != State.NONE) {
+      if (blank) {
+        write(line, length);
+        return;
+      }
+      if (state == State.AFTER_KEY) {
+        state = indent >= keyIndent && isSequenceItem(indent) ? State.IN_SEQUENCE : State.NONE;
+        sequenceIndent = indent;
+      }
+      if (state == State.IN_SEQUENCE) {
+        if (indent == sequenceIndent && isSequenceItem(indent)) {
+          sequenceItem(skipSpaces(indent + 1));
+          return;
+        }
+        state = State.NONE;
+      }
+    }
+
+    if (!blank) {
+      urlsKey(indent);
+    }
+    write(line, length);
+  }
+
+  /**
+   * Looks for a {@code urls:} key, possibly preceded by sequence indicators, and either rewrites a flow sequence
+   * value in place or starts looking for a block sequence on the following lines.
+   */
+  private void urlsKey(final int indent) {
+    int i = indent;
+    while (isSequenceItem(i)) {
+      i = skipSpaces(i + 1);
+    }
+    int key = i;
+    boolean quoted = i < end && (line[i] == '"' || line[i] == '\'');
+    if (quoted) {
+      i++;
+    }
+    if (end - i < URLS.length || !Arrays.equals(Arrays.copyOfRange(line, i, i + URLS.length), URLS)) {
+      return;
+    }
+    i += URLS.length;
+    if (quoted) {
+      if (i == end || line[i] != line[key]) {
+        return;
+      }
+      i++;
+    }
+    i = skipSpaces(i);
+    if (i == end || line[i] != ':' || (i + 1 < end && line[i + 1] != ' ' && line[i + 1] != '\t')) {
+      return;
+    }
+    i = skipSpaces(i + 1);
+    if (i == end || line[i] == '#') {
+      state = State.AFTER_KEY;
+      keyIndent = key;
+    }
+    else if (line[i] == '[') {
+      flowSequence(i);
+    }
+  }
+
+  private void sequenceItem(final int valueStart) throws IOException {
+    Scalar scalar = Scalar.parse(line, valueStart, end);
+    String replacement = scalar == null ? null : rewrite.apply(scalar.value);
+    if (replacement == null) {
+      write(line, length);
+      return;
+    }
+    pendingOriginal = Arrays.copyOf(line, length);
+    pendingRewritten = replace(scalar, replacement, 0);
+  }
+
+  /**
+   * Rewrites a flow sequence that opens and closes on this line, leaving it alone otherwise.
+   */
+  private void flowSequence(final int open) {
+    int i = skipSpaces(open + 1);
+    byte[] rewritten = null;
+    int delta = 0;
+    while (i < end && line[i] != ']') {
+      Scalar scalar = Scalar.parse(line, i, end, true);
+      if (scalar == null) {
+        return;
+      }
+      String replacement = rewrite.apply(scalar.value);
+      if (replacement != null) {
+        byte[] source = rewritten == null ? line : rewritten;
+        int sourceLength = rewritten == null ? length : rewritten.length;
+        rewritten = replace(source, sourceLength, scalar, replacement, delta);
+        delta = rewritten.length - length;
+      }
+      i = skipSpaces(scalar.next);
+      if (i < end && line[i] == ',') {
+        i = skipSpaces(i + 1);
+      }
+      else if (i == end || line[i] != ']') {
+        return;
+      }
+    }
+    if (i < end && rewritten != null) {
+      line = rewritten;
+      length = rewritten.length;
+      end += delta;
+    }
+  }
+
+  private byte[] replace(final Scalar scalar, final String replacement, final int delta) {
+    return replace(line, length, scalar, replacement, delta);
+  }
+
+  private static byte[] replace(final byte[] source,
+                                final int sourceLength,
+                                final Scalar scalar,
+                                final String replacement,
+                                final int delta)
+  {
+    byte[] value = scalar.encode(replacement);
+    int start = scalar.start + delta;
+    int stop = scalar.stop + delta;
+    byte[] result = new byte[sourceLength - (stop - start) + value.length];
+    System.arraycopy(source, 0, result, 0, start);
+    System.arraycopy(value, 0, result, start, value.length);
+    System.arraycopy(source, stop, result, start + value.length, sourceLength - stop);
+    return result;
+  }
+
+  private void commitPending(final boolean rewritten) throws IOException {
+    if (pendingOriginal != null) {
+      byte[] pending = rewritten ? pendingRewritten : pendingOriginal;
+      write(pending, pending.length);
+      pendingOriginal = null;
+      pendingRewritten = null;
+    }
+  }
+
+  private boolean isSequenceItem(final int i) {
+    return i < end && line[i] == '-' && (i + 1 == end || line[i + 1] == ' ' || line[i + 1] == '\t');
+  }
+
+  private int indent() {
+    int i = 0;
+    while (i < end && line[i] == ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  private int skipSpaces(final int from) {
+    int i = from;
+    while (i < end && (line[i] == ' ' || line[i] == '\t')) {
+      i++;
+    }
+    return i;
+  }
+
+  private void write(final byte[] bytes, final int count) throws IOException {
+    out.write(bytes, 0, count);
+  }
+
+  private boolean readLine() throws IOException {
+    length = 0;
+    while (true) {
+      if (position == limit) {
+        limit = in.read(buffer, 0, buffer.length);
+        position = 0;
+        if (limit <= 0) {
+          limit = 0;
+          break;
+        }
+      }
+      int newline = position;
+      while (newline < limit && buffer[newline] != '\n') {
+        newline++;
+      }
+      boolean found = newline < limit;
+      append(found ? newline + 1 : limit);
+      if (found) {
+        break;
+      }
+    }
+    end = length;
+    if (end > 0 && line[end - 1] == '\n') {
+      end--;
+    }
+    if (end > 0 && line[end - 1] == '\r') {
+      end--;
+    }
+    return length > 0;
+  }
+
+  private void append(final int upTo) {
+    int count = upTo - position;
+    if (length + count > line.length) {
+      line = Arrays.copyOf(line, Math.max(line.length * 2, length + count));
+    }
+    System.arraycopy(buffer, position, line, length, count);
+    length += count;
+    position = upTo;
+  }
+
+  private static class RewritingInputStream
+      extends InputStream
+  {
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    private final InputStream in;
+
+    private final Output output = new Output();
+
+    private final StreamingIndexYamlUrlRewriter rewriter;
+
+    private int position;
+
+    private boolean eof;
+
+    RewritingInputStream(final InputStream in, final UnaryOperator<String> rewrite) {
+      this.in = in;
+      this.rewriter = new StreamingIndexYamlUrlRewriter(in, output, rewrite);
+    }
+
+    @Override
+    public int read() throws IOException {
+      return fill() ? output.buffer()[position++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!fill()) {
+        return -1;
+      }
+      int count = Math.min(len, output.size() - position);
+      System.arraycopy(output.buffer(), position, b, off, count);
+      position += count;
+      return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    private boolean fill() throws IOException {
+      if (position < output.size()) {
+        return true;
+      }
+      output.reset();
+      position = 0;
+      while (!eof && output.size() < CHUNK_SIZE) {
+        eof = !rewriter.rewriteLine();
+      }
+      return output.size() > 0;
+    }
+  }
+
+  private static class Output
+      extends ByteArrayOutputStream
+  {
+    byte[] buffer() {
+      return buf;
+    }
+  }
+
+  /**
+   * A plain or quoted scalar on a single line.
+   */
+  private static class Scalar
+  {
+    private final String value;
+
+    private final byte quote;
+
+    /**
+     * Start and end of the scalar, including any quotes.
+     */
+    private final int start;
+
+    private final int stop;
+
+    /**
+     * Where whatever follows the scalar (comment, flow indicator, ...) starts.
+     */
+    private final int next;
+
+    private Scalar(final String value, final byte quote, final int start, final int stop, final int next) {
+      this.value = value;
+      this.quote = quote;
+      this.start = start;
+      this.stop = stop;
+      this.next = next;
+    }
+
+    @Nullable
+    static Scalar parse(final byte[] line, final int start, final int end) {
+      return parse(line, start, end, false);
+    }
+
+    @Nullable
+    static Scalar parse(final byte[] line, final int start, final int end, final boolean flow) {
+      if (start == end) {
+        return null;
+      }
+      byte first = line[start];
+      if (first == '"' || first == '\'') {
+        return quoted(line, start, end, first);
+      }
+      if ("&*!|>[]{}#%@`,?".indexOf(first) >= 0 || (first == '-' && start + 1 < end && line[start + 1] == ' ')) {
+        return null;
+      }
+      int stop = start;
+      int i = start;
+      while (i < end && !(line[i] == '#' && (line[i - 1] == ' ' || line[i - 1] == '\t'))) {
+        if (flow && (line[i] == ',' || line[i] == ']')) {
+          break;
+        }
+        if (line[i] == ':' && (i + 1 == end || line[i + 1] == ' ')) {
+          return null;
+        }
+        if (line[i] != ' ' && line[i] != '\t') {
+          stop = i + 1;
+        }
+        i++;
+      }
+      return new Scalar(new String(line, start, stop - start, UTF_8), (byte) 0, start, stop, stop);
+    }
+
+    @Nullable
+    private static Scalar quoted(final byte[] line, final int start, final int end, final byte quote) {
+      StringBuilder value = new StringBuilder();
+      int from = start + 1;
+      int i = from;
+      while (i < end) {
+        if (line[i] == quote) {
+          if (quote == '\'' && i + 1 < end && line[i + 1] == '\'') {
+            value.append(new String(line, from, i + 1 - from, UTF_8));
+            from = i += 2;
+            continue;
+          }
+          value.append(new String(line, from, i - from, UTF_8));
+          return new Scalar(value.toString(), quote, start, i + 1, i + 1);
+        }
+        if (line[i] == '\\' && quote == '"') {
+          if (i + 1 < end && (line[i + 1] == '"' || line[i + 1] == '\\' || line[i + 1] == '/')) {
+            value.append(new String(line, from, i - from, UTF_8));
+            from = i + 1;
+            i += 2;
+            continue;
+          }
+          return null;
+        }
+        i++;
+      }
+      return null;
+    }
+
+    byte[] encode(final String replacement) {
+      if (quote == '\'' || (quote == 0 && !isPlainSafe(replacement))) {
+        return ("'" + replacement.replace("'", "''") + "'").getBytes(UTF_8);
+      }
+      if (quote == '"') {
+        return ('"' + replacement.replace("\\", "\\\\").replace("\"", "\\\"") + '"').getBytes(UTF_8);
+      }
+      return replacement.getBytes(UTF_8);
+    }
+
+    private static boolean isPlainSafe(final String value) {
+      if (value.isEmpty() || "&*!|>[]{}#%@`,?'\"-: ".indexOf(value.charAt(0)) >= 0) {
+        return false;
+      }
+      for (int i = 0; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c == ':' || c == '#' || c == ',' || c == '[' || c == ']' || c == '{' || c == '}' || c < ' ') {
+          return false;
+        }
+      }
+      return !Character.isWhitespace(value.charAt(value.length() - 1));
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Table of where a proxied index.yaml originally pointed for charts whose URL was rewritten to a bare filename, so
+ * they can be fetched straight from that location (a CDN, GitHub releases, ...) instead of the remote. The table is
+ * stored with the rewritten index.yaml, under {@link #CHART_URLS}, and restored from there after a restart.
+ *
+ * @since 1.0.22
+ */
+public class UpstreamChartUrls
+{
+  public static final String CHART_URLS = "upstream_chart_urls";
+
+  private volatile Map<String, String> urls = Collections.emptyMap();
+
+  private volatile boolean recorded;
+
+  /**
+   * @return the original URL of the chart with the given filename, or {@code null} if it lives under the remote URL
+   */
+  @Nullable
+  public String get(final String fileName) {
+    return urls.get(fileName);
+  }
+
+  /**
+   * @return whether a table has been recorded or restored since startup
+   */
+  public boolean isRecorded() {
+    return recorded;
+  }
+
+  /**
+   * Restores the table stored with the index.yaml, unless a newer one has been recorded in the meantime.
+   *
+   * @return whether a table is in use, {@code false} if the stored index.yaml predates storing the table
+   */
+  public synchronized boolean restore(@Nullable final Map<String, String> stored) {
+    if (!recorded && stored != null) {
+      urls = stored.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(stored));
+      recorded = true;
+    }
+    return recorded;
+  }
+
+  /**
+   * Starts recording a new table while an index.yaml from {@code remoteUrl} is rewritten; the current table remains
+   * in use until {@link Recorder#publish()}.
+   */
+  public Recorder record(final URI remoteUrl) {
+    return new Recorder(remoteUrl);
+  }
+
+  public class Recorder
+      implements BiConsumer<String, String>
+  {
+    private final URI remoteUrl;
+
+    private final Map<String, String> table = new HashMap<>();
+
+    private Recorder(final URI remoteUrl) {
+      this.remoteUrl = checkNotNull(remoteUrl);
+    }
+
+    @Override
+    public void accept(final String fileName, final String url) {
+      // charts the remote already serves under their filename don't need an entry
+      if (!url.equals(resolve(fileName))) {
+        table.put(fileName, url);
+      }
+    }
+
+    /**
+     * @return a copy of the table recorded so far, to be stored with the rewritten index.yaml
+     */
+    public Map<String, String> table() {
+      return new HashMap<>(table);
+    }
+
+    public void publish() {
+      synchronized (UpstreamChartUrls.this) {
+        urls = table.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(table);
+        recorded = true;
+      }
+    }
+
+    @Nullable
+    private String resolve(final String fileName) {
+      try {
+        return remoteUrl.resolve(fileName).toString();
+      }
+      catch (IllegalArgumentException e) {
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.repository.helm.HelmAttributes;
+import org.sonatype.repository.helm.internal.database.HelmProperties;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.events.CollectionEndEvent;
+import org.yaml.snakeyaml.events.CollectionStartEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+
+/**
+ * What a proxy needs to know about the charts listed in its stored index.yaml, keyed by chart path as it appears in
+ * the (rewritten) {@code urls} of the index, which is the path the chart is requested and stored under. The index is
+ * read as a stream of YAML events, only keeping the digest and the Chart.yaml fields stored as {@link HelmAttributes};
+ * equal values, such as the description or maintainers repeated for every version of a chart, are kept once.
+ *
+ * @since 1.0.22
+ */
+public final class UpstreamIndex
+{
+  private static final String ENTRIES = "entries";
+
+  private static final String DIGEST = "digest";
+
+  private static final String URLS = "urls";
+
+  private static final String SHA256_PREFIX = "sha256:";
+
+  private static final Set<String> NULLS = ImmutableSet.of("", "~", "null", "Null", "NULL");
+
+  private final String[] paths;
+
+  private final Entry[] entries;
+
+  private UpstreamIndex(final Map<String, Entry> entries) {
+    // sorted arrays take a fraction of the memory of a map over the same entries, the view lives as long as the proxy
+    this.paths = entries.keySet().toArray(new String[0]);
+    Arrays.sort(this.paths);
+    this.entries = new Entry[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      this.entries[i] = entries.get(paths[i]);
+    }
+  }
+
+  @Nullable
+  public Entry get(final String path) {
+    int i = Arrays.binarySearch(paths, path);
+    return i < 0 ? null : entries[i];
+  }
+
+  /**
+   * @return whether the index lists a chart at {@code path}
+   */
+  public boolean contains(final String path) {
+    return Arrays.binarySearch(paths, path) >= 0;
+  }
+
+  public int size() {
+    return paths.length;
+  }
+
+  /**
+   * @return every chart version listed in the index, once
+   */
+  public List<Entry> entries() {
+    List<Entry> distinct = new ArrayList<>(paths.length);
+    for (int i = 0; i < paths.length; i++) {
+      if (paths[i].equals(entries[i].getPath())) {
+        distinct.add(entries[i]);
+      }
+    }
+    return distinct;
+  }
+
+  /**
+   * Rejects a downloaded chart whose sha256 differs from the digest published for it, if one is published.
+   *
+   * @throws IOException if the digests differ
+   */
+  public static void verifyDigest(final String path, @Nullable final String digest, final HashCode sha256)
+      throws IOException
+  {
+    if (digest != null && !digest.equals(sha256.toString())) {
+      throw new IOException(
+          "Digest mismatch for " + path + ": index.yaml publishes sha256:" + digest + ", downloaded sha256:" + sha256);
+    }
+  }
+
+  public static UpstreamIndex parse(final InputStream in) {
+    Map<String, Entry> entries = new HashMap<>();
+    Map<Object, Object> interned = new HashMap<>();
+    Iterator<Event> events = new Yaml(new SafeConstructor()).parse(new UnicodeReader(in)).iterator();
+    Event event = next(events, MappingStartEvent.class);
+    while (event != null) {
+      event = next(events, ScalarEvent.class);
+      if (event == null) {
+        break;
+      }
+      if (ENTRIES.equals(((ScalarEvent) event).getValue())) {
+        charts(events, entries, interned);
+      }
+      else {
+        skip(events, events.next());
+      }
+    }
+    return new UpstreamIndex(entries);
+  }
+
+  private static void charts(final Iterator<Event> events,
+                             final Map<String, Entry> entries,
+                             final Map<Object, Object> interned)
+  {
+    Event event = events.next();
+    if (!(event instanceof MappingStartEvent)) {
+      skip(events, event);
+      return;
+    }
+    while (!((event = events.next()) instanceof CollectionEndEvent)) {
+      String name = event instanceof ScalarEvent ? ((ScalarEvent) event).getValue() : null;
+      skip(events, event);
+      event = events.next();
+      if (!(event instanceof SequenceStartEvent)) {
+        skip(events, event);
+        continue;
+      }
+      while (!((event = events.next()) instanceof CollectionEndEvent)) {
+        if (event instanceof MappingStartEvent) {
+          entry(events, name, entries, interned);
+        }
+        else {
+          skip(events, event);
+        }
+      }
+    }
+  }
+
+  private static void entry(final Iterator<Event> events,
+                            @Nullable final String name,
+                            final Map<String, Entry> entries,
+                            final Map<Object, Object> interned)
+  {
+    String digest = null;
+    Map<String, Object> attributes = new HashMap<>();
+    List<String> urls = new ArrayList<>(1);
+    Event event;
+    while (!((event = events.next()) instanceof CollectionEndEvent)) {
+      String key = event instanceof ScalarEvent ? ((ScalarEvent) event).getValue() : null;
+      skip(events, event);
+      event = events.next();
+      if (DIGEST.equals(key) && event instanceof ScalarEvent) {
+        digest = ((ScalarEvent) event).getValue();
+      }
+      else if (URLS.equals(key) && event instanceof SequenceStartEvent) {
+        while (!((event = events.next()) instanceof CollectionEndEvent)) {
+          if (event instanceof ScalarEvent) {
+            urls.add(((ScalarEvent) event).getValue());
+          }
+          skip(events, event);
+        }
+      }
+      else if (key != null && HelmProperties.findByPropertyName(key).isPresent()) {
+        Object value = value(events, event, interned);
+        if (value != null) {
+          attributes.put(key, value);
+        }
+      }
+      else {
+        skip(events, event);
+      }
+    }
+    if (urls.isEmpty()) {
+      return;
+    }
+    if (name != null) {
+      attributes.putIfAbsent(HelmProperties.NAME.getPropertyName(), name);
+    }
+    Entry entry = new Entry(name, urls.get(0), digest, attributes);
+    for (String url : urls) {
+      entries.put(url, entry);
+    }
+  }
+
+  /**
+   * Reads the value starting with {@code event} as plain strings, lists and maps, much like Chart.yaml is read.
+   */
+  @Nullable
+  private static Object value(final Iterator<Event> events, final Event event, final Map<Object, Object> interned) {
+    Object value;
+    if (event instanceof ScalarEvent) {
+      ScalarEvent scalar = (ScalarEvent) event;
+      value = scalar.isPlain() && NULLS.contains(scalar.getValue()) ? null : scalar.getValue();
+    }
+    else if (event instanceof SequenceStartEvent) {
+      List<Object> list = new ArrayList<>();
+      Event next;
+      while (!((next = events.next()) instanceof CollectionEndEvent)) {
+        Object item = value(events, next, interned);
+        if (item != null) {
+          list.add(item);
+        }
+      }
+      value = Collections.unmodifiableList(list);
+    }
+    else if (event instanceof MappingStartEvent) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      Event next;
+      while (!((next = events.next()) instanceof CollectionEndEvent)) {
+        Object key = value(events, next, interned);
+        Object item = value(events, events.next(), interned);
+        if (key != null && item != null) {
+          map.put(key.toString(), item);
+        }
+      }
+      value = Collections.unmodifiableMap(map);
+    }
+    else {
+      skip(events, event);
+      value = null;
+    }
+    return value == null ? null : interned.computeIfAbsent(value, identity -> identity);
+  }
+
+  /**
+   * @return the next event of the given type, or {@code null} once the end of the document has been reached
+   */
+  @Nullable
+  private static Event next(final Iterator<Event> events, final Class<? extends Event> type) {
+    while (events.hasNext()) {
+      Event event = events.next();
+      if (type.isInstance(event)) {
+        return event;
+      }
+      if (event instanceof CollectionStartEvent) {
+        skip(events, event);
+      }
+      else if (event instanceof CollectionEndEvent) {
+        return null;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Consumes the rest of the node started by {@code event}.
+   */
+  private static void skip(final Iterator<Event> events, final Event event) {
+    if (event instanceof CollectionStartEvent) {
+      int depth = 1;
+      while (depth > 0) {
+        Event next = events.next();
+        if (next instanceof CollectionStartEvent) {
+          depth++;
+        }
+        else if (next instanceof CollectionEndEvent) {
+          depth--;
+        }
+      }
+    }
+  }
+
+  /**
+   * A chart version listed in the index.
+   */
+  public static final class Entry
+  {
+    @Nullable
+    private final String name;
+
+    private final String path;
+
+    @Nullable
+    private final String digest;
+
+    private final Map<String, Object> attributes;
+
+    private Entry(@Nullable final String name,
+                  final String path,
+                  @Nullable final String digest,
+                  final Map<String, Object> attributes)
+    {
+      this.name = name;
+      this.path = path;
+      this.digest = digest == null ? null : normalize(digest);
+      this.attributes = attributes;
+    }
+
+    /**
+     * @return the chart name the version is listed under
+     */
+    @Nullable
+    public String getName() {
+      return name;
+    }
+
+    @Nullable
+    public String getVersion() {
+      Object version = attributes.get(HelmProperties.VERSION.getPropertyName());
+      return version == null ? null : version.toString();
+    }
+
+    /**
+     * @return the chart's attributes as listed in the index, or {@code null} if it lacks a name or version
+     */
+    @Nullable
+    public HelmAttributes getAttributes() {
+      if (!attributes.containsKey(HelmProperties.NAME.getPropertyName()) || getVersion() == null) {
+        return null;
+      }
+      return new HelmAttributes(attributes);
+    }
+
+    /**
+     * @return the first of the chart's urls, the path it is requested under
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * @return the sha256 of the chart as published in the index, if any, in lower case hex
+     */
+    @Nullable
+    public String getDigest() {
+      return digest;
+    }
+
+    /**
+     * @return whether the index publishes a digest and {@code sha256} matches it
+     */
+    public boolean hasDigest(@Nullable final String sha256) {
+      return digest != null && sha256 != null && digest.equals(normalize(sha256));
+    }
+
+    private static String normalize(final String digest) {
+      String hex = digest.trim().toLowerCase(Locale.ENGLISH);
+      return hex.startsWith(SHA256_PREFIX) ? hex.substring(SHA256_PREFIX.length()) : hex;
+    }
+  }
+}
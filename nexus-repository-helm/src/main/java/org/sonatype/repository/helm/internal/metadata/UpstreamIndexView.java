@@ -0,0 +1,91 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.repository.view.Content;
+
+/**
+ * A proxy repository's {@link UpstreamIndex}, parsed from its stored index.yaml on first use and dropped whenever a new
+ * index is stored, so lookups don't parse the index again.
+ *
+ * @since 1.0.22
+ */
+public class UpstreamIndexView
+    extends ComponentSupport
+{
+  /**
+   * Loads the stored index.yaml.
+   */
+  @FunctionalInterface
+  public interface Loader
+  {
+    @Nullable
+    Content load() throws IOException;
+  }
+
+  private final AtomicLong generation = new AtomicLong();
+
+  @Nullable
+  private volatile UpstreamIndex index;
+
+  /**
+   * @return the parsed index, or {@code null} when no index has been stored yet
+   */
+  @Nullable
+  public UpstreamIndex get(final Loader loader) throws IOException {
+    UpstreamIndex current = index;
+    if (current != null) {
+      return current;
+    }
+    synchronized (this) {
+      current = index;
+      if (current == null) {
+        long loadedGeneration = generation.get();
+        Content content = loader.load();
+        if (content == null) {
+          return null;
+        }
+        try (InputStream in = content.openInputStream()) {
+          current = UpstreamIndex.parse(in);
+        }
+        log.debug("Parsed {} charts from index.yaml", current.size());
+        // a newer index may have been stored while this one was parsed
+        if (generation.get() == loadedGeneration) {
+          index = current;
+        }
+      }
+      return current;
+    }
+  }
+
+  /**
+   * @return the stored index's entry for the chart at {@code path}, if any
+   */
+  @Nullable
+  public UpstreamIndex.Entry getEntry(final Loader loader, final String path) throws IOException {
+    UpstreamIndex current = get(loader);
+    return current == null ? null : current.get(path);
+  }
+
+  public void invalidate() {
+    generation.incrementAndGet();
+    index = null;
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.mirror;
+
+import java.io.IOException;
+
+import javax.annotation.Nullable;
+
+import org.sonatype.nexus.repository.Facet;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+import org.sonatype.repository.helm.internal.AssetKind;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndex;
+
+import static org.sonatype.nexus.repository.http.HttpMethods.GET;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
+
+/**
+ * Populates a Helm proxy with the charts listed in its upstream index.yaml, outside of client requests.
+ *
+ * @since 1.0.22
+ */
+@Facet.Exposed
+public interface HelmMirrorFacet
+    extends Facet
+{
+  /**
+   * Gets index.yaml through the proxy, fetching it if it isn't cached or is stale.
+   *
+   * @return the charts listed in the index, or {@code null} if there is none
+   */
+  @Nullable
+  UpstreamIndex getUpstreamIndex() throws IOException;
+
+  boolean isCached(String path) throws IOException;
+
+  /**
+   * Gets the chart at {@code path} through the proxy, fetching it into the cache if needed.
+   *
+   * @return the chart, or {@code null} if it could not be found
+   */
+  @Nullable
+  Content fetchChart(String path) throws IOException;
+
+  /**
+   * @return the context of a request for the chart at {@code path}, as matched by the proxy's package route
+   */
+  static Context chartContext(final Repository repository, final String path) {
+    Context context = new Context(repository, new Request.Builder().action(GET).path('/' + path).build());
+    new TokenMatcher("/{filename:.+}").matches(context);
+    context.getAttributes().set(AssetKind.class, HELM_PACKAGE);
+    return context;
+  }
+
+  /**
+   * @return the context of a request for the proxy's index.yaml
+   */
+  static Context indexContext(final Repository repository) {
+    Context context = new Context(repository, new Request.Builder().action(GET).path("/index.yaml").build());
+    context.getAttributes().set(AssetKind.class, HELM_INDEX);
+    return context;
+  }
+}
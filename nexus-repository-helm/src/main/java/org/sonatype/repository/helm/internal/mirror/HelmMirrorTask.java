@@ -0,0 +1,224 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.mirror;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Named;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.RepositoryTaskSupport;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.scheduling.Cancelable;
+import org.sonatype.repository.helm.internal.metadata.ChartPrefetchPolicy;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndex;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import static org.sonatype.repository.helm.internal.mirror.HelmMirrorTaskDescriptor.CHARTS_FIELD_ID;
+import static org.sonatype.repository.helm.internal.mirror.HelmMirrorTaskDescriptor.CONCURRENCY_FIELD_ID;
+import static org.sonatype.repository.helm.internal.mirror.HelmMirrorTaskDescriptor.DEFAULT_CONCURRENCY;
+import static org.sonatype.repository.helm.internal.mirror.HelmMirrorTaskDescriptor.VERSIONS_FIELD_ID;
+
+/**
+ * Downloads the charts listed in a Helm proxy's upstream index.yaml into its cache, a number at a time, going through
+ * the proxy as a client request would. Charts that are already cached are skipped, so a canceled or failed run
+ * resumes where it left off when run again. Progress and throughput are logged to the task log as it goes, and shown
+ * in the task's message while it runs. The task fails, once all its repositories were processed, when the index.yaml of
+ * one of them can't be had or any chart failed to mirror.
+ *
+ * @since 1.0.22
+ */
+@Named
+public class HelmMirrorTask
+    extends RepositoryTaskSupport
+    implements Cancelable
+{
+  private static final long PROGRESS_INTERVAL_SECONDS = 10;
+
+  // failures of the repositories processed so far, reported once all of them were
+  private final List<String> failures = new ArrayList<>();
+
+  private volatile Progress progress;
+
+  @Override
+  protected Object execute() throws Exception {
+    failures.clear();
+    Object result = super.execute();
+    if (!failures.isEmpty()) {
+      throw new IllegalStateException(String.join("; ", failures));
+    }
+    return result;
+  }
+
+  @Override
+  protected void execute(final Repository repository) {
+    HelmMirrorFacet mirror = repository.facet(HelmMirrorFacet.class);
+    UpstreamIndex index;
+    try {
+      index = mirror.getUpstreamIndex();
+    }
+    catch (Exception e) {
+      log.warn("Could not get index.yaml of {}: {}", repository.getName(), e.toString(),
+          log.isDebugEnabled() ? e : null);
+      failures.add("Could not get index.yaml of " + repository.getName());
+      return;
+    }
+    if (index == null) {
+      log.warn("No index.yaml could be found for {}", repository.getName());
+      failures.add("No index.yaml could be found for " + repository.getName());
+      return;
+    }
+
+    List<String> paths = selection().select(index);
+    int concurrency = Math.max(1, getConfiguration().getInteger(CONCURRENCY_FIELD_ID, DEFAULT_CONCURRENCY));
+    log.info("Mirroring {} charts into {}, {} at a time", paths.size(), repository.getName(), concurrency);
+
+    Progress progress = new Progress(repository.getName(), paths.size());
+    this.progress = progress;
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency, new ThreadFactoryBuilder()
+        .setNameFormat("helm-mirror-" + repository.getName() + "-%d").setDaemon(true).build());
+    Semaphore inFlight = new Semaphore(concurrency);
+    try {
+      for (String path : paths) {
+        if (isCanceled()) {
+          break;
+        }
+        inFlight.acquire();
+        executor.execute(() -> {
+          try {
+            mirror(mirror, path, progress);
+          }
+          finally {
+            inFlight.release();
+          }
+        });
+      }
+      executor.shutdown();
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    progress.log(isCanceled() ? "Canceled mirroring" : "Mirrored");
+    if (progress.failed.get() > 0) {
+      failures.add(
+          progress.failed.get() + " of " + paths.size() + " charts could not be mirrored into " + repository.getName());
+    }
+  }
+
+  private void mirror(final HelmMirrorFacet mirror, final String path, final Progress progress) {
+    try {
+      if (isCanceled()) {
+        progress.canceled.incrementAndGet();
+      }
+      else if (mirror.isCached(path)) {
+        progress.skipped.incrementAndGet();
+      }
+      else {
+        Content chart = mirror.fetchChart(path);
+        if (chart == null) {
+          log.warn("{} could not be found upstream", path);
+          progress.failed.incrementAndGet();
+        }
+        else {
+          progress.fetched.incrementAndGet();
+          progress.bytes.addAndGet(Math.max(0, chart.getSize()));
+        }
+      }
+    }
+    catch (Exception e) {
+      log.warn("Could not mirror {}: {}", path, e.toString(), log.isDebugEnabled() ? e : null);
+      progress.failed.incrementAndGet();
+    }
+    progress.maybeLog();
+  }
+
+  private ChartPrefetchPolicy selection() {
+    int versions = getConfiguration().getInteger(VERSIONS_FIELD_ID, 0);
+    String charts = getConfiguration().getString(CHARTS_FIELD_ID);
+    return ChartPrefetchPolicy.create(versions > 0 ? versions : Integer.MAX_VALUE,
+        Strings.isNullOrEmpty(charts) || charts.trim().isEmpty() ? "*" : charts);
+  }
+
+  @Override
+  protected boolean appliesTo(final Repository repository) {
+    return repository.optionalFacet(HelmMirrorFacet.class).isPresent();
+  }
+
+  @Override
+  public String getMessage() {
+    Progress current = progress;
+    String message = "Mirroring upstream charts into " + getRepositoryField();
+    return current == null ? message : message + ": " + current;
+  }
+
+  private class Progress
+  {
+    private final String repositoryName;
+
+    private final int total;
+
+    private final Stopwatch stopwatch = Stopwatch.createStarted();
+
+    private final AtomicLong lastLogged = new AtomicLong();
+
+    private final AtomicLong fetched = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final AtomicLong canceled = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    Progress(final String repositoryName, final int total) {
+      this.repositoryName = repositoryName;
+      this.total = total;
+    }
+
+    void maybeLog() {
+      long elapsed = stopwatch.elapsed(TimeUnit.SECONDS);
+      long last = lastLogged.get();
+      if (elapsed - last >= PROGRESS_INTERVAL_SECONDS && lastLogged.compareAndSet(last, elapsed)) {
+        log("Mirroring");
+      }
+    }
+
+    void log(final String state) {
+      log.info("{} {}: {}", state, repositoryName, this);
+    }
+
+    @Override
+    public String toString() {
+      long done = fetched.get() + skipped.get() + failed.get() + canceled.get();
+      double seconds = Math.max(stopwatch.elapsed(TimeUnit.MILLISECONDS), 1) / 1000.0;
+      return String.format(
+          "%d/%d charts (%d downloaded, %d already cached, %d failed, %d canceled), %.1f charts/s, %.1f KiB/s",
+          done, total, fetched.get(), skipped.get(), failed.get(), canceled.get(),
+          fetched.get() / seconds, bytes.get() / 1024.0 / seconds);
+    }
+  }
+}
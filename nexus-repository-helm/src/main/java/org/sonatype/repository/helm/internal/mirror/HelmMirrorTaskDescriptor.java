@@ -0,0 +1,77 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.mirror;
+
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.formfields.NumberTextFormField;
+import org.sonatype.nexus.formfields.RepositoryCombobox;
+import org.sonatype.nexus.formfields.StringTextFormField;
+import org.sonatype.nexus.scheduling.TaskDescriptorSupport;
+
+import static org.sonatype.nexus.repository.RepositoryTaskSupport.REPOSITORY_NAME_FIELD_ID;
+
+/**
+ * Task descriptor for {@link HelmMirrorTask}.
+ *
+ * @since 1.0.22
+ */
+@Named
+@Singleton
+public class HelmMirrorTaskDescriptor
+    extends TaskDescriptorSupport
+{
+  public static final String TYPE_ID = "repository.helm.mirror";
+
+  public static final String CHARTS_FIELD_ID = "charts";
+
+  public static final String VERSIONS_FIELD_ID = "versions";
+
+  public static final String CONCURRENCY_FIELD_ID = "concurrency";
+
+  public static final int DEFAULT_CONCURRENCY = 4;
+
+  public HelmMirrorTaskDescriptor() {
+    super(TYPE_ID,
+        HelmMirrorTask.class,
+        "Helm - Mirror proxy repository",
+        VISIBLE,
+        EXPOSED,
+        new RepositoryCombobox(
+            REPOSITORY_NAME_FIELD_ID,
+            "Repository",
+            "Select the Helm proxy repository to populate with the charts listed in its upstream index.yaml",
+            true
+        ).includingAnyOfFacets(HelmMirrorFacet.class),
+        new StringTextFormField(
+            CHARTS_FIELD_ID,
+            "Charts",
+            "Comma separated chart names to mirror, where * matches any characters; leave empty for all charts",
+            false
+        ),
+        new NumberTextFormField(
+            VERSIONS_FIELD_ID,
+            "Versions",
+            "How many of the latest versions of each chart to mirror, 0 for all versions",
+            false
+        ).withInitialValue(0).withMinimumValue(0),
+        new NumberTextFormField(
+            CONCURRENCY_FIELD_ID,
+            "Concurrency",
+            "How many charts to download at a time",
+            false
+        ).withInitialValue(DEFAULT_CONCURRENCY).withMinimumValue(1).withMaximumValue(64)
+    );
+  }
+}
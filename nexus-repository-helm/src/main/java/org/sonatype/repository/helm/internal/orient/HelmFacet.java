@@ -23,6 +23,7 @@ import org.sonatype.nexus.common.collect.AttributesMap;
 import org.sonatype.nexus.repository.Facet;
 import org.sonatype.nexus.repository.storage.Asset;
 import org.sonatype.nexus.repository.storage.StorageTx;
+import org.sonatype.nexus.repository.storage.TempBlob;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Payload;
 import org.sonatype.repository.helm.HelmAttributes;
@@ -39,6 +40,8 @@ public interface HelmFacet
 {
   Iterable<Asset> browseComponentAssets(final StorageTx tx, @Nullable final AssetKind assetKind);
 
+  long countComponentAssets(final StorageTx tx, @Nullable final AssetKind assetKind);
+
   Optional<Asset> findAsset(final StorageTx tx, final String assetName);
 
   Asset findOrCreateAsset(final StorageTx tx,
@@ -58,4 +61,14 @@ public interface HelmFacet
                     @Nullable final AttributesMap contentAttributes) throws IOException;
 
   Content toContent(final Asset asset, final Blob blob);
+
+  /**
+   * Stores a gzip compressed copy of the given metadata asset next to it, named with a .gz extension.
+   */
+  void saveGzipCopy(final StorageTx tx, final Asset asset, final TempBlob content);
+
+  /**
+   * Finds the gzip compressed copy of the named metadata asset, provided it was compressed from the current content.
+   */
+  Optional<Content> findGzipCopy(final StorageTx tx, final String assetName);
 }
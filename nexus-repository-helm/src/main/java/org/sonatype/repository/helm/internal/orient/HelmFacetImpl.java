@@ -30,7 +30,9 @@ import org.sonatype.nexus.repository.storage.Bucket;
 import org.sonatype.nexus.repository.storage.Component;
 import org.sonatype.nexus.repository.storage.Query;
 import org.sonatype.nexus.repository.storage.Query.Builder;
+import org.sonatype.nexus.repository.storage.StorageFacet;
 import org.sonatype.nexus.repository.storage.StorageTx;
+import org.sonatype.nexus.repository.storage.TempBlob;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Payload;
 import org.sonatype.nexus.repository.view.payloads.BlobPayload;
@@ -39,9 +41,12 @@ import org.sonatype.repository.helm.internal.AssetKind;
 import org.sonatype.repository.helm.internal.HelmFormat;
 
 import com.google.common.base.Supplier;
+import com.google.common.hash.HashCode;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA1;
 import static org.sonatype.nexus.repository.storage.AssetEntityAdapter.P_ASSET_KIND;
 import static org.sonatype.nexus.repository.storage.AssetEntityAdapter.P_COMPONENT;
 import static org.sonatype.nexus.repository.storage.ComponentEntityAdapter.P_VERSION;
@@ -49,6 +54,9 @@ import static org.sonatype.nexus.repository.storage.MetadataNodeEntityAdapter.P_
 import static org.sonatype.nexus.repository.storage.MetadataNodeEntityAdapter.P_NAME;
 import static org.sonatype.nexus.repository.storage.Query.builder;
 import static org.sonatype.repository.helm.internal.HelmFormat.HASH_ALGORITHMS;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.GZ_EXTENSION;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.SOURCE_SHA1;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.gzip;
 
 /**
  * {@link HelmFacet} implementation.
@@ -130,16 +138,27 @@ public class HelmFacetImpl
   @Nullable
   public Iterable<Asset> browseComponentAssets(final StorageTx tx, @Nullable final AssetKind assetKind)
   {
+    Bucket bucket = tx.findBucket(getRepository());
+    return tx.browseAssets(componentAssetsQuery(assetKind), bucket);
+  }
+
+  /**
+   * Count assets for Helm components by assetKind
+   *
+   * @return number of matching assets
+   */
+  @Override
+  public long countComponentAssets(final StorageTx tx, @Nullable final AssetKind assetKind) {
+    return tx.countAssets(componentAssetsQuery(assetKind), singletonList(getRepository()));
+  }
+
+  private Query componentAssetsQuery(@Nullable final AssetKind assetKind) {
     Builder builder = builder()
         .where(P_COMPONENT).isNotNull();
     if (assetKind != null) {
       builder.and(P_ATTRIBUTES + "." + HelmFormat.NAME + "." + P_ASSET_KIND).eq(assetKind.name());
     }
-
-    Query query = builder
-        .build();
-    Bucket bucket = tx.findBucket(getRepository());
-    return tx.browseAssets(query, bucket);
+    return builder.build();
   }
 
   /**
@@ -201,6 +220,39 @@ public class HelmFacetImpl
     return toContent(asset, assetBlob.getBlob());
   }
 
+  /**
+   * Save a gzip compressed copy of a metadata asset. Failures are logged rather than thrown as the copy is optional.
+   */
+  @Override
+  public void saveGzipCopy(final StorageTx tx, final Asset asset, final TempBlob content) {
+    StorageFacet storageFacet = facet(StorageFacet.class);
+    AssetKind assetKind = AssetKind.valueOf(asset.formatAttributes().require(P_ASSET_KIND, String.class));
+    try (TempBlob gzipContent = gzip(content.get(), in -> storageFacet.createTempBlob(in, HASH_ALGORITHMS))) {
+      Asset gzipAsset = findOrCreateAsset(tx, asset.name() + GZ_EXTENSION, assetKind, new HelmAttributes(emptyMap()));
+      gzipAsset.formatAttributes().set(SOURCE_SHA1, content.getHashes().get(SHA1).toString());
+      saveAsset(tx, gzipAsset, gzipContent, asset.contentType(), null);
+    }
+    catch (IOException | RuntimeException ex) {
+      log.warn("Could not store gzip copy of {}: {}", asset.name(), ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Find the gzip compressed copy of a metadata asset.
+   *
+   * @return the copy if it was compressed from the current asset content, otherwise Optional.empty
+   */
+  @Override
+  public Optional<Content> findGzipCopy(final StorageTx tx, final String assetName) {
+    HashCode sha1 = findAsset(tx, assetName).map(asset -> asset.getChecksum(SHA1)).orElse(null);
+    if (sha1 == null) {
+      return Optional.empty();
+    }
+    return findAsset(tx, assetName + GZ_EXTENSION)
+        .filter(gzipAsset -> sha1.toString().equals(gzipAsset.formatAttributes().get(SOURCE_SHA1, String.class)))
+        .map(gzipAsset -> toContent(gzipAsset, tx.requireBlob(gzipAsset.requireBlobRef())));
+  }
+
   /**
    * Convert an asset blob to {@link Content}.
    *
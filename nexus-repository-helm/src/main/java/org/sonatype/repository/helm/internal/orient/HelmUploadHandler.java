@@ -36,6 +36,7 @@ import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.HelmUploadHandlerSupport;
 import org.sonatype.repository.helm.internal.AssetKind;
 import org.sonatype.repository.helm.internal.orient.hosted.HelmHostedFacet;
+import org.sonatype.repository.helm.internal.util.ChartYamlExtractingInputStream;
 import org.sonatype.repository.helm.internal.util.HelmAttributeParser;
 
 import org.apache.commons.lang3.StringUtils;
@@ -77,8 +78,9 @@ public class HelmUploadHandler
       throw new IllegalArgumentException("Unsupported extension. Extension must be .tgz or .tgz.prov");
     }
 
-    try (TempBlob tempBlob = storageFacet.createTempBlob(payload, HASH_ALGORITHMS)) {
-      HelmAttributes attributesFromInputStream = helmPackageParser.getAttributes(assetKind, tempBlob.get());
+    try (ChartYamlExtractingInputStream in = new ChartYamlExtractingInputStream(payload.openInputStream());
+         TempBlob tempBlob = storageFacet.createTempBlob(in, HASH_ALGORITHMS)) {
+      HelmAttributes attributesFromInputStream = helmPackageParser.getAttributes(assetKind, in, tempBlob);
       String extension = assetKind.getExtension();
       String name = attributesFromInputStream.getName();
       String version = attributesFromInputStream.getVersion();
@@ -96,7 +98,7 @@ public class HelmUploadHandler
       ensurePermitted(repository.getName(), NAME, path, Collections.emptyMap());
       try {
         UnitOfWork.begin(storageFacet.txSupplier());
-        Asset asset = facet.upload(path, tempBlob, payload, assetKind);
+        Asset asset = facet.upload(path, tempBlob, attributesFromInputStream, payload, assetKind);
         return new UploadResponse(asset);
       }
       finally {
@@ -14,16 +14,22 @@ package org.sonatype.repository.helm.internal.orient.createindex;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import org.sonatype.nexus.common.event.EventAware.Asynchronous;
-import org.sonatype.nexus.common.event.EventManager;
 import org.sonatype.nexus.common.stateguard.Guarded;
 import org.sonatype.nexus.repository.FacetSupport;
 import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.config.Configuration;
 import org.sonatype.nexus.repository.manager.RepositoryCreatedEvent;
 import org.sonatype.nexus.repository.storage.Asset;
 import org.sonatype.nexus.repository.storage.AssetCreatedEvent;
@@ -38,19 +44,24 @@ import org.sonatype.nexus.transaction.UnitOfWork;
 import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.internal.AssetKind;
 import org.sonatype.repository.helm.internal.HelmFormat;
-import org.sonatype.repository.helm.internal.content.recipe.HelmHostedFacet;
 import org.sonatype.repository.helm.internal.createindex.CreateIndexFacet;
-import org.sonatype.repository.helm.internal.createindex.HelmIndexInvalidationEvent;
+import org.sonatype.repository.helm.internal.createindex.HelmIndexRebuildScheduler;
+import org.sonatype.repository.helm.internal.createindex.SlimIndexConfig;
+import org.sonatype.repository.helm.internal.metadata.ChartIndex;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexShards;
 import org.sonatype.repository.helm.internal.orient.HelmFacet;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import org.joda.time.DateTime;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.sonatype.nexus.common.stateguard.StateGuardLifecycleSupport.State.STARTED;
 import static org.sonatype.nexus.repository.storage.AssetEntityAdapter.P_ASSET_KIND;
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
+import static org.sonatype.repository.helm.internal.createindex.SlimIndexConfig.SLIM_INDEX_YAML;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.GZ_EXTENSION;
 
 /**
  * Facet for rebuilding Helm index.yaml files
@@ -62,29 +73,65 @@ public class CreateIndexFacetImpl
     extends FacetSupport
     implements CreateIndexFacet, Asynchronous
 {
-  private final EventManager eventManager;
+  private final HelmIndexRebuildScheduler rebuildScheduler;
+
+  private final HelmIndexShards indexShards;
 
   private CreateIndexService createIndexService;
 
-  private final long interval;
+  private final boolean incremental;
 
   private static final String INDEX_YAML = "index.yaml";
 
+  private static final String SLIM_INDEX_NAME = SLIM_INDEX_YAML.substring(1);
+
   private static final String TGZ_CONTENT_TYPE = "application/x-tgz";
 
-  private final AtomicBoolean acceptingEvents = new AtomicBoolean(true);
+  // Chart assets changed since the last rebuild, applied to the stored index when running incrementally
+  private final Set<String> changedAssets = ConcurrentHashMap.newKeySet();
 
-  //Prevents the same event from being fired multiple times
-  private final AtomicBoolean eventFired = new AtomicBoolean(false);
+  private final AtomicBoolean fullRebuild = new AtomicBoolean(false);
+
+  private volatile int slimIndexVersions;
 
   @Inject
-  public CreateIndexFacetImpl(final EventManager eventManager,
+  public CreateIndexFacetImpl(final HelmIndexRebuildScheduler rebuildScheduler,
                               final CreateIndexService createIndexService,
-                              @Named("${nexus.helm.createrepo.interval:-1000}") final long interval)
+                              final HelmIndexShards indexShards,
+                              @Named("${nexus.helm.createrepo.incremental:-true}") final boolean incremental)
   {
-    this.eventManager = checkNotNull(eventManager);
+    this.rebuildScheduler = checkNotNull(rebuildScheduler);
     this.createIndexService = checkNotNull(createIndexService);
-    this.interval = interval;
+    this.indexShards = checkNotNull(indexShards);
+    this.incremental = incremental;
+  }
+
+  @Override
+  protected void doConfigure(final Configuration configuration) throws Exception {
+    super.doConfigure(configuration);
+    slimIndexVersions = SlimIndexConfig.versions(configuration);
+  }
+
+  @Override
+  protected void doStart() throws Exception {
+    super.doStart();
+    // the slim index is only written along with the full one, so have both rewritten when its settings changed
+    int writtenSlimIndexVersions;
+    UnitOfWork.begin(getRepository().facet(StorageFacet.class).txSupplier());
+    try {
+      writtenSlimIndexVersions = writtenSlimIndexVersions();
+    }
+    finally {
+      UnitOfWork.end();
+    }
+    if (slimIndexVersions != writtenSlimIndexVersions) {
+      invalidateIndex();
+    }
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    rebuildScheduler.cancel(getRepository().getName());
   }
 
   @Subscribe
@@ -124,52 +171,147 @@ public class CreateIndexFacetImpl
       String assetKindString = (String) asset.formatAttributes().get(P_ASSET_KIND);
       AssetKind assetKind = AssetKind.valueOf(assetKindString);
       if (assetKind == HELM_PACKAGE && matchesRepository(event) && isEventRelevant(event)) {
-        invalidateIndex();
+        changedAssets.add(asset.name());
+        scheduleRebuild();
       }
     }
   }
 
-  @Subscribe
-  public void on(final HelmIndexInvalidationEvent event) {
-    if (shouldProcess(event)) {
-      acceptingEvents.set(false);
-      maybeWait(event);
+  /**
+   * Run by the {@link HelmIndexRebuildScheduler} once a burst of changes to this repository has settled.
+   */
+  @Guarded(by = STARTED)
+  protected void rebuildIndex() {
+    log.info("Rebuilding Helm index for repository {}", getRepository().getName());
 
-      log.info("Rebuilding Helm index for repository {}", getRepository().getName());
+    UnitOfWork.begin(getRepository().facet(StorageFacet.class).txSupplier());
+    try {
+      ChartIndex index = buildIndex();
+      int versions = slimIndexVersions;
+      String fingerprint = fingerprint(index, versions);
+      if (fingerprint.equals(storedFingerprint())) {
+        log.debug("Helm index for repository {} is unchanged, skipping write", getRepository().getName());
+        return;
+      }
+      // both indexes are stamped with the same time, so clients switching between them see one generation
+      index.setGenerated(new DateTime());
+      // the slim index goes first, as a stored fingerprint means both are up to date
+      if (versions > 0) {
+        try (TempBlob slimIndexYaml = createIndexService.writeSlimIndexYaml(getRepository(), index, versions)) {
+          updateSlimIndexYaml(slimIndexYaml);
+        }
+      }
+      else {
+        updateSlimIndexYaml(null);
+      }
+      try (TempBlob indexYaml = createIndexService.writeIndexYaml(getRepository(), index)) {
+        updateIndexYaml(indexYaml, fingerprint, versions);
+      }
+      // shards follow the stored index, shards lost to a restart are cut from it when next requested
+      indexShards.update(getRepository(), index);
+    }
+    catch (RuntimeException e) {
+      // changes drained for this run are lost, so make sure the next run starts from scratch
+      fullRebuild.set(true);
+      throw e;
+    }
+    finally {
+      log.info("Finished rebuilding Helm index for repository {}", getRepository().getName());
 
-      UnitOfWork.begin(getRepository().facet(StorageFacet.class).txSupplier());
-      try {
-        acceptingEvents.set(true);
-        eventFired.set(false);
+      UnitOfWork.end();
+    }
+  }
 
-        updateIndexYaml(createIndexService.buildIndexYaml(getRepository()));
+  private ChartIndex buildIndex() {
+    boolean rebuild = fullRebuild.getAndSet(false) || !incremental;
+    Set<String> changes = drainChangedAssets();
+    if (!rebuild) {
+      ChartIndex index = createIndexService.patchIndex(getRepository(), changes);
+      if (index != null) {
+        log.debug("Applied {} changed charts to Helm index for repository {}", changes.size(),
+            getRepository().getName());
+        return index;
       }
-      finally {
-        log.info("Finished rebuilding Helm index for repository {}", getRepository().getName());
+    }
+    return createIndexService.buildIndex(getRepository());
+  }
 
-        UnitOfWork.end();
-      }
+  private static String fingerprint(final ChartIndex index, final int slimIndexVersions) {
+    String fingerprint = index.fingerprint();
+    return slimIndexVersions > 0 ? fingerprint + "/" + slimIndexVersions : fingerprint;
+  }
+
+  @Nullable
+  private String storedFingerprint() {
+    HelmFacet helmFacet = getRepository().facet(HelmFacet.class);
+    return helmFacet.findAsset(UnitOfWork.currentTx(), INDEX_YAML)
+        .filter(asset -> asset.blobRef() != null)
+        .map(asset -> asset.formatAttributes().get(INDEX_FINGERPRINT, String.class))
+        .orElse(null);
+  }
+
+  /**
+   * @return the slim index setting the stored index.yaml was written with, the current one if there is none yet
+   */
+  private int writtenSlimIndexVersions() {
+    HelmFacet helmFacet = getRepository().facet(HelmFacet.class);
+    return helmFacet.findAsset(UnitOfWork.currentTx(), INDEX_YAML)
+        .map(asset -> asset.formatAttributes().get(SLIM_INDEX_VERSIONS_WRITTEN))
+        .map(versions -> versions instanceof Number ? ((Number) versions).intValue() : 0)
+        .orElse(slimIndexVersions);
+  }
+
+  private Set<String> drainChangedAssets() {
+    Set<String> changes = new HashSet<>();
+    Iterator<String> iterator = changedAssets.iterator();
+    while (iterator.hasNext()) {
+      changes.add(iterator.next());
+      iterator.remove();
     }
+    return changes;
   }
 
   @TransactionalStoreBlob
-  protected void updateIndexYaml(final TempBlob indexYaml) {
+  protected void updateIndexYaml(final TempBlob indexYaml, final String fingerprint, final int versions) {
     if (indexYaml == null) {
       deleteIndexYaml();
     }
     else {
-      createIndexYaml(indexYaml);
+      createIndexYaml(indexYaml, fingerprint, versions);
     }
   }
 
-  private void createIndexYaml(final TempBlob indexYaml) {
+  @TransactionalStoreBlob
+  protected void updateSlimIndexYaml(@Nullable final TempBlob slimIndexYaml) {
+    HelmFacet helmFacet = getRepository().facet(HelmFacet.class);
+    StorageTx tx = UnitOfWork.currentTx();
+    if (slimIndexYaml == null) {
+      deleteAsset(helmFacet, tx, SLIM_INDEX_NAME);
+      deleteAsset(helmFacet, tx, SLIM_INDEX_NAME + GZ_EXTENSION);
+      return;
+    }
+    HelmAttributes attributes = new HelmAttributes(Collections.emptyMap());
+    Asset asset = helmFacet.findOrCreateAsset(tx, SLIM_INDEX_NAME, HELM_INDEX, attributes);
+    try {
+      helmFacet.saveAsset(tx, asset, slimIndexYaml, TGZ_CONTENT_TYPE, null);
+      helmFacet.saveGzipCopy(tx, asset, slimIndexYaml);
+    }
+    catch (IOException ex) {
+      log.warn("Could not set blob {}", ex.getMessage(), ex);
+    }
+  }
+
+  private void createIndexYaml(final TempBlob indexYaml, final String fingerprint, final int versions) {
     Repository repository = getRepository();
     HelmFacet helmFacet = repository.facet(HelmFacet.class);
     StorageTx tx = UnitOfWork.currentTx();
     HelmAttributes attributes = new HelmAttributes(Collections.emptyMap());
     Asset asset = helmFacet.findOrCreateAsset(tx, INDEX_YAML, HELM_INDEX, attributes);
+    asset.formatAttributes().set(INDEX_FINGERPRINT, fingerprint);
+    asset.formatAttributes().set(SLIM_INDEX_VERSIONS_WRITTEN, versions);
     try {
       helmFacet.saveAsset(tx, asset, indexYaml, TGZ_CONTENT_TYPE, null);
+      helmFacet.saveGzipCopy(tx, asset, indexYaml);
     }
     catch (IOException ex) {
       log.warn("Could not set blob {}", ex.getMessage(), ex);
@@ -178,8 +320,12 @@ public class CreateIndexFacetImpl
 
   private void deleteIndexYaml() {
     log.debug("Empty index.yaml returned, proceeding to delete asset");
-    HelmHostedFacet hosted = getRepository().facet(HelmHostedFacet.class);
-    boolean result = hosted.delete(INDEX_YAML);
+    HelmFacet helmFacet = getRepository().facet(HelmFacet.class);
+    StorageTx tx = UnitOfWork.currentTx();
+    boolean result = deleteAsset(helmFacet, tx, INDEX_YAML);
+    deleteAsset(helmFacet, tx, INDEX_YAML + GZ_EXTENSION);
+    deleteAsset(helmFacet, tx, SLIM_INDEX_NAME);
+    deleteAsset(helmFacet, tx, SLIM_INDEX_NAME + GZ_EXTENSION);
     if (result) {
       log.info("Deleted index.yaml because of empty asset list");
     }
@@ -188,19 +334,10 @@ public class CreateIndexFacetImpl
     }
   }
 
-  private boolean shouldProcess(final HelmIndexInvalidationEvent event) {
-    return getRepository().getName().equals(event.getRepositoryName());
-  }
-
-  private void maybeWait(final HelmIndexInvalidationEvent event) {
-    if (event.isWaitBeforeRebuild()) {
-      try {
-        Thread.sleep(interval);
-      }
-      catch (InterruptedException e) { // NOSONAR
-        log.warn("Helm invalidation thread interrupted, proceeding with invalidation");
-      }
-    }
+  private static boolean deleteAsset(final HelmFacet helmFacet, final StorageTx tx, final String name) {
+    Optional<Asset> asset = helmFacet.findAsset(tx, name);
+    asset.ifPresent(tx::deleteAsset);
+    return asset.isPresent();
   }
 
   /**
@@ -220,18 +357,16 @@ public class CreateIndexFacetImpl
   }
 
   /**
-   * We are accepting that the boolean values can change in the middle of this if statement. For example if
-   * acceptingEvents is true and eventFired is false but before we check eventFired acceptingEvents is toggled, we will
-   * add one additional process request which will be handled synchronously and not cause any issues.
+   * Rebuilds the whole index from every chart in the repository rather than applying individual changes.
    */
   @Override
-  public synchronized void invalidateIndex() {
-    if (acceptingEvents.get() && !eventFired.get()) {
-      log.info("Scheduling rebuild of Helm metadata to start in {} seconds", interval / 1000);
+  public void invalidateIndex() {
+    fullRebuild.set(true);
+    scheduleRebuild();
+  }
 
-      // Prevent another event being fired if one is already queued up
-      eventFired.set(true);
-      eventManager.post(new HelmIndexInvalidationEvent(getRepository().getName(), true));
-    }
+  private void scheduleRebuild() {
+    log.debug("Scheduling rebuild of Helm metadata for repository {}", getRepository().getName());
+    rebuildScheduler.schedule(getRepository().getName(), this::rebuildIndex);
   }
 }
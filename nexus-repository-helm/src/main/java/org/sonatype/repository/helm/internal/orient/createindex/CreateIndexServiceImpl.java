@@ -12,9 +12,13 @@
  */
 package org.sonatype.repository.helm.internal.orient.createindex;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -22,7 +26,9 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.sonatype.goodies.common.ComponentSupport;
+import org.sonatype.nexus.blobstore.api.Blob;
 import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.common.hash.HashAlgorithm;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.storage.Asset;
 import org.sonatype.nexus.repository.storage.StorageFacet;
@@ -34,11 +40,15 @@ import org.sonatype.repository.helm.internal.orient.HelmFacet;
 import org.sonatype.repository.helm.internal.AssetKind;
 import org.sonatype.repository.helm.internal.metadata.ChartEntry;
 import org.sonatype.repository.helm.internal.metadata.ChartIndex;
+import org.sonatype.repository.helm.internal.metadata.ChartsDigest;
 import org.sonatype.repository.helm.internal.orient.metadata.IndexYamlBuilder;
+import org.sonatype.repository.helm.internal.util.YamlParser;
 
-import org.joda.time.DateTime;
+import com.google.common.hash.HashCode;
+import org.apache.commons.io.FilenameUtils;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.repository.storage.AssetEntityAdapter.P_ASSET_KIND;
 import static org.sonatype.repository.helm.internal.database.HelmProperties.APP_VERSION;
 import static org.sonatype.repository.helm.internal.database.HelmProperties.DESCRIPTION;
 import static org.sonatype.repository.helm.internal.database.HelmProperties.ICON;
@@ -60,32 +70,118 @@ public class CreateIndexServiceImpl
 {
   private static final String API_VERSION = "v1";
 
+  private static final String INDEX_YAML = "index.yaml";
+
   private IndexYamlBuilder indexYamlBuilder;
 
+  private final YamlParser yamlParser;
+
   @Inject
-  public CreateIndexServiceImpl(final IndexYamlBuilder indexYamlBuilder) {
+  public CreateIndexServiceImpl(final IndexYamlBuilder indexYamlBuilder, final YamlParser yamlParser) {
     this.indexYamlBuilder = checkNotNull(indexYamlBuilder);
+    this.yamlParser = checkNotNull(yamlParser);
   }
 
+  @Override
   @TransactionalStoreBlob
-  @Nullable
-  public TempBlob buildIndexYaml(final Repository repository) {
-    StorageFacet storageFacet = repository.facet(StorageFacet.class);
+  public ChartIndex buildIndex(final Repository repository) {
     HelmFacet helmFacet = repository.facet(HelmFacet.class);
     StorageTx tx = UnitOfWork.currentTx();
 
     ChartIndex index = new ChartIndex();
+    index.setApiVersion(API_VERSION);
 
     for (Asset asset : helmFacet.browseComponentAssets(tx, AssetKind.HELM_PACKAGE)) {
-      parseAssetIntoChartEntry(index, asset);
+      index.addEntry(createChartEntry(asset));
+    }
+
+    return index;
+  }
+
+  @Override
+  @TransactionalStoreBlob
+  @Nullable
+  public ChartIndex patchIndex(final Repository repository, final Collection<String> assetNames) {
+    HelmFacet helmFacet = repository.facet(HelmFacet.class);
+    StorageTx tx = UnitOfWork.currentTx();
+
+    ChartIndex index = loadIndex(tx, helmFacet);
+    if (index == null) {
+      return null;
+    }
+
+    for (String assetName : assetNames) {
+      String filename = FilenameUtils.getName(assetName);
+      Optional<Asset> asset = helmFacet.findAsset(tx, assetName);
+      index.removeEntry(filename);
+      if (asset.isPresent() && isChart(asset.get())) {
+        ChartEntry chartEntry = createChartEntry(asset.get());
+        chartEntry.getUrls().stream().filter(url -> !url.equals(filename)).forEach(index::removeEntry);
+        index.addEntry(chartEntry);
+      }
+    }
+
+    long charts = helmFacet.countComponentAssets(tx, AssetKind.HELM_PACKAGE);
+    if (index.countEntries() != charts) {
+      log.info("Helm index for repository {} has {} entries but there are {} charts, a full rebuild is required",
+          repository.getName(), index.countEntries(), charts);
+      return null;
+    }
+    // the same number of charts can still be other charts, missed changes are caught by their files and digests
+    if (!index.chartsDigest().equals(chartsDigest(tx, helmFacet))) {
+      log.info("Helm index for repository {} does not list the charts it holds, a full rebuild is required",
+          repository.getName());
+      return null;
     }
 
     index.setApiVersion(API_VERSION);
-    index.setGenerated(new DateTime());
-    return indexYamlBuilder.build(index, storageFacet);
+    return index;
+  }
+
+  private ChartsDigest chartsDigest(final StorageTx tx, final HelmFacet helmFacet) {
+    ChartsDigest digest = new ChartsDigest();
+    for (Asset asset : helmFacet.browseComponentAssets(tx, AssetKind.HELM_PACKAGE)) {
+      HashCode sha256 = asset.getChecksum(HashAlgorithm.SHA256);
+      digest.add(FilenameUtils.getName(asset.name()), sha256 != null ? sha256.toString() : null);
+    }
+    return digest;
+  }
+
+  @Override
+  public TempBlob writeIndexYaml(final Repository repository, final ChartIndex index) {
+    return indexYamlBuilder.build(index, repository.facet(StorageFacet.class));
+  }
+
+  @Override
+  public TempBlob writeSlimIndexYaml(final Repository repository, final ChartIndex index, final int versions) {
+    return indexYamlBuilder.build(index.latest(versions), repository.facet(StorageFacet.class));
+  }
+
+  @Nullable
+  private ChartIndex loadIndex(final StorageTx tx, final HelmFacet helmFacet) {
+    Optional<Asset> indexAsset = helmFacet.findAsset(tx, INDEX_YAML);
+    if (!indexAsset.isPresent() || indexAsset.get().blobRef() == null) {
+      return null;
+    }
+    Blob blob = tx.getBlob(indexAsset.get().blobRef());
+    if (blob == null) {
+      return null;
+    }
+    try (InputStream inputStream = blob.getInputStream()) {
+      return yamlParser.loadIndex(inputStream);
+    }
+    catch (IOException e) {
+      log.warn("Unable to read stored index.yaml, a full rebuild is required", e);
+      return null;
+    }
+  }
+
+  private boolean isChart(final Asset asset) {
+    return asset.componentId() != null &&
+        AssetKind.HELM_PACKAGE.name().equals(asset.formatAttributes().get(P_ASSET_KIND, String.class));
   }
 
-  private void parseAssetIntoChartEntry(final ChartIndex index, final Asset asset) {
+  private ChartEntry createChartEntry(final Asset asset) {
     NestedAttributesMap formatAttributes = asset.formatAttributes();
     NestedAttributesMap assetAttributes = asset.attributes();
     ChartEntry chartEntry = new ChartEntry();
@@ -103,7 +199,7 @@ public class CreateIndexServiceImpl
         .get("sha256").toString());
     createListOfRelativeUrls(formatAttributes, chartEntry);
     chartEntry.setSources(formatAttributes.get(SOURCES.getPropertyName(), List.class));
-    index.addEntry(chartEntry);
+    return chartEntry;
   }
 
   private void createListOfRelativeUrls(final NestedAttributesMap formatAttributes, final ChartEntry chartEntry) {
@@ -20,6 +20,7 @@ import org.sonatype.nexus.repository.storage.Asset;
 import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Payload;
 import org.sonatype.nexus.repository.storage.TempBlob;
+import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.internal.AssetKind;
 
 /**
@@ -37,5 +38,17 @@ public interface HelmHostedFacet
 
   Asset upload(final String path, final TempBlob tempBlob, final Payload payload, final AssetKind assetKind) throws IOException;
 
+  /**
+   * Stores a payload whose attributes have already been read, for example while it was ingested.
+   *
+   * @since 1.0.22
+   */
+  Asset upload(
+      final String path,
+      final TempBlob tempBlob,
+      final HelmAttributes helmAttributes,
+      final Payload payload,
+      final AssetKind assetKind);
+
   boolean delete(String path);
 }
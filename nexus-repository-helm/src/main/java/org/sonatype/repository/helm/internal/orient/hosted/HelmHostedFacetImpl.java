@@ -34,13 +34,18 @@ import org.sonatype.nexus.repository.storage.TempBlob;
 import org.sonatype.nexus.transaction.UnitOfWork;
 import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.internal.AssetKind;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexCache;
 import org.sonatype.repository.helm.internal.orient.HelmFacet;
+import org.sonatype.repository.helm.internal.util.ChartYamlExtractingInputStream;
 import org.sonatype.repository.helm.internal.util.HelmAttributeParser;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.repository.storage.AssetEntityAdapter.P_ASSET_KIND;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PROVENANCE;
 import static org.sonatype.repository.helm.internal.HelmFormat.HASH_ALGORITHMS;
+import static org.sonatype.repository.helm.internal.util.GzipUtils.GZ_EXTENSION;
 
 /**
  * {@link HelmHostedFacetImpl implementation}
@@ -52,15 +57,21 @@ public class HelmHostedFacetImpl
     extends FacetSupport
     implements HelmHostedFacet
 {
+  private static final String INDEX_YAML = "index.yaml";
+
   private final HelmAttributeParser helmAttributeParser;
 
+  private final HelmIndexCache indexCache;
+
   private HelmFacet helmFacet;
 
   @Inject
   public HelmHostedFacetImpl(
-      final HelmAttributeParser helmAttributeParser)
+      final HelmAttributeParser helmAttributeParser,
+      final HelmIndexCache indexCache)
   {
     this.helmAttributeParser = helmAttributeParser;
+    this.indexCache = checkNotNull(indexCache);
   }
 
   @Override
@@ -72,9 +83,17 @@ public class HelmHostedFacetImpl
 
   @Nullable
   @Override
-  @TransactionalTouchBlob
   public Content get(final String path) {
     checkNotNull(path);
+    if (INDEX_YAML.equals(path)) {
+      return indexCache.getIndex(getRepository(), () -> doGet(path));
+    }
+    return doGet(path);
+  }
+
+  @Nullable
+  @TransactionalTouchBlob
+  protected Content doGet(final String path) {
     StorageTx tx = UnitOfWork.currentTx();
 
     Optional<Asset> assetOpt = helmFacet.findAsset(tx, path);
@@ -96,25 +115,39 @@ public class HelmHostedFacetImpl
       final AssetKind assetKind) throws IOException
   {
     checkNotNull(path);
-    try (TempBlob tempBlob = facet(StorageFacet.class).createTempBlob(payload, HASH_ALGORITHMS)) {
-      upload(path, tempBlob, payload, assetKind);
+    try (ChartYamlExtractingInputStream in = new ChartYamlExtractingInputStream(payload.openInputStream());
+         TempBlob tempBlob = facet(StorageFacet.class).createTempBlob(in, HASH_ALGORITHMS)) {
+      upload(path, tempBlob, helmAttributeParser.getAttributes(assetKind, in, tempBlob), payload, assetKind);
     }
   }
 
   @Override
-  @TransactionalStoreBlob
   public Asset upload(final String path, final TempBlob tempBlob, final Payload payload, final AssetKind assetKind) throws IOException {
+    checkNotNull(tempBlob);
+    try (InputStream inputStream = tempBlob.get()) {
+      return upload(path, tempBlob, helmAttributeParser.getAttributes(assetKind, inputStream), payload, assetKind);
+    }
+  }
+
+  @Override
+  @TransactionalStoreBlob
+  public Asset upload(
+      final String path,
+      final TempBlob tempBlob,
+      final HelmAttributes helmAttributes,
+      final Payload payload,
+      final AssetKind assetKind)
+  {
     checkNotNull(path);
     checkNotNull(tempBlob);
+    checkNotNull(helmAttributes);
     if (assetKind != HELM_PACKAGE && assetKind != HELM_PROVENANCE) {
       throw new IllegalArgumentException("Unsupported assetKind: " + assetKind);
     }
 
     StorageTx tx = UnitOfWork.currentTx();
-    InputStream inputStream = tempBlob.get();
-    HelmAttributes attributes = helmAttributeParser.getAttributes(assetKind, inputStream);
     final Asset asset =
-        helmFacet.findOrCreateAsset(tx, path, assetKind, attributes);
+        helmFacet.findOrCreateAsset(tx, path, assetKind, helmAttributes);
     helmFacet.saveAsset(tx, asset, tempBlob, payload);
     return asset;
   }
@@ -131,6 +164,10 @@ public class HelmHostedFacetImpl
     }
     else {
       tx.deleteAsset(asset.get());
+      if (HELM_INDEX.name().equals(asset.get().formatAttributes().get(P_ASSET_KIND))) {
+        // drop the gzip copy along with the index it was made from
+        helmFacet.findAsset(tx, path + GZ_EXTENSION).ifPresent(tx::deleteAsset);
+      }
       return true;
     }
   }
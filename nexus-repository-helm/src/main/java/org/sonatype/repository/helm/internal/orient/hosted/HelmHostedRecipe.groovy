@@ -30,6 +30,7 @@ import org.sonatype.nexus.repository.view.Route
 import org.sonatype.nexus.repository.view.Router
 import org.sonatype.nexus.repository.view.ViewFacet
 import org.sonatype.nexus.repository.view.matchers.ActionMatcher
+import org.sonatype.nexus.repository.view.matchers.LiteralMatcher
 import org.sonatype.nexus.repository.view.matchers.logic.LogicMatchers
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher
 import org.sonatype.repository.helm.internal.AssetKind
@@ -38,9 +39,14 @@ import org.sonatype.repository.helm.internal.HelmRecipeSupport
 import org.sonatype.repository.helm.internal.orient.createindex.CreateIndexFacetImpl
 
 import static org.sonatype.nexus.repository.http.HttpMethods.DELETE
+import static org.sonatype.nexus.repository.http.HttpMethods.GET
+import static org.sonatype.nexus.repository.http.HttpMethods.HEAD
 import static org.sonatype.nexus.repository.http.HttpMethods.PUT
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE
 import static org.sonatype.repository.helm.internal.AssetKind.HELM_PROVENANCE
+import static org.sonatype.repository.helm.internal.HelmMatchers.shardMatcher
+import static org.sonatype.repository.helm.internal.HelmMatchers.slimIndexMatcher
 
 /**
  * Helm Hosted Recipe
@@ -91,7 +97,19 @@ class HelmHostedRecipe
 
     addBrowseUnsupportedRoute(builder)
 
-    [indexMatcher(), packageMatcher()].each { matcher ->
+    builder.route(new Route.Builder().matcher(shardMatcher())
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(formatHighAvailabilitySupportHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(conditionalRequestHandler)
+        .handler(partialFetchHandler)
+        .handler(contentHeadersHandler)
+        .handler(indexShardHandler)
+        .create())
+
+    [indexMatcher(), slimIndexMatcher(), packageMatcher()].each { matcher ->
       builder.route(new Route.Builder().matcher(matcher)
           .handler(timingHandler)
           .handler(securityHandler)
@@ -100,6 +118,7 @@ class HelmHostedRecipe
           .handler(handlerContributor)
           .handler(partialFetchHandler)
           .handler(contentHeadersHandler)
+          .handler(indexYamlGzipHandler)
           .handler(unitOfWorkHandler)
           .handler(hostedHandlers.get)
           .create())
@@ -49,7 +49,8 @@ public class HostedHandlers
     AssetKind assetKind = context.getAttributes().require(AssetKind.class);
     String path;
     if (assetKind == AssetKind.HELM_INDEX) {
-      path = "index.yaml";
+      // the full or the slim index, stored under the path they are requested from
+      path = context.getRequest().getPath().substring(1);
     }
     else {
       State state = context.getAttributes().require(TokenMatcher.State.class);
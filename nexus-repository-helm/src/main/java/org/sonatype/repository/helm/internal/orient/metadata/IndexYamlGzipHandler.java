@@ -0,0 +1,63 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.orient.metadata;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.storage.StorageFacet;
+import org.sonatype.nexus.repository.transaction.TransactionalTouchBlob;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.transaction.UnitOfWork;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexCache;
+import org.sonatype.repository.helm.internal.metadata.IndexYamlGzipHandlerSupport;
+import org.sonatype.repository.helm.internal.orient.HelmFacet;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Serves the stored gzip copy of index.yaml to clients that accept it.
+ *
+ * @since 1.0.22
+ */
+@Named
+@Singleton
+public class IndexYamlGzipHandler
+    extends IndexYamlGzipHandlerSupport
+{
+  private static final String INDEX_YAML = "index.yaml";
+
+  private final HelmIndexCache indexCache;
+
+  @Inject
+  public IndexYamlGzipHandler(final HelmIndexCache indexCache) {
+    this.indexCache = checkNotNull(indexCache);
+  }
+
+  @Override
+  protected Optional<Content> findGzipIndex(final Context context) {
+    Repository repository = context.getRepository();
+    HelmFacet helmFacet = repository.facet(HelmFacet.class);
+    String name = context.getRequest().getPath().substring(1);
+    Supplier<Optional<Content>> loader = () -> TransactionalTouchBlob.operation
+        .withDb(repository.facet(StorageFacet.class).txSupplier())
+        .call(() -> helmFacet.findGzipCopy(UnitOfWork.currentTx(), name));
+    return INDEX_YAML.equals(name) ? indexCache.getGzipIndex(repository, loader) : loader.get();
+  }
+}
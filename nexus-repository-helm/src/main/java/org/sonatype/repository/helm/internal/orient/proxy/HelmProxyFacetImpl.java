@@ -13,8 +13,12 @@
 package org.sonatype.repository.helm.internal.orient.proxy;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -23,6 +27,7 @@ import javax.inject.Named;
 
 import org.sonatype.nexus.common.collect.AttributesMap;
 import org.sonatype.nexus.repository.cache.CacheInfo;
+import org.sonatype.nexus.repository.cache.NegativeCacheFacet;
 import org.sonatype.nexus.repository.config.Configuration;
 import org.sonatype.nexus.repository.proxy.ProxyFacet;
 import org.sonatype.nexus.repository.proxy.ProxyFacetSupport;
@@ -37,16 +42,33 @@ import org.sonatype.nexus.repository.view.Content;
 import org.sonatype.nexus.repository.view.Context;
 import org.sonatype.nexus.repository.view.Payload;
 import org.sonatype.nexus.repository.view.matchers.token.TokenMatcher;
+import org.sonatype.nexus.transaction.Transactional;
 import org.sonatype.nexus.transaction.UnitOfWork;
 import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.internal.orient.HelmFacet;
 import org.sonatype.repository.helm.internal.AssetKind;
+import org.sonatype.repository.helm.internal.metadata.ChartPrefetchPolicy;
+import org.sonatype.repository.helm.internal.metadata.HelmChartPrefetcher;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexCache;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexRefresher;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexShards;
 import org.sonatype.repository.helm.internal.metadata.IndexYamlAbsoluteUrlRewriter;
+import org.sonatype.repository.helm.internal.metadata.UpstreamChartUrls;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndex;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndexView;
+import org.sonatype.repository.helm.internal.mirror.HelmMirrorFacet;
+import org.sonatype.repository.helm.internal.util.ChartYamlExtractingInputStream;
 import org.sonatype.repository.helm.internal.util.HelmAttributeParser;
 import org.sonatype.repository.helm.internal.util.HelmPathUtils;
 
+import com.google.common.hash.HashCode;
+
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.nexus.common.hash.HashAlgorithm.SHA256;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
 import static org.sonatype.repository.helm.internal.HelmFormat.HASH_ALGORITHMS;
+import static org.sonatype.repository.helm.internal.metadata.UpstreamChartUrls.CHART_URLS;
 
 /**
  * Helm {@link ProxyFacet} implementation.
@@ -56,6 +78,7 @@ import static org.sonatype.repository.helm.internal.HelmFormat.HASH_ALGORITHMS;
 @Named
 public class HelmProxyFacetImpl
     extends ProxyFacetSupport
+    implements HelmMirrorFacet
 {
   private final HelmPathUtils helmPathUtils;
 
@@ -63,6 +86,27 @@ public class HelmProxyFacetImpl
 
   private final IndexYamlAbsoluteUrlRewriter indexYamlAbsoluteUrlRewriter;
 
+  private final HelmIndexCache indexCache;
+
+  private final HelmIndexRefresher indexRefresher;
+
+  private final HelmChartPrefetcher chartPrefetcher;
+
+  private final HelmIndexShards indexShards;
+
+  private final boolean immutablePackages;
+
+  private final boolean notFoundFromIndex;
+
+  private final UpstreamChartUrls upstreamChartUrls = new UpstreamChartUrls();
+
+  private final UpstreamIndexView upstreamIndex = new UpstreamIndexView();
+
+  private volatile ChartPrefetchPolicy prefetchPolicy = ChartPrefetchPolicy.NONE;
+
+  // context attribute handing the chart looked up by get() over to the proxy, so it is not looked up twice
+  private static final String CACHED_CHART = HelmProxyFacetImpl.class.getName() + ".cachedChart";
+
   private HelmFacet helmFacet;
 
   private static final String INDEX_YAML = "index.yaml";
@@ -70,11 +114,23 @@ public class HelmProxyFacetImpl
   @Inject
   public HelmProxyFacetImpl(final HelmPathUtils helmPathUtils,
                             final HelmAttributeParser helmAttributeParser,
-                            final IndexYamlAbsoluteUrlRewriter indexYamlAbsoluteUrlRewriter)
+                            final IndexYamlAbsoluteUrlRewriter indexYamlAbsoluteUrlRewriter,
+                            final HelmIndexCache indexCache,
+                            final HelmIndexRefresher indexRefresher,
+                            final HelmChartPrefetcher chartPrefetcher,
+                            final HelmIndexShards indexShards,
+                            @Named("${nexus.helm.proxy.immutablePackages:-false}") final boolean immutablePackages,
+                            @Named("${nexus.helm.proxy.notFoundFromIndex:-false}") final boolean notFoundFromIndex)
   {
     this.helmPathUtils = checkNotNull(helmPathUtils);
     this.helmAttributeParser = checkNotNull(helmAttributeParser);
     this.indexYamlAbsoluteUrlRewriter = checkNotNull(indexYamlAbsoluteUrlRewriter);
+    this.indexCache = checkNotNull(indexCache);
+    this.indexRefresher = checkNotNull(indexRefresher);
+    this.chartPrefetcher = checkNotNull(chartPrefetcher);
+    this.indexShards = checkNotNull(indexShards);
+    this.immutablePackages = immutablePackages;
+    this.notFoundFromIndex = notFoundFromIndex;
   }
 
   @Override
@@ -83,20 +139,131 @@ public class HelmProxyFacetImpl
     helmFacet = facet(HelmFacet.class);
   }
 
+  @Override
+  protected void doConfigure(final Configuration configuration) throws Exception {
+    super.doConfigure(configuration);
+    prefetchPolicy = ChartPrefetchPolicy.read(configuration);
+  }
+
   // HACK: Workaround for known CGLIB issue, forces an Import-Package for org.sonatype.nexus.repository.config
   @Override
   protected void doValidate(final Configuration configuration) throws Exception {
     super.doValidate(configuration);
   }
 
+  /**
+   * A stale index.yaml may be served while it is refreshed in the background, see {@link HelmIndexRefresher}. Cached
+   * charts that match the digest published in the index are served without revalidation when
+   * {@code nexus.helm.proxy.immutablePackages} is set. When {@code nexus.helm.proxy.notFoundFromIndex} is set, charts
+   * that are neither cached nor listed in the index are not found without asking the remote; storing a new index clears
+   * the negative cache, so such charts show up with it.
+   */
+  @Override
+  public Content get(final Context context) throws IOException {
+    AssetKind assetKind = context.getAttributes().require(AssetKind.class);
+    if (assetKind == HELM_INDEX) {
+      // the refresh outlives this request, so it gets a context of its own
+      Content stale = indexRefresher.maybeServeStale(
+          getRepository(), getCachedContent(context), getCacheController(context),
+          () -> inUnitOfWork(() -> super.get(HelmMirrorFacet.indexContext(getRepository()))));
+      if (stale != null) {
+        return stale;
+      }
+    }
+    else if (assetKind == HELM_PACKAGE && (immutablePackages || notFoundFromIndex)) {
+      String fileName = helmPathUtils.filename(helmPathUtils.matcherState(context));
+      Content cached = getCachedContent(context);
+      if (cached == null) {
+        if (notFoundFromIndex && isUnpublished(fileName)) {
+          log.debug("{} is not listed in the index.yaml of {}", fileName, getRepository().getName());
+          return null;
+        }
+      }
+      else if (immutablePackages && isPublished(fileName, cached)) {
+        return cached;
+      }
+      context.getAttributes().set(CACHED_CHART, Optional.ofNullable(cached));
+    }
+    return super.get(context);
+  }
+
+  /**
+   * Charts missing from the stored index are not fetched, provenance files are not listed in the index so they are
+   * always fetched.
+   */
+  private boolean isUnpublished(final String fileName) throws IOException {
+    if (!fileName.endsWith(HELM_PACKAGE.getExtension())) {
+      return false;
+    }
+    UpstreamIndex index = upstreamIndex.get(this::getCachedIndex);
+    return index != null && !index.contains(fileName);
+  }
+
+  private boolean isPublished(final String fileName, final Content content) throws IOException {
+    UpstreamIndex index = upstreamIndex.get(this::getCachedIndex);
+    UpstreamIndex.Entry entry = index == null ? null : index.get(fileName);
+    Asset asset = content.getAttributes().get(Asset.class);
+    HashCode sha256 = asset == null ? null : asset.getChecksum(SHA256);
+    return entry != null && sha256 != null && entry.hasDigest(sha256.toString());
+  }
+
+  @Nullable
+  private Content getCachedIndex() {
+    return indexCache.getIndex(getRepository(), () -> getAsset(INDEX_YAML));
+  }
+
+  @Nullable
+  @Override
+  public UpstreamIndex getUpstreamIndex() throws IOException {
+    return inUnitOfWork(() -> {
+      get(HelmMirrorFacet.indexContext(getRepository()));
+      return upstreamIndex.get(this::getCachedIndex);
+    });
+  }
+
+  @Override
+  public boolean isCached(final String path) throws IOException {
+    return inUnitOfWork(() -> hasAsset(path));
+  }
+
   @Nullable
   @Override
+  public Content fetchChart(final String path) throws IOException {
+    return inUnitOfWork(() -> get(HelmMirrorFacet.chartContext(getRepository(), path)));
+  }
+
+  /**
+   * Work done in the background, outside of a request.
+   */
+  @FunctionalInterface
+  private interface Work<T>
+  {
+    T call() throws IOException;
+  }
+
+  private <T> T inUnitOfWork(final Work<T> work) throws IOException {
+    UnitOfWork.begin(facet(StorageFacet.class).txSupplier());
+    try {
+      return work.call();
+    }
+    finally {
+      UnitOfWork.end();
+    }
+  }
+
+  @Nullable
+  @Override
+  @SuppressWarnings("unchecked")
   protected Content getCachedContent(final Context context) {
     AssetKind assetKind = context.getAttributes().require(AssetKind.class);
     switch (assetKind) {
       case HELM_INDEX:
-        return getAsset(INDEX_YAML);
+        return getCachedIndex();
       case HELM_PACKAGE:
+        Optional<Content> cached = (Optional<Content>) context.getAttributes().remove(CACHED_CHART);
+        if (cached != null) {
+          return cached.orElse(null);
+        }
         TokenMatcher.State matcherState = helmPathUtils.matcherState(context);
         return getAsset(helmPathUtils.filename(matcherState));
       default:
@@ -119,32 +286,86 @@ public class HelmProxyFacetImpl
   }
 
   private Content putMetadata(final String path, final Content content, final AssetKind assetKind) throws IOException {
-    StorageFacet storageFacet = facet(StorageFacet.class);
-    try (TempBlob tempBlob = storageFacet.createTempBlob(content.openInputStream(), HASH_ALGORITHMS)) {
-      try (TempBlob newTempBlob = indexYamlAbsoluteUrlRewriter.removeUrlsFromIndexYamlAndWriteToTempBlob(tempBlob, getRepository()) ) {
-        return saveMetadataAsAsset(path, newTempBlob, content, assetKind);
+    UpstreamChartUrls.Recorder chartUrls = upstreamChartUrls.record(getRemoteUrl());
+    try (InputStream in = content.openInputStream();
+         TempBlob newTempBlob = indexYamlAbsoluteUrlRewriter
+             .removeUrlsFromIndexYamlAndWriteToTempBlob(in, getRepository(), chartUrls)) {
+      Content saved = saveMetadataAsAsset(path, newTempBlob, content, assetKind, chartUrls.table());
+      if (saved != null) {
+        indexShards.update(getRepository(), saved, newTempBlob.get());
       }
+      chartUrls.publish();
+      upstreamIndex.invalidate();
+      // charts not found in the previous index may be listed in this one
+      optionalFacet(NegativeCacheFacet.class).ifPresent(NegativeCacheFacet::invalidate);
+      prefetchCharts();
+      return saved;
+    }
+  }
+
+  /**
+   * Fetches the charts the {@link ChartPrefetchPolicy} selects from the newly stored index, unless already cached.
+   */
+  private void prefetchCharts() {
+    ChartPrefetchPolicy policy = prefetchPolicy;
+    if (policy.isEnabled()) {
+      chartPrefetcher.prefetch(getRepository(),
+          () -> inUnitOfWork(() -> selectUncached(policy)),
+          this::fetchChart);
+    }
+  }
+
+  private List<String> selectUncached(final ChartPrefetchPolicy policy) throws IOException {
+    UpstreamIndex index = upstreamIndex.get(this::getCachedIndex);
+    if (index == null) {
+      return Collections.emptyList();
     }
+    return policy.select(index).stream().filter(path -> !hasAsset(path)).collect(Collectors.toList());
+  }
+
+  @Transactional
+  protected boolean hasAsset(final String name) {
+    return helmFacet.findAsset(UnitOfWork.currentTx(), name).isPresent();
   }
 
   @TransactionalStoreBlob
   protected Content saveMetadataAsAsset(final String assetPath,
                                         final TempBlob metadataContent,
                                         final Payload payload,
-                                        final AssetKind assetKind)
+                                        final AssetKind assetKind,
+                                        final Map<String, String> chartUrls)
   {
     StorageTx tx = UnitOfWork.currentTx();
     HelmAttributes chart = new HelmAttributes(Collections.emptyMap());
     Asset asset = helmFacet.findOrCreateAsset(tx, assetPath, assetKind, chart);
-    return helmFacet.saveAsset(tx, asset, metadataContent, payload);
+    asset.formatAttributes().set(CHART_URLS, chartUrls);
+    Content content = helmFacet.saveAsset(tx, asset, metadataContent, payload);
+    if (content != null) {
+      helmFacet.saveGzipCopy(tx, asset, metadataContent);
+    }
+    return content;
   }
 
   private Content putComponent(final Content content,
                                final String fileName,
                                final AssetKind assetKind) throws IOException {
     StorageFacet storageFacet = facet(StorageFacet.class);
-    try (TempBlob tempBlob = storageFacet.createTempBlob(content.openInputStream(), HASH_ALGORITHMS)) {
-      HelmAttributes helmAttributes = helmAttributeParser.getAttributes(assetKind, tempBlob.get());
+    UpstreamIndex.Entry published = upstreamIndex.getEntry(this::getCachedIndex, fileName);
+    String digest = published == null ? null : published.getDigest();
+    HelmAttributes publishedAttributes = published == null ? null : published.getAttributes();
+    if (publishedAttributes != null) {
+      // no need to look into the chart when the index lists its attributes
+      try (InputStream in = content.openInputStream();
+           TempBlob tempBlob = storageFacet.createTempBlob(in, HASH_ALGORITHMS)) {
+        UpstreamIndex.verifyDigest(fileName, digest, tempBlob.getHashes().get(SHA256));
+        return doCreateOrSaveComponent(publishedAttributes, fileName, assetKind, tempBlob, content.getContentType(),
+            content.getAttributes());
+      }
+    }
+    try (ChartYamlExtractingInputStream in = new ChartYamlExtractingInputStream(content.openInputStream());
+         TempBlob tempBlob = storageFacet.createTempBlob(in, HASH_ALGORITHMS)) {
+      UpstreamIndex.verifyDigest(fileName, digest, tempBlob.getHashes().get(SHA256));
+      HelmAttributes helmAttributes = helmAttributeParser.getAttributes(assetKind, in, tempBlob);
       return doCreateOrSaveComponent(helmAttributes, fileName, assetKind, tempBlob, content.getContentType(), content.getAttributes());
     }
   }
@@ -183,6 +404,10 @@ public class HelmProxyFacetImpl
   protected void indicateVerified(final Context context, final Content content, final CacheInfo cacheInfo)
   {
     setCacheInfo(content, cacheInfo);
+    if (context.getAttributes().require(AssetKind.class) == HELM_INDEX) {
+      // the cached copy still carries the old cache info
+      indexCache.invalidate(getRepository().getName());
+    }
   }
 
   @TransactionalTouchMetadata
@@ -200,8 +425,85 @@ public class HelmProxyFacetImpl
     tx.saveAsset(asset);
   }
 
+  /**
+   * Concurrent misses for the same asset share a single upstream fetch; query parameters are not part of the key as
+   * they are neither sent upstream nor part of the stored asset.
+   */
+  @Override
+  protected String getRequestKey(final Context context) {
+    AssetKind assetKind = context.getAttributes().require(AssetKind.class);
+    switch (assetKind) {
+      case HELM_INDEX:
+        return INDEX_YAML;
+      case HELM_PACKAGE:
+        return helmPathUtils.filename(helmPathUtils.matcherState(context));
+      default:
+        throw new IllegalStateException("Received an invalid AssetKind of type: " + assetKind.name());
+    }
+  }
+
   @Override
   protected String getUrl(@Nonnull final Context context) {
     return context.getRequest().getPath().substring(1);
   }
+
+  /**
+   * A stale index.yaml is revalidated with a conditional request, so an unchanged upstream index only costs a 304;
+   * unless the stored index predates storing where its charts live, then the whole index is fetched to learn that.
+   * Charts the upstream index.yaml points elsewhere are fetched from there rather than from the remote, and charts
+   * whose download doesn't match the digest published in the index are rejected before they are stored.
+   */
+  @Override
+  protected Content fetch(final Context context, final Content stale) throws IOException {
+    AssetKind assetKind = context.getAttributes().require(AssetKind.class);
+    if (assetKind == HELM_INDEX && chartUrlsMissing()) {
+      return super.fetch(context, null);
+    }
+    if (assetKind == HELM_PACKAGE) {
+      if (chartUrlsMissing()) {
+        refreshIndex();
+      }
+      String upstreamUrl = upstreamChartUrls.get(helmPathUtils.filename(helmPathUtils.matcherState(context)));
+      if (upstreamUrl != null) {
+        return fetch(upstreamUrl, context, stale);
+      }
+    }
+    return super.fetch(context, stale);
+  }
+
+  /**
+   * @return whether the stored index.yaml predates storing where its charts live; otherwise the stored table is
+   * restored after a restart, and without a stored index charts are fetched from the remote until one is
+   */
+  private boolean chartUrlsMissing() {
+    return !upstreamChartUrls.isRecorded() && !restoreChartUrls();
+  }
+
+  /**
+   * @return whether the table stored with the index.yaml was restored, or there is no stored index.yaml at all
+   */
+  @Transactional
+  @SuppressWarnings("unchecked")
+  protected boolean restoreChartUrls() {
+    Optional<Asset> index = helmFacet.findAsset(UnitOfWork.currentTx(), INDEX_YAML);
+    return !index.isPresent()
+        || upstreamChartUrls.restore((Map<String, String>) index.get().formatAttributes().get(CHART_URLS, Map.class));
+  }
+
+  /**
+   * Fetches and stores the whole upstream index.yaml, regardless of its age, to learn where its charts live. Charts
+   * are fetched from the remote when that fails.
+   */
+  private void refreshIndex() {
+    Context indexContext = HelmMirrorFacet.indexContext(getRepository());
+    try {
+      Content index = fetch(indexContext, null);
+      if (index != null) {
+        store(indexContext, index);
+      }
+    }
+    catch (IOException e) {
+      log.warn("Unable to refresh index.yaml of {} to learn where its charts live", getRepository().getName(), e);
+    }
+  }
 }
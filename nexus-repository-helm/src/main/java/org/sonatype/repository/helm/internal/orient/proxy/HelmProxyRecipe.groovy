@@ -34,6 +34,8 @@ import org.sonatype.nexus.repository.view.ViewFacet
 import org.sonatype.repository.helm.internal.HelmFormat
 import org.sonatype.repository.helm.internal.HelmRecipeSupport
 
+import static org.sonatype.repository.helm.internal.HelmMatchers.shardMatcher
+
 /**
  * Helm proxy repository recipe.
  *
@@ -91,6 +93,19 @@ class HelmProxyRecipe
 
     addBrowseUnsupportedRoute(builder)
 
+    builder.route(new Route.Builder().matcher(shardMatcher())
+        .handler(timingHandler)
+        .handler(securityHandler)
+        .handler(formatHighAvailabilitySupportHandler)
+        .handler(routingRuleHandler)
+        .handler(exceptionHandler)
+        .handler(handlerContributor)
+        .handler(conditionalRequestHandler)
+        .handler(partialFetchHandler)
+        .handler(contentHeadersHandler)
+        .handler(indexShardHandler)
+        .create())
+
     [indexMatcher(), packageMatcher()].each { matcher ->
       builder.route(new Route.Builder().matcher(matcher)
           .handler(timingHandler)
@@ -102,6 +117,7 @@ class HelmProxyRecipe
           .handler(negativeCacheHandler)
           .handler(partialFetchHandler)
           .handler(contentHeadersHandler)
+          .handler(indexYamlGzipHandler)
           .handler(unitOfWorkHandler)
           .handler(proxyHandler)
           .create())
@@ -0,0 +1,101 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import java.util.Comparator;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+
+/**
+ * Ordering of chart versions, which Helm expects to be semantic versions.
+ *
+ * @since 1.0.22
+ */
+public final class ChartVersions
+{
+  public static final Comparator<String> ORDER = ChartVersions::compare;
+
+  private ChartVersions() {
+    // no instance
+  }
+
+  /**
+   * Orders semantic versions, ignoring build metadata; a pre-release comes before its release.
+   */
+  public static int compare(final String left, final String right) {
+    String[] a = splitVersion(left);
+    String[] b = splitVersion(right);
+    int result = compareIdentifiers(a[0], b[0]);
+    if (result != 0) {
+      return result;
+    }
+    if (a[1] == null || b[1] == null) {
+      return a[1] == null ? (b[1] == null ? 0 : 1) : -1;
+    }
+    return compareIdentifiers(a[1], b[1]);
+  }
+
+  /**
+   * @return the release and pre-release (if any) parts of the version
+   */
+  private static String[] splitVersion(final String version) {
+    String release = version.startsWith("v") ? version.substring(1) : version;
+    int build = release.indexOf('+');
+    if (build >= 0) {
+      release = release.substring(0, build);
+    }
+    int preRelease = release.indexOf('-');
+    return preRelease < 0 ? new String[]{release, null}
+        : new String[]{release.substring(0, preRelease), release.substring(preRelease + 1)};
+  }
+
+  private static int compareIdentifiers(final String left, final String right) {
+    List<String> a = Splitter.on('.').splitToList(left);
+    List<String> b = Splitter.on('.').splitToList(right);
+    for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+      int result = compareIdentifier(a.get(i), b.get(i));
+      if (result != 0) {
+        return result;
+      }
+    }
+    return Integer.compare(a.size(), b.size());
+  }
+
+  private static int compareIdentifier(final String left, final String right) {
+    boolean leftNumeric = isNumeric(left);
+    boolean rightNumeric = isNumeric(right);
+    if (leftNumeric && rightNumeric) {
+      String a = stripLeadingZeros(left);
+      String b = stripLeadingZeros(right);
+      int result = Integer.compare(a.length(), b.length());
+      return result != 0 ? result : a.compareTo(b);
+    }
+    if (leftNumeric || rightNumeric) {
+      return leftNumeric ? -1 : 1;
+    }
+    return left.compareTo(right);
+  }
+
+  private static boolean isNumeric(final String identifier) {
+    return !identifier.isEmpty() && identifier.chars().allMatch(c -> c >= '0' && c <= '9');
+  }
+
+  private static String stripLeadingZeros(final String number) {
+    int i = 0;
+    while (i < number.length() - 1 && number.charAt(i) == '0') {
+      i++;
+    }
+    return number.substring(i);
+  }
+}
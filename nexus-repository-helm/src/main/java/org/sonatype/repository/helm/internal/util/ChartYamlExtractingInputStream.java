@@ -0,0 +1,364 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import javax.annotation.Nullable;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Passes a chart archive through unchanged while extracting {@code Chart.yaml} from the bytes as they are read, so
+ * that ingesting a chart and reading its metadata take a single pass over the payload.
+ *
+ * The archive is inflated and scanned incrementally; scanning stops once {@code Chart.yaml} has been found, and is
+ * abandoned silently for anything this scanner does not understand, in which case callers fall back to
+ * {@link TgzParser}.
+ *
+ * @since 1.0.22
+ */
+public class ChartYamlExtractingInputStream
+    extends FilterInputStream
+{
+  private static final String CHART_NAME = "Chart.yaml";
+
+  private static final int BLOCK_SIZE = 512;
+
+  private static final int MAX_CAPTURE = 1024 * 1024;
+
+  private static final int MAX_GZIP_HEADER = 64 * 1024;
+
+  private static final int FEXTRA = 4;
+
+  private static final int FNAME = 8;
+
+  private static final int FCOMMENT = 16;
+
+  private static final int FHCRC = 2;
+
+  private enum State
+  {
+    GZIP_HEADER, TAR_HEADER, ENTRY, DONE
+  }
+
+  private State state = State.GZIP_HEADER;
+
+  private final ByteArrayOutputStream gzipHeader = new ByteArrayOutputStream();
+
+  private final Inflater inflater = new Inflater(true);
+
+  private final byte[] inflated = new byte[8192];
+
+  private final byte[] block = new byte[BLOCK_SIZE];
+
+  private int blockFill;
+
+  // remaining bytes of the current entry, including the padding up to the next block
+  private long entryRemaining;
+
+  private long entryPadding;
+
+  // content of the current entry, when it needs to be kept
+  @Nullable
+  private ByteArrayOutputStream capture;
+
+  private char captureType;
+
+  // name for the next entry, from a preceding GNU long name or pax header
+  @Nullable
+  private String nextName;
+
+  @Nullable
+  private byte[] chartYaml;
+
+  public ChartYamlExtractingInputStream(final InputStream in) {
+    super(in);
+  }
+
+  /**
+   * @return the content of {@code Chart.yaml} if it was found in the bytes read so far
+   */
+  public Optional<InputStream> chartYaml() {
+    return Optional.ofNullable(chartYaml).map(ByteArrayInputStream::new);
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b != -1) {
+      scan(new byte[]{(byte) b}, 0, 1);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    int n = super.read(b, off, len);
+    if (n > 0) {
+      scan(b, off, n);
+    }
+    return n;
+  }
+
+  @Override
+  public long skip(final long n) throws IOException {
+    // skipped bytes cannot be scanned
+    stop();
+    return super.skip(n);
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    stop();
+    super.close();
+  }
+
+  private void scan(final byte[] b, final int off, final int len) {
+    if (state == State.DONE) {
+      return;
+    }
+    try {
+      if (state == State.GZIP_HEADER) {
+        gzipHeader.write(b, off, len);
+        int headerLength = gzipHeaderLength(gzipHeader.toByteArray());
+        if (headerLength < 0) {
+          if (gzipHeader.size() > MAX_GZIP_HEADER) {
+            stop();
+          }
+          return;
+        }
+        byte[] buffered = gzipHeader.toByteArray();
+        state = State.TAR_HEADER;
+        inflate(buffered, headerLength, buffered.length - headerLength);
+      }
+      else {
+        inflate(b, off, len);
+      }
+    }
+    catch (DataFormatException | RuntimeException e) {
+      stop();
+    }
+  }
+
+  private void inflate(final byte[] b, final int off, final int len) throws DataFormatException {
+    inflater.setInput(b, off, len);
+    while (state != State.DONE) {
+      int n = inflater.inflate(inflated);
+      if (n > 0) {
+        untar(inflated, n);
+      }
+      else if (inflater.finished() || inflater.needsDictionary()) {
+        stop();
+      }
+      else if (inflater.needsInput()) {
+        return;
+      }
+    }
+  }
+
+  private void untar(final byte[] b, final int len) {
+    int pos = 0;
+    while (pos < len && state != State.DONE) {
+      if (state == State.TAR_HEADER) {
+        int n = Math.min(BLOCK_SIZE - blockFill, len - pos);
+        System.arraycopy(b, pos, block, blockFill, n);
+        blockFill += n;
+        pos += n;
+        if (blockFill == BLOCK_SIZE) {
+          blockFill = 0;
+          readTarHeader();
+        }
+      }
+      else {
+        int n = (int) Math.min(entryRemaining + entryPadding, len - pos);
+        int content = (int) Math.min(entryRemaining, n);
+        if (capture != null && content > 0) {
+          capture.write(b, pos, content);
+        }
+        entryRemaining -= content;
+        entryPadding -= n - content;
+        pos += n;
+        if (entryRemaining == 0 && entryPadding == 0) {
+          endEntry();
+        }
+      }
+    }
+  }
+
+  private void readTarHeader() {
+    if (isZeroBlock()) {
+      // end of archive
+      stop();
+      return;
+    }
+    String name = nextName != null ? nextName : field(0, 100);
+    nextName = null;
+    long size = octal(124, 12);
+    char type = (char) block[156];
+
+    capture = null;
+    captureType = type;
+    if (type == 'L' || type == 'x') {
+      if (size > MAX_CAPTURE) {
+        stop();
+        return;
+      }
+      capture = new ByteArrayOutputStream((int) size);
+    }
+    else if (name.endsWith(CHART_NAME)) {
+      if (size > MAX_CAPTURE) {
+        stop();
+        return;
+      }
+      captureType = 'C';
+      capture = new ByteArrayOutputStream((int) size);
+    }
+
+    entryRemaining = size;
+    entryPadding = (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+    state = State.ENTRY;
+    if (size == 0) {
+      endEntry();
+    }
+  }
+
+  private void endEntry() {
+    state = State.TAR_HEADER;
+    if (capture == null) {
+      return;
+    }
+    byte[] content = capture.toByteArray();
+    capture = null;
+    switch (captureType) {
+      case 'C':
+        chartYaml = content;
+        stop();
+        break;
+      case 'L':
+        nextName = trimNul(new String(content, UTF_8));
+        break;
+      case 'x':
+        nextName = paxPath(new String(content, UTF_8));
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void stop() {
+    state = State.DONE;
+    capture = null;
+    inflater.end();
+  }
+
+  private boolean isZeroBlock() {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private String field(final int offset, final int length) {
+    int end = offset;
+    while (end < offset + length && block[end] != 0) {
+      end++;
+    }
+    return new String(block, offset, end - offset, UTF_8);
+  }
+
+  private long octal(final int offset, final int length) {
+    if ((block[offset] & 0x80) != 0) {
+      throw new IllegalArgumentException("Unsupported binary size field");
+    }
+    String value = field(offset, length).trim();
+    return value.isEmpty() ? 0 : Long.parseLong(value, 8);
+  }
+
+  private static String trimNul(final String value) {
+    int nul = value.indexOf('\0');
+    return nul < 0 ? value : value.substring(0, nul);
+  }
+
+  /**
+   * Extracts the {@code path} record from pax extended header content, made of {@code "<length> <key>=<value>\n"}
+   * records.
+   */
+  @Nullable
+  private static String paxPath(final String records) {
+    for (String record : records.split("\n")) {
+      int space = record.indexOf(' ');
+      int equals = record.indexOf('=', space + 1);
+      if (space > 0 && equals > 0 && "path".equals(record.substring(space + 1, equals))) {
+        return record.substring(equals + 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the length of the gzip member header at the start of the given bytes, or -1 if more bytes are needed
+   */
+  private static int gzipHeaderLength(final byte[] header) {
+    if (header.length < 10) {
+      return -1;
+    }
+    if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b || header[2] != 8) {
+      throw new IllegalArgumentException("Not a gzip stream");
+    }
+    int flags = header[3];
+    int pos = 10;
+    if ((flags & FEXTRA) != 0) {
+      if (header.length < pos + 2) {
+        return -1;
+      }
+      pos += 2 + ((header[pos] & 0xff) | (header[pos + 1] & 0xff) << 8);
+    }
+    if ((flags & FNAME) != 0) {
+      pos = skipZeroTerminated(header, pos);
+    }
+    if ((flags & FCOMMENT) != 0) {
+      pos = skipZeroTerminated(header, pos);
+    }
+    if ((flags & FHCRC) != 0) {
+      pos = pos < 0 ? pos : pos + 2;
+    }
+    return pos < 0 || pos > header.length ? -1 : pos;
+  }
+
+  private static int skipZeroTerminated(final byte[] header, final int pos) {
+    if (pos < 0) {
+      return pos;
+    }
+    for (int i = pos; i < header.length; i++) {
+      if (header[i] == 0) {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import org.sonatype.nexus.repository.view.Request;
+import org.sonatype.nexus.thread.io.StreamCopier;
+
+import com.google.common.base.Splitter;
+import org.apache.commons.io.IOUtils;
+
+import static com.google.common.net.HttpHeaders.ACCEPT_ENCODING;
+
+/**
+ * Utility methods for the pre-compressed gzip copy stored next to index.yaml.
+ *
+ * @since 1.0.22
+ */
+public final class GzipUtils
+{
+  public static final String GZIP = "gzip";
+
+  public static final String GZ_EXTENSION = ".gz";
+
+  /**
+   * Format attribute on the gzip copy holding the SHA1 of the index.yaml it was compressed from.
+   */
+  public static final String SOURCE_SHA1 = "source_sha1";
+
+  private static final Splitter CODINGS = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private static final Splitter PARAMETERS = Splitter.on(';').trimResults();
+
+  private GzipUtils() {
+    // no instance
+  }
+
+  /**
+   * Compresses the source stream and hands the compressed bytes to the ingest function, e.g. to create a temp blob.
+   */
+  public static <T> T gzip(final InputStream source, final Function<InputStream, T> ingest) {
+    return new StreamCopier<>(outputStream -> {
+      try (InputStream in = source;
+           GZIPOutputStream gzip = new GZIPOutputStream(outputStream)) {
+        IOUtils.copy(in, gzip);
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }, ingest).read();
+  }
+
+  /**
+   * Returns true if the request's Accept-Encoding header allows a gzip encoded response.
+   */
+  public static boolean acceptsGzip(final Request request) {
+    for (String header : request.getHeaders().getAll(ACCEPT_ENCODING)) {
+      for (String coding : CODINGS.split(header.toLowerCase(Locale.ENGLISH))) {
+        Iterable<String> parts = PARAMETERS.split(coding);
+        String name = parts.iterator().next();
+        if ((GZIP.equals(name) || "x-gzip".equals(name)) && !isRejected(parts)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static boolean isRejected(final Iterable<String> parts) {
+    for (String part : parts) {
+      if (part.startsWith("q=")) {
+        try {
+          return Double.parseDouble(part.substring(2).trim()) <= 0;
+        }
+        catch (NumberFormatException e) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+}
@@ -14,6 +14,8 @@ package org.sonatype.repository.helm.internal.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Optional;
+import java.util.function.Supplier;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -23,6 +25,7 @@ import org.sonatype.repository.helm.HelmAttributes;
 import org.sonatype.repository.helm.internal.AssetKind;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_PACKAGE;
 
 /**
  * @since 0.0.2
@@ -55,6 +58,25 @@ public class HelmAttributeParser
     }
   }
 
+  /**
+   * Reads the attributes of a payload that was stored through the given stream, using the Chart.yaml extracted on the
+   * way in when there is one rather than reading the stored payload back.
+   *
+   * @since 1.0.22
+   */
+  public HelmAttributes getAttributes(final AssetKind assetKind,
+                                      final ChartYamlExtractingInputStream ingested,
+                                      final Supplier<InputStream> stored) throws IOException
+  {
+    Optional<InputStream> chartYaml = ingested.chartYaml();
+    if (assetKind == HELM_PACKAGE && chartYaml.isPresent()) {
+      try (InputStream is = chartYaml.get()) {
+        return new HelmAttributes(yamlParser.load(is));
+      }
+    }
+    return getAttributes(assetKind, stored.get());
+  }
+
   private HelmAttributes getAttributesProvenanceFromInputStream(final InputStream inputStream) throws IOException {
     return provenanceParser.parse(inputStream);
   }
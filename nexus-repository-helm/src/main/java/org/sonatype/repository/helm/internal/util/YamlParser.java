@@ -12,12 +12,22 @@
  */
 package org.sonatype.repository.helm.internal.util;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.inject.Named;
 import javax.inject.Singleton;
@@ -26,27 +36,39 @@ import org.sonatype.goodies.common.ComponentSupport;
 import org.sonatype.repository.helm.internal.metadata.ChartEntry;
 import org.sonatype.repository.helm.internal.metadata.ChartIndex;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
-import org.apache.commons.io.IOUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.DumperOptions.FlowStyle;
 import org.yaml.snakeyaml.Yaml;
-import org.yaml.snakeyaml.constructor.Construct;
-import org.yaml.snakeyaml.constructor.Constructor;
+import org.yaml.snakeyaml.constructor.AbstractConstruct;
 import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.emitter.Emitter;
 import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.DocumentEndEvent;
+import org.yaml.snakeyaml.events.DocumentStartEvent;
+import org.yaml.snakeyaml.events.ImplicitTuple;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.events.StreamEndEvent;
+import org.yaml.snakeyaml.events.StreamStartEvent;
 import org.yaml.snakeyaml.introspector.Property;
+import org.yaml.snakeyaml.nodes.MappingNode;
 import org.yaml.snakeyaml.nodes.Node;
 import org.yaml.snakeyaml.nodes.NodeId;
 import org.yaml.snakeyaml.nodes.NodeTuple;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.SequenceNode;
 import org.yaml.snakeyaml.nodes.Tag;
 import org.yaml.snakeyaml.reader.UnicodeReader;
 import org.yaml.snakeyaml.representer.Representer;
 import org.yaml.snakeyaml.resolver.Resolver;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 /**
  * Utility methods for getting attributes from yaml files, writing to yaml files
@@ -58,42 +80,220 @@ import static com.google.common.base.Preconditions.checkNotNull;
 public class YamlParser
     extends ComponentSupport
 {
-  private static final ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
+  // engines are not thread-safe but are costly to set up, so idle ones are kept for reuse
+  private static final int MAX_IDLE_ENGINES = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
 
+  private final BlockingQueue<YamlEngine> idleEngines = new ArrayBlockingQueue<>(MAX_IDLE_ENGINES);
+
+  /**
+   * Parses the document in a single pass straight from the stream. Values with tags SnakeYAML does not know are read
+   * as their plain scalar, sequence or mapping value rather than rejecting the document.
+   */
   public Map<String, Object> load(InputStream is) throws IOException {
     checkNotNull(is);
-    String data = IOUtils.toString(new UnicodeReader(is));
+    YamlEngine engine = borrowEngine();
+    try {
+      return engine.loader.load(new UnicodeReader(is));
+    }
+    finally {
+      releaseEngine(engine);
+    }
+  }
 
-    Map<String, Object> map;
+  /**
+   * Read an index.yaml previously written by {@link #write(OutputStream, ChartIndex)} back into a {@link ChartIndex}
+   * so it can be updated in place rather than rebuilt from every chart in the repository.
+   */
+  public ChartIndex loadIndex(final InputStream is) throws IOException {
+    Map<String, Object> map = load(is);
+    ChartIndex index = new ChartIndex();
+    if (map == null) {
+      return index;
+    }
+    index.setApiVersion(toStringValue(map.get("apiVersion")));
+    index.setGenerated(toDateTime(map.get("generated")));
 
-    try {
-      Yaml yaml = new Yaml(new SafeConstructor());
-      map = yaml.load(data);
+    Object entries = map.get("entries");
+    if (entries instanceof Map) {
+      for (Object versions : ((Map<?, ?>) entries).values()) {
+        if (versions instanceof List) {
+          for (Object version : (List<?>) versions) {
+            if (version instanceof Map) {
+              index.addEntry(toChartEntry((Map<?, ?>) version));
+            }
+          }
+        }
+      }
     }
-    catch (YAMLException e) {
-      map = (Map<String, Object>) mapper.readValue(data, Map.class);
+    return index;
+  }
+
+  private ChartEntry toChartEntry(final Map<?, ?> map) {
+    ChartEntry chartEntry = new ChartEntry();
+    chartEntry.setName(toStringValue(map.get("name")));
+    chartEntry.setVersion(toStringValue(map.get("version")));
+    chartEntry.setDescription(toStringValue(map.get("description")));
+    chartEntry.setIcon(toStringValue(map.get("icon")));
+    chartEntry.setAppVersion(toStringValue(map.get("appVersion")));
+    chartEntry.setDigest(toStringValue(map.get("digest")));
+    chartEntry.setCreated(toDateTime(map.get("created")));
+    chartEntry.setUrls(toStringList(map.get("urls")));
+    chartEntry.setSources(toStringList(map.get("sources")));
+
+    Object maintainers = map.get("maintainers");
+    if (maintainers instanceof List) {
+      List<Map<String, String>> maintainerList = new ArrayList<>();
+      for (Object maintainer : (List<?>) maintainers) {
+        if (maintainer instanceof Map) {
+          Map<String, String> maintainerMap = new LinkedHashMap<>();
+          ((Map<?, ?>) maintainer).forEach((key, value) -> maintainerMap.put(toStringValue(key), toStringValue(value)));
+          maintainerList.add(maintainerMap);
+        }
+      }
+      chartEntry.setMaintainers(maintainerList);
     }
-    return map;
+    return chartEntry;
+  }
+
+  private static String toStringValue(final Object value) {
+    return value == null ? null : value.toString();
+  }
+
+  private static List<String> toStringList(final Object value) {
+    if (!(value instanceof List)) {
+      return null;
+    }
+    List<String> list = new ArrayList<>();
+    for (Object item : (List<?>) value) {
+      list.add(toStringValue(item));
+    }
+    return list;
+  }
+
+  private static DateTime toDateTime(final Object value) {
+    if (value instanceof Date) {
+      return new DateTime(value, DateTimeZone.UTC);
+    }
+    return value == null ? null : DateTime.parse(value.toString());
   }
 
   public String getYamlContent(final ChartIndex index) {
-    Yaml yaml = new Yaml(new JodaPropertyConstructor(),
-        setupRepresenter(),
-        new DumperOptions(),
-        new Resolver());
-    return yaml.dumpAsMap(index);
+    StringWriter writer = new StringWriter();
+    try {
+      emit(writer, index);
+    }
+    catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+    return writer.toString();
   }
 
+  /**
+   * Writes the index one chart entry at a time, so memory use is bounded by the largest entry rather than by the size
+   * of the whole document.
+   */
   public void write(final OutputStream os, final ChartIndex index) {
-    try (OutputStreamWriter writer = new OutputStreamWriter(os)) {
-      String result = getYamlContent(index);
-      writer.write(result);
+    try (Writer writer = new BufferedWriter(new OutputStreamWriter(os, UTF_8))) {
+      emit(writer, index);
     }
     catch (IOException ex) {
       log.error("Unable to write to OutputStream for index.yaml", ex);
     }
   }
 
+  /**
+   * Produces the same document as {@link Yaml#dumpAsMap(Object)} would for the index, but represents and emits each
+   * {@link ChartEntry} on its own instead of building a node graph for the whole index first.
+   */
+  private void emit(final Writer writer, final ChartIndex index) throws IOException {
+    YamlEngine engine = borrowEngine();
+    try {
+      emit(writer, index, engine.representer, engine.resolver, engine.options);
+    }
+    finally {
+      releaseEngine(engine);
+    }
+  }
+
+  private void emit(final Writer writer,
+                    final ChartIndex index,
+                    final Representer representer,
+                    final Resolver resolver,
+                    final DumperOptions options) throws IOException
+  {
+    Emitter emitter = new Emitter(writer, options);
+
+    emitter.emit(new StreamStartEvent(null, null));
+    emitter.emit(new DocumentStartEvent(null, null, false, null, null));
+    emitter.emit(new MappingStartEvent(null, Tag.MAP.getValue(), true, null, null, FlowStyle.BLOCK));
+
+    if (index.getApiVersion() != null) {
+      emitNode(emitter, resolver, representer.represent("apiVersion"));
+      emitNode(emitter, resolver, representer.represent(index.getApiVersion()));
+    }
+
+    if (index.getEntries() != null) {
+      emitNode(emitter, resolver, representer.represent("entries"));
+      emitter.emit(new MappingStartEvent(null, Tag.MAP.getValue(), true, null, null, FlowStyle.BLOCK));
+      for (Entry<String, List<ChartEntry>> chart : index.getEntries().entrySet()) {
+        emitNode(emitter, resolver, representer.represent(chart.getKey()));
+        emitter.emit(new SequenceStartEvent(null, Tag.SEQ.getValue(), true, null, null, FlowStyle.BLOCK));
+        for (ChartEntry chartEntry : chart.getValue()) {
+          emitNode(emitter, resolver, representer.represent(chartEntry));
+        }
+        emitter.emit(new SequenceEndEvent(null, null));
+      }
+      emitter.emit(new MappingEndEvent(null, null));
+    }
+
+    if (index.getGenerated() != null) {
+      emitNode(emitter, resolver, representer.represent("generated"));
+      emitNode(emitter, resolver, representer.represent(index.getGenerated()));
+    }
+
+    emitter.emit(new MappingEndEvent(null, null));
+    emitter.emit(new DocumentEndEvent(null, null, false));
+    emitter.emit(new StreamEndEvent(null, null));
+  }
+
+  /**
+   * Mirrors what SnakeYAML's serializer does for a node, without anchors as each node is emitted independently.
+   */
+  private void emitNode(final Emitter emitter, final Resolver resolver, final Node node) throws IOException {
+    Tag tag = node.getTag();
+    switch (node.getNodeId()) {
+      case scalar:
+        ScalarNode scalarNode = (ScalarNode) node;
+        ImplicitTuple implicit = new ImplicitTuple(
+            tag.equals(resolver.resolve(NodeId.scalar, scalarNode.getValue(), true)),
+            tag.equals(resolver.resolve(NodeId.scalar, scalarNode.getValue(), false)));
+        emitter.emit(new ScalarEvent(null, tag.getValue(), implicit, scalarNode.getValue(), null, null,
+            scalarNode.getScalarStyle()));
+        break;
+      case sequence:
+        SequenceNode sequenceNode = (SequenceNode) node;
+        emitter.emit(new SequenceStartEvent(null, tag.getValue(),
+            tag.equals(resolver.resolve(NodeId.sequence, null, true)), null, null, sequenceNode.getFlowStyle()));
+        for (Node item : sequenceNode.getValue()) {
+          emitNode(emitter, resolver, item);
+        }
+        emitter.emit(new SequenceEndEvent(null, null));
+        break;
+      case mapping:
+        MappingNode mappingNode = (MappingNode) node;
+        emitter.emit(new MappingStartEvent(null, tag.getValue(),
+            tag.equals(resolver.resolve(NodeId.mapping, null, true)), null, null, mappingNode.getFlowStyle()));
+        for (NodeTuple tuple : mappingNode.getValue()) {
+          emitNode(emitter, resolver, tuple.getKeyNode());
+          emitNode(emitter, resolver, tuple.getValueNode());
+        }
+        emitter.emit(new MappingEndEvent(null, null));
+        break;
+      default:
+        throw new YAMLException("Unexpected node in index.yaml: " + node);
+    }
+  }
+
   private Representer setupRepresenter() {
     Representer representer = new JodaTimeRepresenter();
 
@@ -102,27 +302,55 @@ public class YamlParser
     return representer;
   }
 
-  private class JodaPropertyConstructor
-      extends Constructor
+  private YamlEngine borrowEngine() {
+    YamlEngine engine = idleEngines.poll();
+    return engine != null ? engine : new YamlEngine();
+  }
+
+  private void releaseEngine(final YamlEngine engine) {
+    idleEngines.offer(engine);
+  }
+
+  /**
+   * The SnakeYAML objects needed to load Chart.yaml and to write index.yaml, used by one thread at a time.
+   */
+  private class YamlEngine
   {
-    public JodaPropertyConstructor() {
-      yamlClassConstructors.put(NodeId.scalar, new TimeStampConstruct());
+    private final Yaml loader = new Yaml(new LenientSafeConstructor());
+
+    private final DumperOptions options = new DumperOptions();
+
+    private final Representer representer = setupRepresenter();
+
+    private final Resolver resolver = new Resolver();
+
+    YamlEngine() {
+      representer.setDefaultFlowStyle(FlowStyle.BLOCK);
+      representer.setDefaultScalarStyle(options.getDefaultScalarStyle());
     }
+  }
 
-    class TimeStampConstruct
-        extends Constructor.ConstructScalar
-    {
-      @Override
-      public Object construct(Node nnode) {
-        if (nnode.getTag().toString().equals("tag:yaml.org,2002:timestamp")) {
-          Construct dateConstructor = yamlConstructors.get(Tag.TIMESTAMP);
-          Date date = (Date) dateConstructor.construct(nnode);
-          return new DateTime(date, DateTimeZone.UTC);
-        }
-        else {
-          return super.construct(nnode);
+  /**
+   * {@link SafeConstructor} that constructs values with unknown tags as if they were untagged.
+   */
+  private static class LenientSafeConstructor
+      extends SafeConstructor
+  {
+    LenientSafeConstructor() {
+      yamlConstructors.put(null, new AbstractConstruct()
+      {
+        @Override
+        public Object construct(final Node node) {
+          switch (node.getNodeId()) {
+            case scalar:
+              return constructScalar((ScalarNode) node);
+            case sequence:
+              return constructSequence((SequenceNode) node);
+            default:
+              return constructMapping((MappingNode) node);
+          }
         }
-      }
+      });
     }
   }
 
@@ -26,6 +26,15 @@ Ext.define('NX.helm.app.PluginStrings', {
 
   keys: {
     Repository_Facet_HelmFacet_Title: 'Helm Settings',
+    Repository_Facet_HelmFacet_PrefetchVersions_FieldLabel: 'Prefetch versions',
+    Repository_Facet_HelmFacet_PrefetchVersions_HelpText:
+        'How many of the latest versions of each matching chart to fetch when the index is refreshed, 0 to disable',
+    Repository_Facet_HelmFacet_PrefetchCharts_FieldLabel: 'Prefetch charts',
+    Repository_Facet_HelmFacet_PrefetchCharts_HelpText:
+        'Comma separated chart names to prefetch, where * matches any characters',
+    Repository_Facet_HelmFacet_SlimIndexVersions_FieldLabel: 'Slim index versions',
+    Repository_Facet_HelmFacet_SlimIndexVersions_HelpText:
+        'How many of the newest versions of each chart to list in slim/index.yaml, 0 to disable',
     SearchHelm_Group: 'Helm Repositories',
     SearchHelm_License_FieldLabel: 'License',
     SearchHelm_Text: 'Helm',
@@ -23,7 +23,8 @@ Ext.define('NX.coreui.view.repository.recipe.HelmHosted', {
   requires: [
     'NX.coreui.view.repository.facet.StorageFacet',
     'NX.coreui.view.repository.facet.StorageFacetHosted',
-    'NX.coreui.view.repository.facet.CleanupPolicyFacet'
+    'NX.coreui.view.repository.facet.CleanupPolicyFacet',
+    'NX.helm.view.repository.facet.HelmSlimIndexFacet'
   ],
 
   /**
@@ -35,7 +36,8 @@ Ext.define('NX.coreui.view.repository.recipe.HelmHosted', {
     me.items = [
       {xtype: 'nx-coreui-repository-storage-facet'},
       {xtype: 'nx-coreui-repository-storage-hosted-facet'},
-      {xtype: 'nx-coreui-repository-cleanup-policy-facet'}
+      {xtype: 'nx-coreui-repository-cleanup-policy-facet'},
+      {xtype: 'nx-helm-repository-slim-index-facet'}
     ];
 
     me.callParent();
@@ -24,7 +24,8 @@ Ext.define('NX.helm.view.repository.recipe.HelmProxy', {
         'NX.coreui.view.repository.facet.RoutingRuleFacet',
         'NX.coreui.view.repository.facet.HttpClientFacet',
         'NX.coreui.view.repository.facet.NegativeCacheFacet',
-        'NX.coreui.view.repository.facet.CleanupPolicyFacet'
+        'NX.coreui.view.repository.facet.CleanupPolicyFacet',
+        'NX.helm.view.repository.facet.HelmPrefetchFacet'
     ],
 
     /**
@@ -35,6 +36,7 @@ Ext.define('NX.helm.view.repository.recipe.HelmProxy', {
 
         me.items = [
         {xtype: 'nx-coreui-repository-proxy-facet'},
+        {xtype: 'nx-helm-repository-prefetch-facet'},
         {xtype: 'nx-coreui-repository-storage-facet'},
         {xtype: 'nx-coreui-repository-routing-rule-facet'},
         {xtype: 'nx-coreui-repository-negativecache-facet'},
@@ -0,0 +1,178 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.content.createindex;
+
+import java.util.HashMap;
+import java.util.Optional;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.config.Configuration;
+import org.sonatype.nexus.repository.content.AssetBlob;
+import org.sonatype.nexus.repository.content.fluent.FluentAsset;
+import org.sonatype.nexus.repository.content.fluent.FluentAssetBuilder;
+import org.sonatype.nexus.repository.content.fluent.FluentAssets;
+import org.sonatype.nexus.repository.view.payloads.TempBlob;
+import org.sonatype.repository.helm.internal.HelmFormat;
+import org.sonatype.repository.helm.internal.content.HelmContentFacet;
+import org.sonatype.repository.helm.internal.createindex.HelmIndexRebuildScheduler;
+import org.sonatype.repository.helm.internal.metadata.ChartEntry;
+import org.sonatype.repository.helm.internal.metadata.ChartIndex;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexShards;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
+import static org.sonatype.repository.helm.internal.createindex.CreateIndexFacet.INDEX_FINGERPRINT;
+import static org.sonatype.repository.helm.internal.createindex.SlimIndexConfig.SLIM_INDEX_VERSIONS;
+
+public class CreateIndexFacetImplTest
+    extends TestSupport
+{
+  @Mock
+  private HelmIndexRebuildScheduler rebuildScheduler;
+
+  @Mock
+  private CreateIndexService createIndexService;
+
+  @Mock
+  private HelmIndexShards indexShards;
+
+  @Mock
+  private Repository repository;
+
+  @Mock
+  private Configuration configuration;
+
+  @Mock
+  private HelmContentFacet helmFacet;
+
+  @Mock
+  private FluentAssets assets;
+
+  @Mock
+  private FluentAssetBuilder assetBuilder;
+
+  @Mock
+  private FluentAssetBuilder storedIndex;
+
+  @Mock
+  private TempBlob indexYaml;
+
+  @Mock
+  private TempBlob slimIndexYaml;
+
+  private DateTime indexGenerated;
+
+  private DateTime slimIndexGenerated;
+
+  private CreateIndexFacetImpl underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    when(repository.getName()).thenReturn("helm-hosted");
+    when(repository.facet(HelmContentFacet.class)).thenReturn(helmFacet);
+    when(helmFacet.assets()).thenReturn(assets);
+    when(assets.path(anyString())).thenReturn(assetBuilder);
+    when(assetBuilder.find()).thenReturn(Optional.empty());
+
+    NestedAttributesMap attributes = new NestedAttributesMap(HelmFormat.NAME, new HashMap<>());
+    attributes.set(SLIM_INDEX_VERSIONS, 1);
+    when(configuration.attributes(HelmFormat.NAME)).thenReturn(attributes);
+
+    when(createIndexService.writeIndexYaml(any(), any())).thenAnswer(invocation -> {
+      indexGenerated = ((ChartIndex) invocation.getArguments()[1]).getGenerated();
+      return indexYaml;
+    });
+    when(createIndexService.writeSlimIndexYaml(any(), any(), anyInt())).thenAnswer(invocation -> {
+      ChartIndex index = (ChartIndex) invocation.getArguments()[1];
+      slimIndexGenerated = index.latest((Integer) invocation.getArguments()[2]).getGenerated();
+      return slimIndexYaml;
+    });
+
+    underTest = new CreateIndexFacetImpl(rebuildScheduler, createIndexService, indexShards, true);
+    underTest.attach(repository);
+    underTest.doConfigure(configuration);
+  }
+
+  @Test
+  public void slimIndexCarriesTheGeneratedTimeOfTheFullIndex() {
+    ChartIndex index = new ChartIndex();
+    index.addEntry(chartEntry("mongodb", "0.4.9"));
+    index.setGenerated(new DateTime(0L));
+    when(createIndexService.buildIndex(repository)).thenReturn(index);
+
+    underTest.rebuildIndex();
+
+    assertThat(indexGenerated, is(notNullValue()));
+    assertThat(indexGenerated.getMillis() > 0L, is(true));
+    assertThat(slimIndexGenerated, is(indexGenerated));
+  }
+
+  @Test
+  public void shardsAreUpdatedOnceTheIndexIsStored() {
+    ChartIndex index = new ChartIndex();
+    index.addEntry(chartEntry("mongodb", "0.4.9"));
+    when(createIndexService.buildIndex(repository)).thenReturn(index);
+
+    underTest.rebuildIndex();
+
+    InOrder inOrder = inOrder(helmFacet, indexShards);
+    inOrder.verify(helmFacet).putIndex("/index.yaml", indexYaml, HELM_INDEX);
+    inOrder.verify(indexShards).update(repository, index);
+  }
+
+  @Test
+  public void unchangedIndexLeavesShardsAlone() {
+    ChartIndex index = new ChartIndex();
+    index.addEntry(chartEntry("mongodb", "0.4.9"));
+    when(createIndexService.buildIndex(repository)).thenReturn(index);
+    FluentAsset stored = mock(FluentAsset.class);
+    when(stored.blob()).thenReturn(Optional.of(mock(AssetBlob.class)));
+    when(stored.attributes(HelmFormat.NAME))
+        .thenReturn(new NestedAttributesMap(HelmFormat.NAME, singletonMap(INDEX_FINGERPRINT, index.fingerprint() + "/1")));
+    when(assets.path("/index.yaml")).thenReturn(storedIndex);
+    when(storedIndex.find()).thenReturn(Optional.of(stored));
+
+    underTest.rebuildIndex();
+
+    verify(createIndexService, never()).writeIndexYaml(any(), any());
+    verify(indexShards, never()).update(any(), any(ChartIndex.class));
+  }
+
+  private static ChartEntry chartEntry(final String name, final String version) {
+    ChartEntry chartEntry = new ChartEntry();
+    chartEntry.setName(name);
+    chartEntry.setVersion(version);
+    chartEntry.setUrls(singletonList(name + "-" + version + ".tgz"));
+    return chartEntry;
+  }
+}
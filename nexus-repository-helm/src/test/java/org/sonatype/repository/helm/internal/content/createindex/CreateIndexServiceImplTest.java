@@ -12,34 +12,55 @@
  */
 package org.sonatype.repository.helm.internal.content.createindex;
 
-import java.util.Arrays;
-import java.util.Collections;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import org.sonatype.goodies.testsupport.TestSupport;
 import org.sonatype.nexus.common.collect.NestedAttributesMap;
+import org.sonatype.nexus.common.entity.Continuation;
+import org.sonatype.nexus.common.entity.ContinuationAware;
 import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.content.Asset;
 import org.sonatype.nexus.repository.content.AssetBlob;
 import org.sonatype.nexus.repository.content.fluent.FluentAsset;
-import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.content.fluent.FluentAssetBuilder;
+import org.sonatype.nexus.repository.content.fluent.FluentAssets;
+import org.sonatype.nexus.repository.content.fluent.FluentQuery;
+import org.sonatype.nexus.repository.view.payloads.TempBlob;
 import org.sonatype.repository.helm.internal.AssetKind;
+import org.sonatype.repository.helm.internal.HelmFormat;
 import org.sonatype.repository.helm.internal.content.HelmContentFacet;
+import org.sonatype.repository.helm.internal.content.store.HelmChartData;
+import org.sonatype.repository.helm.internal.metadata.ChartEntry;
+import org.sonatype.repository.helm.internal.metadata.ChartIndex;
 import org.sonatype.repository.helm.internal.util.YamlParser;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
+import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 
 import static org.hamcrest.CoreMatchers.is;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 public class CreateIndexServiceImplTest
@@ -71,6 +92,18 @@ public class CreateIndexServiceImplTest
   @Mock
   private NestedAttributesMap formatAttributes;
 
+  @Mock
+  private TempBlob tempBlob;
+
+  @Mock
+  private FluentAssets fluentAssets;
+
+  @Mock
+  private FluentAssetBuilder assetBuilder;
+
+  @Mock
+  private FluentQuery<FluentAsset> packages;
+
   @Before
   public void setUp() {
     when(repository.facet(HelmContentFacet.class)).thenReturn(helmFacet);
@@ -79,30 +112,164 @@ public class CreateIndexServiceImplTest
 
   @Test
   public void testBuildIndexYaml() {
-    List<FluentAsset> list = Arrays.asList(asset);
-    when(asset.attributes()).thenReturn(formatAttributes);
     Map<String, String> shaMap = new HashMap<>();
     shaMap.put("sha256", "12345");
+    HelmChartData chart = createChartData(1, shaMap);
+    when(helmFacet.browseChartData(1000, null)).thenReturn(continuation(singletonList(chart)));
 
-    when(assetBlob.checksums()).thenReturn(shaMap);
-    when(helmFacet.browseAssets()).thenReturn(list);
-    when(yamlParser.getYamlContent(anyObject())).thenReturn("index.yaml");
-
-    Content result = underTest.buildIndexYaml(repository);
+    ChartIndex result = underTest.buildIndex(repository);
 
     assertThat(result, is(notNullValue()));
+    assertThat(result.getApiVersion(), is("v1"));
+    assertThat(result.getEntries().get("mongodb").get(0).getDigest(), is("12345"));
+    assertThat(result.getEntries().get("mongodb").get(0).getUrls(), is(singletonList("mongodb-0.4.1.tgz")));
+  }
+
+  @Test
+  public void testBuildIndexBrowsesChartsInPages() {
+    List<HelmChartData> firstPage = new ArrayList<>();
+    for (int i = 1; i <= 1000; i++) {
+      firstPage.add(createChartData(i, null));
+    }
+    when(helmFacet.browseChartData(1000, null)).thenReturn(continuation(firstPage));
+    when(helmFacet.browseChartData(1000, "1000")).thenReturn(continuation(singletonList(createChartData(1001, null))));
+
+    ChartIndex result = underTest.buildIndex(repository);
+
+    assertThat(result.countEntries(), is(1001));
+    verify(helmFacet, times(2)).browseChartData(eq(1000), any());
+  }
+
+  @Test
+  public void testWriteIndexYaml() {
+    ChartIndex index = new ChartIndex();
+    DateTime generated = new DateTime(0L);
+    index.setGenerated(generated);
+    when(helmFacet.getTempBlob(any(InputStream.class), anyString())).thenReturn(tempBlob);
+
+    TempBlob result = underTest.writeIndexYaml(repository, index);
+
+    assertThat(result, is(tempBlob));
+    assertThat(index.getGenerated(), is(generated));
   }
 
   @Test
   public void testIndexYamlBuiltEvenWhenNoAssets() {
     when(assets.iterator()).thenReturn(assetIterator);
     when(assetIterator.next()).thenReturn(asset);
-    when(helmFacet.browseAssets()).thenReturn(Collections.emptyList());
-    when(yamlParser.getYamlContent(anyObject())).thenReturn("index.yaml");
+    when(helmFacet.browseChartData(1000, null)).thenReturn(continuation(emptyList()));
 
-    Content result = underTest.buildIndexYaml(repository);
+    ChartIndex result = underTest.buildIndex(repository);
 
-    assertThat(result, is(notNullValue()));
+    assertThat(result.countEntries(), is(0));
+  }
+
+  @Test
+  public void testPatchIndexYamlRequiresStoredIndex() throws Exception {
+    when(helmFacet.openAssetBlob("/index.yaml")).thenReturn(Optional.empty());
+
+    ChartIndex result = underTest.patchIndex(repository, singletonList("/mongodb-0.4.9.tgz"));
+
+    assertThat(result, is(nullValue()));
+  }
+
+  @Test
+  public void testPatchIndexYamlRemovesDeletedChart() throws Exception {
+    ChartIndex storedIndex = mockStoredIndex();
+    when(packages.count()).thenReturn(1);
+    when(helmFacet.browseChartDigests(1000, null))
+        .thenReturn(continuation(singletonList(createChartDigest(2, "/mongodb-0.5.0.tgz"))));
+
+    ChartIndex result = underTest.patchIndex(repository, singletonList("/mongodb-0.4.9.tgz"));
+
+    assertThat(result, is(storedIndex));
+    assertThat(storedIndex.countEntries(), is(1));
+    assertThat(storedIndex.getEntries().get("mongodb").get(0).getVersion(), is("0.5.0"));
+  }
+
+  @Test
+  public void testPatchIndexYamlDetectsDrift() throws Exception {
+    mockStoredIndex();
+    when(packages.count()).thenReturn(5);
+
+    ChartIndex result = underTest.patchIndex(repository, singletonList("/mongodb-0.4.9.tgz"));
+
+    assertThat(result, is(nullValue()));
+  }
+
+  @Test
+  public void testPatchIndexYamlDetectsDriftInTheSameNumberOfCharts() throws Exception {
+    mockStoredIndex();
+    when(packages.count()).thenReturn(1);
+    when(helmFacet.browseChartDigests(1000, null))
+        .thenReturn(continuation(singletonList(createChartDigest(3, "/mongodb-0.6.0.tgz"))));
+
+    ChartIndex result = underTest.patchIndex(repository, singletonList("/mongodb-0.4.9.tgz"));
+
+    assertThat(result, is(nullValue()));
+  }
+
+  private ChartIndex mockStoredIndex() throws Exception {
+    ChartIndex storedIndex = new ChartIndex();
+    storedIndex.addEntry(createChartEntry("mongodb", "0.4.9"));
+    storedIndex.addEntry(createChartEntry("mongodb", "0.5.0"));
+
+    when(helmFacet.openAssetBlob("/index.yaml"))
+        .thenReturn(Optional.of(new ByteArrayInputStream("index.yaml".getBytes(UTF_8))));
+    when(yamlParser.loadIndex(any())).thenReturn(storedIndex);
+    when(helmFacet.assets()).thenReturn(fluentAssets);
+    when(fluentAssets.path("/mongodb-0.4.9.tgz")).thenReturn(assetBuilder);
+    when(assetBuilder.find()).thenReturn(Optional.empty());
+    when(fluentAssets.byKind(AssetKind.HELM_PACKAGE.name())).thenReturn(packages);
+    return storedIndex;
+  }
+
+  private HelmChartData createChartData(final int assetId, final Map<String, String> checksums) {
+    Map<String, Object> helmAttributes = new HashMap<>();
+    helmAttributes.put("name", "mongodb");
+    helmAttributes.put("version", "0.4." + assetId);
+    NestedAttributesMap attributes = new NestedAttributesMap("attributes", new HashMap<>());
+    attributes.set(HelmFormat.NAME, helmAttributes);
+
+    HelmChartData chart = new HelmChartData();
+    chart.setAssetId(assetId);
+    chart.setPath("/mongodb-0.4." + assetId + ".tgz");
+    chart.setAttributes(attributes);
+    chart.setCreated(OffsetDateTime.now());
+    chart.setChecksums(checksums);
+    return chart;
+  }
+
+  private HelmChartData createChartDigest(final int assetId, final String path) {
+    HelmChartData chart = new HelmChartData();
+    chart.setAssetId(assetId);
+    chart.setPath(path);
+    return chart;
+  }
+
+  private static <T extends ContinuationAware> Continuation<T> continuation(final List<T> page) {
+    class ContinuationList
+        extends ArrayList<T>
+        implements Continuation<T>
+    {
+      ContinuationList() {
+        super(page);
+      }
+
+      @Override
+      public String nextContinuationToken() {
+        return get(size() - 1).nextContinuationToken();
+      }
+    }
+    return new ContinuationList();
+  }
+
+  private ChartEntry createChartEntry(final String name, final String version) {
+    ChartEntry chartEntry = new ChartEntry();
+    chartEntry.setName(name);
+    chartEntry.setVersion(version);
+    chartEntry.setUrls(singletonList(name + "-" + version + ".tgz"));
+    return chartEntry;
   }
 
   private void initializeSystemUnderTest() {
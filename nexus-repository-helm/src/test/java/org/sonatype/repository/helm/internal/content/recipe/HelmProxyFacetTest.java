@@ -0,0 +1,142 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.content.recipe;
+
+import java.net.URI;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.cache.NegativeCacheFacet;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.Context;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.repository.helm.internal.content.HelmContentFacet;
+import org.sonatype.repository.helm.internal.metadata.HelmChartPrefetcher;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexCache;
+import org.sonatype.repository.helm.internal.metadata.HelmIndexRefresher;
+import org.sonatype.repository.helm.internal.mirror.HelmMirrorFacet;
+import org.sonatype.repository.helm.internal.util.HelmPathUtils;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.repository.helm.internal.AssetKind.HELM_INDEX;
+
+public class HelmProxyFacetTest
+    extends TestSupport
+{
+  private static final String CHART = "mongodb-7.8.9.tgz";
+
+  @Mock
+  private Repository repository;
+
+  @Mock
+  private HelmContentFacet helmContentFacet;
+
+  @Mock
+  private NegativeCacheFacet negativeCache;
+
+  @Mock
+  private HelmIndexCache indexCache;
+
+  @Mock
+  private HelmIndexRefresher indexRefresher;
+
+  @Mock
+  private HelmChartPrefetcher chartPrefetcher;
+
+  private HelmProxyFacet underTest;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    when(repository.getName()).thenReturn("helm-proxy");
+    when(repository.facet(HelmContentFacet.class)).thenReturn(helmContentFacet);
+    when(repository.optionalFacet(NegativeCacheFacet.class)).thenReturn(Optional.of(negativeCache));
+    when(indexCache.getIndex(eq(repository), any()))
+        .thenAnswer(invocation -> ((Supplier<Content>) invocation.getArguments()[1]).get());
+    when(helmContentFacet.getAsset("/" + CHART)).thenReturn(Optional.empty());
+  }
+
+  @Test
+  public void chartPublishedAfterTheIndexWasCachedIsFetched() throws Exception {
+    startProxy(false, true);
+    Content cachedIndex = index("mongodb-7.8.8.tgz");
+    when(helmContentFacet.getAsset("/index.yaml")).thenReturn(Optional.of(cachedIndex));
+    Context chartContext = HelmMirrorFacet.chartContext(repository, CHART);
+
+    assertThat(underTest.get(chartContext), is(nullValue()));
+    verify(underTest, never()).fetch(any(), any());
+
+    Content newIndex = index("mongodb-7.8.8.tgz", CHART);
+    doReturn(new URI("https://charts.example.com/")).when(underTest).getRemoteUrl();
+    when(helmContentFacet.putIndex(eq("/index.yaml"), eq(newIndex), eq(HELM_INDEX), any())).thenReturn(newIndex);
+    when(helmContentFacet.getAsset("/index.yaml")).thenReturn(Optional.of(newIndex));
+    underTest.store(HelmMirrorFacet.indexContext(repository), newIndex);
+
+    // the not found answer given for the chart must not outlive the index it came from
+    verify(negativeCache).invalidate();
+
+    Content chart = new Content(new BytesPayload(new byte[]{1}, "application/x-tgz"));
+    doReturn(chart).when(underTest).fetch(chartContext, null);
+    doReturn(chart).when(underTest).store(chartContext, chart);
+
+    assertThat(underTest.get(chartContext), is(chart));
+  }
+
+  @Test
+  public void cachedChartIsLookedUpOnceWhenRevalidated() throws Exception {
+    startProxy(true, false);
+    when(helmContentFacet.getAsset("/index.yaml")).thenReturn(Optional.of(index(CHART)));
+    Content cached = new Content(new BytesPayload(new byte[]{1}, "application/x-tgz"));
+    when(helmContentFacet.getAsset("/" + CHART)).thenReturn(Optional.of(cached));
+    Context chartContext = HelmMirrorFacet.chartContext(repository, CHART);
+
+    // without a digest in the index the cached chart is revalidated with the remote
+    Content chart = new Content(new BytesPayload(new byte[]{2}, "application/x-tgz"));
+    doReturn(chart).when(underTest).fetch(chartContext, cached);
+    doReturn(chart).when(underTest).store(chartContext, chart);
+
+    assertThat(underTest.get(chartContext), is(chart));
+    verify(helmContentFacet, times(1)).getAsset("/" + CHART);
+  }
+
+  private void startProxy(final boolean immutablePackages, final boolean notFoundFromIndex) throws Exception {
+    underTest = spy(new HelmProxyFacet(new HelmPathUtils(), indexCache, indexRefresher, chartPrefetcher,
+        immutablePackages, notFoundFromIndex));
+    underTest.attach(repository);
+  }
+
+  private static Content index(final String... charts) {
+    StringBuilder yaml = new StringBuilder("apiVersion: v1\nentries:\n  mongodb:\n");
+    for (String chart : charts) {
+      yaml.append("  - name: mongodb\n    urls: [").append(chart).append("]\n");
+    }
+    return new Content(new BytesPayload(yaml.toString().getBytes(UTF_8), "text/x-yaml"));
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.createindex;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+
+public class HelmIndexRebuildSchedulerTest
+    extends TestSupport
+{
+  private static final String REPOSITORY = "helm-hosted";
+
+  private HelmIndexRebuildScheduler underTest;
+
+  @After
+  public void tearDown() throws Exception {
+    underTest.stop();
+  }
+
+  @Test
+  public void coalescesRequestsWithinQuietPeriod() throws Exception {
+    start(200, 10000);
+    AtomicInteger rebuilds = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(1);
+
+    for (int i = 0; i < 10; i++) {
+      underTest.schedule(REPOSITORY, () -> {
+        rebuilds.incrementAndGet();
+        done.countDown();
+      });
+    }
+    assertThat(underTest.getQueueDepth(), is(1));
+
+    assertThat(done.await(5, SECONDS), is(true));
+    Thread.sleep(400);
+    assertThat(rebuilds.get(), is(1));
+    assertThat(underTest.getQueueDepth(), is(0));
+  }
+
+  @Test
+  public void maxLatencyBoundsContinuousRequests() throws Exception {
+    start(300, 500);
+    CountDownLatch done = new CountDownLatch(1);
+
+    // keep requesting more often than the quiet period, the rebuild must still happen
+    long deadline = System.currentTimeMillis() + 3000;
+    while (done.getCount() > 0 && System.currentTimeMillis() < deadline) {
+      underTest.schedule(REPOSITORY, done::countDown);
+      Thread.sleep(50);
+    }
+
+    assertThat(done.getCount(), is(0L));
+  }
+
+  @Test
+  public void requestsDuringRebuildCauseOneFollowUp() throws Exception {
+    start(50, 1000);
+    AtomicInteger rebuilds = new AtomicInteger();
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch followUp = new CountDownLatch(1);
+
+    underTest.schedule(REPOSITORY, () -> {
+      rebuilds.incrementAndGet();
+      running.countDown();
+      awaitQuietly(release);
+    });
+    assertThat(running.await(5, SECONDS), is(true));
+
+    for (int i = 0; i < 5; i++) {
+      underTest.schedule(REPOSITORY, () -> {
+        rebuilds.incrementAndGet();
+        followUp.countDown();
+      });
+    }
+    release.countDown();
+
+    assertThat(followUp.await(5, SECONDS), is(true));
+    Thread.sleep(200);
+    assertThat(rebuilds.get(), is(2));
+  }
+
+  @Test
+  public void repositoriesAreScheduledIndependently() throws Exception {
+    start(50, 1000);
+    CountDownLatch done = new CountDownLatch(2);
+
+    underTest.schedule("first", done::countDown);
+    underTest.schedule("second", done::countDown);
+    assertThat(underTest.getQueueDepth(), greaterThanOrEqualTo(1));
+
+    assertThat(done.await(5, SECONDS), is(true));
+  }
+
+  @Test
+  public void cancelledRequestsDoNotRun() throws Exception {
+    start(100, 1000);
+    AtomicInteger rebuilds = new AtomicInteger();
+
+    underTest.schedule(REPOSITORY, rebuilds::incrementAndGet);
+    underTest.cancel(REPOSITORY);
+
+    Thread.sleep(300);
+    assertThat(rebuilds.get(), is(0));
+    assertThat(underTest.getQueueDepth(), is(0));
+  }
+
+  @Test
+  public void requestsBeforeStartRunOnceStarted() throws Exception {
+    underTest = new HelmIndexRebuildScheduler(50, 1000, 2);
+    CountDownLatch done = new CountDownLatch(1);
+
+    underTest.schedule(REPOSITORY, done::countDown);
+    assertThat(underTest.getQueueDepth(), is(1));
+    Thread.sleep(100);
+    assertThat(done.getCount(), is(1L));
+
+    underTest.start();
+    assertThat(done.await(5, SECONDS), is(true));
+  }
+
+  private void start(final long quietPeriod, final long maxLatency) throws Exception {
+    underTest = new HelmIndexRebuildScheduler(quietPeriod, maxLatency, 2);
+    underTest.start();
+  }
+
+  private static void awaitQuietly(final CountDownLatch latch) {
+    try {
+      latch.await(5, SECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -12,13 +12,19 @@
  */
 package org.sonatype.repository.helm.internal.metadata;
 
+import java.util.Collections;
+
 import org.sonatype.goodies.testsupport.TestSupport;
 
+import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 
+import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
 
 public class ChartIndexTest
     extends TestSupport
@@ -57,4 +63,94 @@ public class ChartIndexTest
 
     assertThat(underTest.getEntries().size(), is(2));
   }
+
+  @Test
+  public void removeChartEntryByUrl() {
+    underTest.addEntry(createChartEntry("test", "1.0.0"));
+    underTest.addEntry(createChartEntry("test", "1.0.1"));
+    underTest.addEntry(createChartEntry("other", "2.0.0"));
+
+    assertThat(underTest.countEntries(), is(3));
+    assertThat(underTest.removeEntry("test-1.0.0.tgz"), is(true));
+    assertThat(underTest.countEntries(), is(2));
+    assertThat(underTest.getEntries().get("test").size(), is(1));
+
+    assertThat(underTest.removeEntry("other-2.0.0.tgz"), is(true));
+    assertThat(underTest.getEntries().containsKey("other"), is(false));
+
+    assertThat(underTest.removeEntry("missing-1.0.0.tgz"), is(false));
+    assertThat(underTest.countEntries(), is(1));
+  }
+
+  @Test
+  public void removeChartEntryAddedAfterARemoval() {
+    underTest.addEntry(createChartEntry("test", "1.0.0"));
+    underTest.removeEntry("test-1.0.0.tgz");
+    underTest.addEntry(createChartEntry("test", "1.0.1"));
+
+    assertThat(underTest.removeEntry("test-1.0.1.tgz"), is(true));
+    assertThat(underTest.getEntries().isEmpty(), is(true));
+  }
+
+  @Test
+  public void chartsDigestIgnoresOrderButNotChartDigests() {
+    underTest.addEntry(createChartEntry("test", "1.0.0"));
+    underTest.addEntry(createChartEntry("other", "2.0.0"));
+
+    ChartsDigest charts = new ChartsDigest();
+    charts.add("other-2.0.0.tgz", null);
+    charts.add("test-1.0.0.tgz", null);
+    assertThat(underTest.chartsDigest(), is(charts));
+
+    underTest.getEntries().get("test").get(0).setDigest("12345");
+    assertThat(underTest.chartsDigest(), is(not(charts)));
+  }
+
+  @Test
+  public void fingerprintIgnoresOrderAndGeneratedTime() {
+    underTest.setApiVersion("v1");
+    underTest.setGenerated(new DateTime(0L));
+    underTest.addEntry(createChartEntry("test", "1.0.0"));
+    underTest.addEntry(createChartEntry("test", "1.0.1"));
+    underTest.addEntry(createChartEntry("other", "2.0.0"));
+
+    ChartIndex reordered = new ChartIndex();
+    reordered.setApiVersion("v1");
+    reordered.setGenerated(new DateTime());
+    reordered.addEntry(createChartEntry("other", "2.0.0"));
+    reordered.addEntry(createChartEntry("test", "1.0.1"));
+    reordered.addEntry(createChartEntry("test", "1.0.0"));
+
+    assertThat(reordered.fingerprint(), is(underTest.fingerprint()));
+
+    reordered.getEntries().get("test").get(0).setDigest("12345");
+    assertThat(reordered.fingerprint(), is(not(underTest.fingerprint())));
+  }
+
+  @Test
+  public void latestKeepsNewestVersionsOfEachChart() {
+    underTest.setApiVersion("v1");
+    underTest.addEntry(createChartEntry("test", "1.2.0"));
+    underTest.addEntry(createChartEntry("test", "1.10.0"));
+    underTest.addEntry(createChartEntry("test", "1.10.0-rc.1"));
+    underTest.addEntry(createChartEntry("test", "1.9.3"));
+    underTest.addEntry(createChartEntry("other", "2.0.0"));
+
+    ChartIndex latest = underTest.latest(2);
+
+    assertThat(latest.getApiVersion(), is("v1"));
+    assertThat(latest.countEntries(), is(3));
+    assertThat(latest.getEntries().get("test").stream().map(ChartEntry::getVersion).collect(toList()),
+        is(asList("1.10.0", "1.10.0-rc.1")));
+    assertThat(latest.getEntries().get("other").size(), is(1));
+    assertThat(underTest.countEntries(), is(5));
+  }
+
+  private ChartEntry createChartEntry(final String name, final String version) {
+    ChartEntry chartEntry = new ChartEntry();
+    chartEntry.setName(name);
+    chartEntry.setVersion(version);
+    chartEntry.setUrls(Collections.singletonList(name + "-" + version + ".tgz"));
+    return chartEntry;
+  }
 }
@@ -0,0 +1,65 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.ByteArrayInputStream;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+
+public class ChartPrefetchPolicyTest
+    extends TestSupport
+{
+  private static final UpstreamIndex INDEX = UpstreamIndex.parse(new ByteArrayInputStream((
+      "apiVersion: v1\n" +
+      "entries:\n" +
+      "  mongodb:\n" +
+      "  - urls: [mongodb-7.9.0.tgz]\n" +
+      "    version: 7.9.0\n" +
+      "  - urls: [mongodb-7.10.0-rc.1.tgz]\n" +
+      "    version: 7.10.0-rc.1\n" +
+      "  - urls: [mongodb-7.10.0.tgz, mirror/mongodb-7.10.0.tgz]\n" +
+      "    version: 7.10.0\n" +
+      "  mongodb-sharded:\n" +
+      "  - urls: [mongodb-sharded-1.0.0.tgz]\n" +
+      "    version: 1.0.0\n" +
+      "  mysql:\n" +
+      "  - urls: [mysql-1.0.0.tgz]\n" +
+      "    version: 1.0.0\n").getBytes(UTF_8)));
+
+  @Test
+  public void selectLatestVersionsOfMatchingCharts() {
+    assertThat(ChartPrefetchPolicy.create(2, "mongodb").select(INDEX),
+        contains("mongodb-7.10.0.tgz", "mongodb-7.10.0-rc.1.tgz"));
+    assertThat(ChartPrefetchPolicy.create(1, "mongo*, mysql").select(INDEX),
+        contains("mongodb-7.10.0.tgz", "mongodb-sharded-1.0.0.tgz", "mysql-1.0.0.tgz"));
+    assertThat(ChartPrefetchPolicy.create(1, "*sharded").select(INDEX), contains("mongodb-sharded-1.0.0.tgz"));
+    assertThat(ChartPrefetchPolicy.create(1, "*").select(INDEX),
+        contains("mongodb-7.10.0.tgz", "mongodb-sharded-1.0.0.tgz", "mysql-1.0.0.tgz"));
+  }
+
+  @Test
+  public void disabledUnlessVersionsAndChartsAreSet() {
+    assertThat(ChartPrefetchPolicy.create(0, "*").isEnabled(), is(false));
+    assertThat(ChartPrefetchPolicy.create(3, " ").isEnabled(), is(false));
+    assertThat(ChartPrefetchPolicy.NONE.select(INDEX), is(empty()));
+    assertThat(ChartPrefetchPolicy.create(3, "*").isEnabled(), is(true));
+  }
+}
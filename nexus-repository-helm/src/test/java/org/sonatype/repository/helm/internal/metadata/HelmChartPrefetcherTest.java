@@ -0,0 +1,79 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.Repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.when;
+
+public class HelmChartPrefetcherTest
+    extends TestSupport
+{
+  @Mock
+  private Repository repository;
+
+  private final List<String> fetched = Collections.synchronizedList(new ArrayList<>());
+
+  private final HelmChartPrefetcher underTest = new HelmChartPrefetcher(1, 2);
+
+  @Before
+  public void setUp() throws Exception {
+    when(repository.getName()).thenReturn("helm-proxy");
+    underTest.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    underTest.stop();
+  }
+
+  @Test
+  public void chartsBeyondTheQueueAreDropped() throws Exception {
+    // the single thread is busy planning, so only two fetches fit in the queue
+    underTest.prefetch(repository, () -> Arrays.asList("a-1.tgz", "b-1.tgz", "c-1.tgz", "d-1.tgz"), fetched::add);
+
+    for (int i = 0; i < 500 && fetched.size() < 2; i++) {
+      Thread.sleep(10);
+    }
+    Thread.sleep(100);
+
+    assertThat(fetched, contains("a-1.tgz", "b-1.tgz"));
+    assertThat(underTest.isPending("helm-proxy", "c-1.tgz"), is(false));
+    assertThat(underTest.isPending("helm-proxy", "d-1.tgz"), is(false));
+  }
+
+  @Test
+  public void nothingIsPrefetchedWhenStopped() throws Exception {
+    underTest.stop();
+
+    underTest.prefetch(repository, () -> Collections.singletonList("a-1.tgz"), fetched::add);
+
+    assertThat(fetched, is(empty()));
+    underTest.start();
+  }
+}
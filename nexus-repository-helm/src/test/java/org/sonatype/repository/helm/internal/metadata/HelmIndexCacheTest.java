@@ -0,0 +1,127 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.when;
+
+public class HelmIndexCacheTest
+    extends TestSupport
+{
+  private static final String INDEX = "apiVersion: v1\nentries: {}\n";
+
+  private static final String ETAG = "\"etag\"";
+
+  @Mock
+  private Repository repository;
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private HelmIndexCache underTest;
+
+  @Before
+  public void setUp() {
+    when(repository.getName()).thenReturn("helm-hosted");
+    underTest = new HelmIndexCache(1024, 256);
+  }
+
+  @Test
+  public void hitsAreServedWithoutLoading() throws Exception {
+    assertThat(read(underTest.getIndex(repository, this::load)), is(INDEX));
+    Content cached = underTest.getIndex(repository, this::load);
+
+    assertThat(read(cached), is(INDEX));
+    assertThat(cached.getAttributes().get(Content.CONTENT_ETAG), is(ETAG));
+    assertThat(loads.get(), is(1));
+  }
+
+  @Test
+  public void invalidateForcesReload() {
+    underTest.getIndex(repository, this::load);
+    underTest.getGzipIndex(repository, () -> Optional.of(load()));
+    underTest.invalidate("helm-hosted");
+    underTest.getIndex(repository, this::load);
+    underTest.getGzipIndex(repository, () -> Optional.of(load()));
+
+    assertThat(loads.get(), is(4));
+  }
+
+  @Test
+  public void loadRacingAnInvalidationIsNotCached() {
+    underTest.getIndex(repository, () -> {
+      Content content = load();
+      underTest.invalidate("helm-hosted");
+      return content;
+    });
+    underTest.getIndex(repository, this::load);
+
+    assertThat(loads.get(), is(2));
+  }
+
+  @Test
+  public void missingAndOversizedIndexesAreNotCached() {
+    assertThat(underTest.getIndex(repository, () -> null), is(nullValue()));
+    underTest.getIndex(repository, () -> new Content(new BytesPayload(new byte[512], "text/x-yaml")));
+
+    assertThat(underTest.size(), is(0L));
+  }
+
+  @Test
+  public void entriesLargerThanAQuarterOfTheCacheAreCached() {
+    underTest = new HelmIndexCache(1024, 1024);
+    underTest.getIndex(repository, () -> {
+      loads.incrementAndGet();
+      return new Content(new BytesPayload(new byte[900], "text/x-yaml"));
+    });
+    Content cached = underTest.getIndex(repository, this::load);
+
+    assertThat(cached.getSize(), is(900L));
+    assertThat(loads.get(), is(1));
+  }
+
+  @Test
+  public void disabledWhenMaxBytesIsZero() {
+    underTest = new HelmIndexCache(0, 256);
+    underTest.getIndex(repository, this::load);
+    underTest.getIndex(repository, this::load);
+
+    assertThat(loads.get(), is(2));
+  }
+
+  private Content load() {
+    loads.incrementAndGet();
+    Content content = new Content(new BytesPayload(INDEX.getBytes(UTF_8), "text/x-yaml"));
+    content.getAttributes().set(Content.CONTENT_ETAG, ETAG);
+    return content;
+  }
+
+  private static String read(final Content content) throws Exception {
+    return IOUtils.toString(content.openInputStream(), UTF_8);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.goodies.common.Time;
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.cache.CacheController;
+import org.sonatype.nexus.repository.cache.CacheInfo;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.StringPayload;
+
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.when;
+
+public class HelmIndexRefresherTest
+    extends TestSupport
+{
+  private static final String CACHE_TOKEN = "token";
+
+  @Mock
+  private Repository repository;
+
+  private final CacheController cacheController = new CacheController(60, CACHE_TOKEN);
+
+  private final AtomicInteger refreshes = new AtomicInteger();
+
+  private final CountDownLatch refreshed = new CountDownLatch(1);
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  private final HelmIndexRefresher underTest = new HelmIndexRefresher(Time.parse("1h"), 2);
+
+  @Before
+  public void setUp() throws Exception {
+    when(repository.getName()).thenReturn("helm-proxy");
+    underTest.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    release.countDown();
+    underTest.stop();
+  }
+
+  @Test
+  public void freshIndexIsServedAsUsual() {
+    assertThat(underTest.maybeServeStale(repository, index(DateTime.now(), CACHE_TOKEN), cacheController, this::refresh),
+        is(nullValue()));
+    assertThat(refreshes.get(), is(0));
+  }
+
+  @Test
+  public void staleIndexIsServedWhileRefreshedOnce() throws Exception {
+    Content index = index(DateTime.now().minusMinutes(30), CACHE_TOKEN);
+
+    assertThat(underTest.maybeServeStale(repository, index, cacheController, this::refresh), is(sameInstance(index)));
+    assertThat(underTest.maybeServeStale(repository, index, cacheController, this::refresh), is(sameInstance(index)));
+    assertThat(refreshed.await(5, TimeUnit.SECONDS), is(true));
+    assertThat(underTest.isRefreshing("helm-proxy"), is(true));
+
+    release.countDown();
+    for (int i = 0; i < 500 && underTest.isRefreshing("helm-proxy"); i++) {
+      Thread.sleep(10);
+    }
+    assertThat(underTest.isRefreshing("helm-proxy"), is(false));
+    assertThat(refreshes.get(), is(1));
+  }
+
+  @Test
+  public void tooStaleOrInvalidatedIndexIsRefreshedFirst() {
+    assertThat(underTest.maybeServeStale(repository, index(DateTime.now().minusHours(2), CACHE_TOKEN), cacheController,
+        this::refresh), is(nullValue()));
+    assertThat(underTest.maybeServeStale(repository, index(DateTime.now().minusMinutes(30), "old-token"),
+        cacheController, this::refresh), is(nullValue()));
+    assertThat(refreshes.get(), is(0));
+  }
+
+  @Test
+  public void disabledWithoutMaxStaleness() {
+    HelmIndexRefresher disabled = new HelmIndexRefresher(Time.seconds(0), 2);
+
+    assertThat(disabled.maybeServeStale(repository, index(DateTime.now().minusMinutes(30), CACHE_TOKEN),
+        cacheController, this::refresh), is(nullValue()));
+  }
+
+  @Test
+  public void servedAsUsualWhenStopped() throws Exception {
+    underTest.stop();
+
+    assertThat(underTest.maybeServeStale(repository, index(DateTime.now().minusMinutes(30), CACHE_TOKEN),
+        cacheController, this::refresh), is(nullValue()));
+    assertThat(refreshes.get(), is(0));
+
+    underTest.start();
+  }
+
+  private Object refresh() throws InterruptedException {
+    refreshes.incrementAndGet();
+    refreshed.countDown();
+    release.await(5, TimeUnit.SECONDS);
+    return null;
+  }
+
+  private static Content index(final DateTime lastVerified, final String cacheToken) {
+    Content content = new Content(new StringPayload("apiVersion: v1\n", "text/x-yaml"));
+    content.getAttributes().set(CacheInfo.class, new CacheInfo(lastVerified, cacheToken));
+    return content;
+  }
+}
@@ -0,0 +1,276 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryDeletedEvent;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.repository.helm.internal.util.YamlParser;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.yaml.snakeyaml.Yaml;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class HelmIndexShardsTest
+    extends TestSupport
+{
+  private static final String INDEX = "apiVersion: v1\n" +
+      "entries:\n" +
+      "  alpine:\n" +
+      "  - name: alpine\n" +
+      "    version: 0.2.0\n" +
+      "    urls:\n" +
+      "    - alpine-0.2.0.tgz\n" +
+      "  - name: alpine\n" +
+      "    version: 0.1.0\n" +
+      "    urls:\n" +
+      "    - alpine-0.1.0.tgz\n" +
+      "  mongodb:\n" +
+      "  - name: mongodb\n" +
+      "    version: 7.8.9\n" +
+      "    digest: 0123abcd\n" +
+      "    urls: [mongodb-7.8.9.tgz]\n" +
+      "generated: \"2020-01-01T00:00:00Z\"\n";
+
+  private static final String CHANGED_INDEX = INDEX.replace("7.8.9", "7.9.0");
+
+  @Mock
+  private Repository repository;
+
+  private final AtomicInteger reads = new AtomicInteger();
+
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private HelmIndexShards underTest;
+
+  @Before
+  public void setUp() {
+    when(repository.getName()).thenReturn("helm-proxy");
+    underTest = new HelmIndexShards(new YamlParser(), 1024 * 1024);
+  }
+
+  @Test
+  public void splitListsEveryChartOnItsOwn() throws Exception {
+    Map<String, byte[]> shards = new HashMap<>();
+    HelmIndexShards.split(stream(INDEX), shards::put);
+
+    assertThat(shards.keySet(), containsInAnyOrder("alpine", "mongodb"));
+    Map<String, Object> mongodb = parse(shards.get("mongodb"));
+    assertThat(mongodb.get("apiVersion"), is("v1"));
+    Map<String, Object> entries = (Map<String, Object>) mongodb.get("entries");
+    assertThat(entries.keySet().size(), is(1));
+    assertThat(entries.get("mongodb"), is(((Map<String, Object>) parse(INDEX).get("entries")).get("mongodb")));
+    assertThat((List<Object>) ((Map<String, Object>) parse(shards.get("alpine")).get("entries")).get("alpine"),
+        hasSize(2));
+  }
+
+  @Test
+  public void storedIndexIsCutOnceForAllCharts() throws Exception {
+    assertThat(underTest.getShard(repository, "alpine", 0, load(INDEX, "\"one\"")).isPresent(), is(true));
+    assertThat(underTest.getShard(repository, "mongodb", 0, load(INDEX, "\"one\"")).isPresent(), is(true));
+    assertThat(underTest.getShard(repository, "nginx", 0, load(INDEX, "\"one\"")), is(Optional.empty()));
+
+    assertThat(loads.get(), is(1));
+    assertThat(reads.get(), is(1));
+  }
+
+  @Test
+  public void concurrentMissesShareOneLoad() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Optional<Content>>> shards = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        shards.add(executor.submit(() -> underTest.getShard(repository, "alpine", 0, () -> {
+          Thread.sleep(100);
+          return load(INDEX, "\"one\"").call();
+        })));
+      }
+      for (Future<Optional<Content>> shard : shards) {
+        assertThat(shard.get().isPresent(), is(true));
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+    assertThat(loads.get(), is(1));
+  }
+
+  @Test
+  public void storingAnIndexReplacesOnlyChangedCharts() throws Exception {
+    underTest.update(repository, index(INDEX, "\"one\""), stream(INDEX));
+    Content alpine = shard("alpine", 0);
+    Content mongodb = shard("mongodb", 0);
+
+    underTest.update(repository, index(CHANGED_INDEX, "\"two\""), stream(CHANGED_INDEX));
+
+    assertThat(loads.get(), is(0));
+    assertThat(shard("alpine", 0).getAttributes().get(Content.CONTENT_ETAG),
+        is(alpine.getAttributes().get(Content.CONTENT_ETAG)));
+    assertThat(shard("alpine", 0).getAttributes().get(Content.CONTENT_LAST_MODIFIED),
+        is(alpine.getAttributes().get(Content.CONTENT_LAST_MODIFIED)));
+    assertThat(shard("mongodb", 0).getAttributes().get(Content.CONTENT_ETAG),
+        not(mongodb.getAttributes().get(Content.CONTENT_ETAG)));
+  }
+
+  @Test
+  public void builtIndexReplacesOnlyChangedCharts() throws Exception {
+    ChartIndex index = new ChartIndex();
+    index.setApiVersion("v1");
+    index.addEntry(entry("alpine", "0.1.0"));
+    index.addEntry(entry("mongodb", "7.8.9"));
+    underTest.update(repository, index);
+    Content alpine = shard("alpine", 0);
+    Content mongodb = shard("mongodb", 0);
+
+    index.addEntry(entry("mongodb", "7.9.0"));
+    underTest.update(repository, index);
+
+    assertThat(loads.get(), is(0));
+    assertThat(shard("alpine", 0).getAttributes().get(Content.CONTENT_ETAG),
+        is(alpine.getAttributes().get(Content.CONTENT_ETAG)));
+    assertThat((List<Object>) ((Map<String, Object>) parse(bytes(shard("mongodb", 0))).get("entries")).get("mongodb"),
+        hasSize(2));
+    assertThat(shard("mongodb", 0).getAttributes().get(Content.CONTENT_ETAG),
+        not(mongodb.getAttributes().get(Content.CONTENT_ETAG)));
+  }
+
+  @Test
+  public void expiredShardsOfAnUnchangedIndexAreKept() throws Exception {
+    underTest.update(repository, index(INDEX, "\"one\""), stream(INDEX));
+    Thread.sleep(5);
+
+    assertThat(underTest.getShard(repository, "alpine", 1, load(INDEX, "\"one\"")).isPresent(), is(true));
+    assertThat(loads.get(), is(1));
+    assertThat(reads.get(), is(0));
+
+    Thread.sleep(5);
+    assertThat(underTest.getShard(repository, "nginx", 1, load(CHANGED_INDEX, "\"two\"")), is(Optional.empty()));
+    assertThat(loads.get(), is(2));
+    assertThat(reads.get(), is(1));
+  }
+
+  @Test
+  public void invalidateDropsTheRepositoryShards() throws Exception {
+    underTest.update(repository, index(INDEX, "\"one\""), stream(INDEX));
+    assertThat(underTest.size(), is(1L));
+
+    underTest.invalidate("helm-proxy");
+    assertThat(underTest.size(), is(0L));
+  }
+
+  @Test
+  public void oversizedIndexIsServedWhole() throws Exception {
+    underTest = new HelmIndexShards(new YamlParser(), 64);
+
+    Content index = index(INDEX, "\"one\"");
+    assertThat(underTest.getShard(repository, "alpine", 0, () -> index).get(), is(sameInstance(index)));
+    underTest.update(repository, index(INDEX, "\"two\""), stream(INDEX));
+    assertThat(underTest.getShard(repository, "mongodb", 0, load(INDEX, "\"two\"")).get().getSize(),
+        is((long) INDEX.length()));
+
+    assertThat(reads.get(), is(0));
+    assertThat(underTest.size(), is(0L));
+  }
+
+  @Test
+  public void deletedRepositoryIsForgotten() throws Exception {
+    underTest.getShard(repository, "alpine", 0, load(INDEX, "\"one\""));
+    assertThat(underTest.isTracked("helm-proxy"), is(true));
+
+    RepositoryDeletedEvent deleted = mock(RepositoryDeletedEvent.class);
+    when(deleted.getRepository()).thenReturn(repository);
+    underTest.on(deleted);
+
+    assertThat(underTest.isTracked("helm-proxy"), is(false));
+    assertThat(underTest.size(), is(0L));
+  }
+
+  private Content shard(final String chart, final long maxAgeMillis) throws Exception {
+    return underTest.getShard(repository, chart, maxAgeMillis, load(INDEX, "\"one\"")).get();
+  }
+
+  private Callable<Content> load(final String yaml, final String etag) {
+    return () -> {
+      loads.incrementAndGet();
+      return index(yaml, etag);
+    };
+  }
+
+  private Content index(final String yaml, final String etag) {
+    Content content = new Content(new BytesPayload(yaml.getBytes(UTF_8), "text/x-yaml")
+    {
+      @Override
+      public InputStream openInputStream() throws IOException {
+        reads.incrementAndGet();
+        return super.openInputStream();
+      }
+    });
+    content.getAttributes().set(Content.CONTENT_ETAG, etag);
+    return content;
+  }
+
+  private static ChartEntry entry(final String name, final String version) {
+    ChartEntry entry = new ChartEntry();
+    entry.setName(name);
+    entry.setVersion(version);
+    entry.setUrls(Collections.singletonList(name + "-" + version + ".tgz"));
+    return entry;
+  }
+
+  private static byte[] bytes(final Content content) throws IOException {
+    try (InputStream in = content.openInputStream()) {
+      return IOUtils.toByteArray(in);
+    }
+  }
+
+  private static InputStream stream(final String yaml) {
+    return new ByteArrayInputStream(yaml.getBytes(UTF_8));
+  }
+
+  private static Map<String, Object> parse(final byte[] bytes) {
+    return new Yaml().load(new String(bytes, UTF_8));
+  }
+
+  private static Map<String, Object> parse(final String yaml) {
+    return new Yaml().load(yaml);
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.yaml.snakeyaml.Yaml;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.core.Is.is;
+
+public class StreamingIndexYamlUrlRewriterTest
+    extends TestSupport
+{
+  private final IndexYamlAbsoluteUrlRewriterSupport underTest = new IndexYamlAbsoluteUrlRewriterSupport();
+
+  private final Map<String, String> chartUrls = new HashMap<>();
+
+  @Test
+  public void onlyUrlsAreTouched() {
+    String index = "apiVersion: v1\n" +
+        "# generated upstream\n" +
+        "entries:\n" +
+        "  mongodb:\n" +
+        "  - appVersion: \"4.2\"\n" +
+        "    description:   keep   this   spacing\n" +
+        "    urls:\n" +
+        "    - https://charts.example.com/stable/mongodb-7.8.9.tgz\n" +
+        "    - 'https://mirror.example.com/it''s/mongodb-7.8.9.tgz'   # mirror\n" +
+        "    - \"https://cdn.example.com/mongodb-7.8.9.tgz\"\n" +
+        "    - relative/mongodb-7.8.9.tgz\n" +
+        "    version: 7.8.9\n" +
+        "  - urls:\n" +
+        "      - https://charts.example.com/stable/mongodb-7.8.8.tgz\n" +
+        "    version: 7.8.8\n" +
+        "generated: 2020-01-01T00:00:00Z\n";
+
+    assertThat(rewrite(index), is("apiVersion: v1\n" +
+        "# generated upstream\n" +
+        "entries:\n" +
+        "  mongodb:\n" +
+        "  - appVersion: \"4.2\"\n" +
+        "    description:   keep   this   spacing\n" +
+        "    urls:\n" +
+        "    - mongodb-7.8.9.tgz\n" +
+        "    - 'mongodb-7.8.9.tgz'   # mirror\n" +
+        "    - \"mongodb-7.8.9.tgz\"\n" +
+        "    - relative/mongodb-7.8.9.tgz\n" +
+        "    version: 7.8.9\n" +
+        "  - urls:\n" +
+        "      - mongodb-7.8.8.tgz\n" +
+        "    version: 7.8.8\n" +
+        "generated: 2020-01-01T00:00:00Z\n"));
+    assertThat(chartUrls.get("mongodb-7.8.8.tgz"), is("https://charts.example.com/stable/mongodb-7.8.8.tgz"));
+  }
+
+  @Test
+  public void lineEndingsAndFlowSequencesAreKept() {
+    String index = "entries:\r\n" +
+        "  mongodb:\r\n" +
+        "  - urls: [https://charts.example.com/mongodb-1.0.0.tgz, \"https://cdn.example.com/a/mongodb-1.0.0.tgz\"]\r\n" +
+        "    version: 1.0.0";
+
+    assertThat(rewrite(index), is("entries:\r\n" +
+        "  mongodb:\r\n" +
+        "  - urls: [mongodb-1.0.0.tgz, \"mongodb-1.0.0.tgz\"]\r\n" +
+        "    version: 1.0.0"));
+  }
+
+  @Test
+  public void multiLineScalarsAreLeftAlone() {
+    String index = "entries:\n" +
+        "  mongodb:\n" +
+        "  - urls:\n" +
+        "    - https://charts.example.com/mongodb-1.0.0.tgz\n" +
+        "      ?folded\n" +
+        "    - https://charts.example.com/mongodb-1.0.1.tgz\n" +
+        "    version: 1.0.0\n";
+
+    assertThat(rewrite(index), is("entries:\n" +
+        "  mongodb:\n" +
+        "  - urls:\n" +
+        "    - https://charts.example.com/mongodb-1.0.0.tgz\n" +
+        "      ?folded\n" +
+        "    - mongodb-1.0.1.tgz\n" +
+        "    version: 1.0.0\n"));
+  }
+
+  @Test
+  public void jsonIsRewrittenThroughYamlParser() {
+    String rewritten = rewrite("{\"entries\":{\"mongodb\":[{\"urls\":[\"https://charts.example.com/mongodb-1.0.0.tgz\"]," +
+        "\"version\":\"1.0.0\"}]}}");
+
+    assertThat(rewritten, containsString("mongodb-1.0.0.tgz"));
+    assertThat(rewritten, not(containsString("https://")));
+  }
+
+  @Test
+  public void sameResultAsYamlParser() throws Exception {
+    byte[] index;
+    try (InputStream in = getClass().getResourceAsStream("../orient/metadata/index.yaml")) {
+      index = IOUtils.toByteArray(in);
+    }
+    ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+    underTest.updateUrls(new ByteArrayInputStream(index), streamed, (fileName, url) -> { });
+    ByteArrayOutputStream parsed = new ByteArrayOutputStream();
+    underTest.updateUrlsWithEvents(new ByteArrayInputStream(index), parsed, (fileName, url) -> { });
+
+    Yaml yaml = new Yaml();
+    assertThat(yaml.load(streamed.toString("UTF-8")), is((Object) yaml.load(parsed.toString("UTF-8"))));
+    assertThat(streamed.toString("UTF-8"), not(containsString("https://kubernetes-charts")));
+  }
+
+  @Test
+  public void rewriteWhileReading() throws Exception {
+    byte[] index;
+    try (InputStream in = getClass().getResourceAsStream("../orient/metadata/index.yaml")) {
+      index = IOUtils.toByteArray(in);
+    }
+    ByteArrayOutputStream pushed = new ByteArrayOutputStream();
+    underTest.updateUrls(new ByteArrayInputStream(index), pushed, (fileName, url) -> { });
+
+    byte[] pulled = underTest.rewriteUrls(new ByteArrayInputStream(index), chartUrls::put, this::toByteArray);
+
+    assertThat(pulled, is(pushed.toByteArray()));
+    assertThat(chartUrls.get("mailhog-2.2.0.tgz"), is("https://kubernetes-charts.storage.googleapis.com/mailhog-2.2.0.tgz"));
+  }
+
+  @Test(expected = UncheckedIOException.class)
+  public void readFailuresArePropagated() {
+    InputStream failing = new SequenceInputStream(
+        new ByteArrayInputStream("entries:\n  mongodb:\n".getBytes(UTF_8)),
+        new InputStream()
+        {
+          @Override
+          public int read() throws IOException {
+            throw new IOException("connection reset");
+          }
+        });
+
+    underTest.rewriteUrls(failing, chartUrls::put, this::toByteArray);
+  }
+
+  private byte[] toByteArray(final InputStream in) {
+    try {
+      return IOUtils.toByteArray(in);
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private String rewrite(final String index) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    underTest.updateUrls(new ByteArrayInputStream(index.getBytes(UTF_8)), out, chartUrls::put);
+    return new String(out.toByteArray(), UTF_8);
+  }
+}
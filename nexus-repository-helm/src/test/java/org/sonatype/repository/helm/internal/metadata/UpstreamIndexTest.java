@@ -0,0 +1,139 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.metadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.repository.helm.HelmAttributes;
+
+import com.google.common.hash.HashCode;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+
+public class UpstreamIndexTest
+    extends TestSupport
+{
+  private static final String DIGEST = "5c016fefd8942b008abf41f282906d055f4a61f650ad125746843e62efc01bd0";
+
+  @Test
+  public void entriesAreKeyedByUrl() {
+    UpstreamIndex index = parse("apiVersion: v1\n" +
+        "entries:\n" +
+        "  mongodb:\n" +
+        "  - name: mongodb\n" +
+        "    maintainers:\n" +
+        "    - name: digest\n" +
+        "      email: urls@example.com\n" +
+        "    digest: " + DIGEST + "\n" +
+        "    urls:\n" +
+        "    - mongodb-7.8.9.tgz\n" +
+        "    - charts/mongodb-7.8.9.tgz\n" +
+        "    version: 7.8.9\n" +
+        "  - name: mongodb\n" +
+        "    urls: [mongodb-7.8.8.tgz]\n" +
+        "    version: 7.8.8\n" +
+        "generated: 2020-01-01T00:00:00Z\n");
+
+    assertThat(index.size(), is(3));
+    assertThat(index.get("mongodb-7.8.9.tgz").getDigest(), is(DIGEST));
+    assertThat(index.get("charts/mongodb-7.8.9.tgz").hasDigest("sha256:" + DIGEST.toUpperCase()), is(true));
+    assertThat(index.get("mongodb-7.8.8.tgz").getDigest(), is(nullValue()));
+    assertThat(index.get("mongodb-7.8.8.tgz").hasDigest(DIGEST), is(false));
+    assertThat(index.get("mongodb-7.8.7.tgz"), is(nullValue()));
+    assertThat(index.contains("charts/mongodb-7.8.9.tgz"), is(true));
+    assertThat(index.contains("mongodb-7.8.7.tgz"), is(false));
+    assertThat(index.contains("mongodb-7.8.9.tgz.prov"), is(false));
+  }
+
+  @Test
+  public void attributesFromIndex() {
+    UpstreamIndex index = parse("apiVersion: v1\n" +
+        "entries:\n" +
+        "  mongodb:\n" +
+        "  - apiVersion: v1\n" +
+        "    appVersion: 4.2.4\n" +
+        "    created: 2020-03-19T11:08:27.163Z\n" +
+        "    description: NoSQL document-oriented database\n" +
+        "    icon:\n" +
+        "    keywords: [mongodb, database]\n" +
+        "    maintainers:\n" +
+        "    - name: Bitnami\n" +
+        "      email: containers@bitnami.com\n" +
+        "    urls: [mongodb-7.8.9.tgz]\n" +
+        "    version: 7.8.9\n" +
+        "  - description: NoSQL document-oriented database\n" +
+        "    keywords: [mongodb, database]\n" +
+        "    urls: [mongodb-7.8.8.tgz]\n" +
+        "    version: 7.8.8\n" +
+        "  - urls: [mongodb-unversioned.tgz]\n");
+
+    HelmAttributes attributes = index.get("mongodb-7.8.9.tgz").getAttributes();
+    assertThat(attributes.getName(), is("mongodb"));
+    assertThat(attributes.getVersion(), is("7.8.9"));
+    assertThat(attributes.getAppVersion(), is("4.2.4"));
+    assertThat(attributes.getDescription(), is("NoSQL document-oriented database"));
+    assertThat(attributes.getIcon(), is(nullValue()));
+    assertThat(attributes.getKeywords(), contains("mongodb", "database"));
+    assertThat(attributes.getMaintainers().get(0).get("email"), is("containers@bitnami.com"));
+
+    HelmAttributes previous = index.get("mongodb-7.8.8.tgz").getAttributes();
+    assertThat(previous.getKeywords(), sameInstance(attributes.getKeywords()));
+    assertThat(index.get("mongodb-unversioned.tgz").getAttributes(), is(nullValue()));
+  }
+
+  @Test
+  public void parseUpstreamIndex() throws Exception {
+    UpstreamIndex index;
+    try (InputStream in = getClass().getResourceAsStream("../orient/metadata/index.yaml")) {
+      index = UpstreamIndex.parse(in);
+    }
+
+    assertThat(index.size(), is(1951));
+    assertThat(index.get("https://kubernetes-charts.storage.googleapis.com/acs-engine-autoscaler-2.1.3.tgz")
+        .hasDigest(DIGEST), is(true));
+  }
+
+  @Test
+  public void indexWithoutEntries() {
+    assertThat(parse("apiVersion: v1\ngenerated: 2020-01-01T00:00:00Z\n").size(), is(0));
+    assertThat(parse("").size(), is(0));
+  }
+
+  @Test
+  public void verifyDigest() throws Exception {
+    UpstreamIndex.verifyDigest("mongodb-7.8.9.tgz", DIGEST, HashCode.fromString(DIGEST));
+    UpstreamIndex.verifyDigest("mongodb-7.8.9.tgz", null, HashCode.fromString(DIGEST));
+    try {
+      UpstreamIndex.verifyDigest("mongodb-7.8.9.tgz", DIGEST, HashCode.fromString(DIGEST.replace('5', '6')));
+      fail("Expected digest mismatch");
+    }
+    catch (IOException e) {
+      assertThat(e.getMessage(), containsString("mongodb-7.8.9.tgz"));
+    }
+  }
+
+  private static UpstreamIndex parse(final String index) {
+    return UpstreamIndex.parse(new ByteArrayInputStream(index.getBytes(UTF_8)));
+  }
+}
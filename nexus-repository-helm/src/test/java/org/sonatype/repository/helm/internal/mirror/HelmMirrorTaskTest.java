@@ -0,0 +1,182 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.mirror;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Optional;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.Repository;
+import org.sonatype.nexus.repository.manager.RepositoryManager;
+import org.sonatype.nexus.repository.types.GroupType;
+import org.sonatype.nexus.repository.view.Content;
+import org.sonatype.nexus.repository.view.payloads.BytesPayload;
+import org.sonatype.nexus.scheduling.TaskConfiguration;
+import org.sonatype.repository.helm.internal.metadata.UpstreamIndex;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonatype.nexus.repository.RepositoryTaskSupport.REPOSITORY_NAME_FIELD_ID;
+import static org.sonatype.repository.helm.internal.mirror.HelmMirrorTaskDescriptor.CHARTS_FIELD_ID;
+import static org.sonatype.repository.helm.internal.mirror.HelmMirrorTaskDescriptor.CONCURRENCY_FIELD_ID;
+import static org.sonatype.repository.helm.internal.mirror.HelmMirrorTaskDescriptor.TYPE_ID;
+import static org.sonatype.repository.helm.internal.mirror.HelmMirrorTaskDescriptor.VERSIONS_FIELD_ID;
+
+public class HelmMirrorTaskTest
+    extends TestSupport
+{
+  private static final String INDEX = "apiVersion: v1\n" +
+      "entries:\n" +
+      "  mongodb:\n" +
+      "  - urls: [mongodb-7.9.0.tgz]\n" +
+      "    version: 7.9.0\n" +
+      "  - urls: [mongodb-7.10.0.tgz]\n" +
+      "    version: 7.10.0\n" +
+      "  mysql:\n" +
+      "  - urls: [mysql-1.0.0.tgz]\n" +
+      "    version: 1.0.0\n" +
+      "  - urls: [mysql-1.1.0.tgz]\n" +
+      "    version: 1.1.0\n";
+
+  @Mock
+  private Repository repository;
+
+  @Mock
+  private HelmMirrorFacet mirror;
+
+  @Mock
+  private Repository emptyRepository;
+
+  @Mock
+  private HelmMirrorFacet emptyMirror;
+
+  @Mock
+  private RepositoryManager repositoryManager;
+
+  @Before
+  public void setUp() throws Exception {
+    when(repository.getName()).thenReturn("helm-proxy");
+    when(repository.facet(HelmMirrorFacet.class)).thenReturn(mirror);
+    when(repository.optionalFacet(HelmMirrorFacet.class)).thenReturn(Optional.of(mirror));
+    when(repositoryManager.get("helm-proxy")).thenReturn(repository);
+    when(emptyRepository.getName()).thenReturn("helm-empty");
+    when(emptyRepository.facet(HelmMirrorFacet.class)).thenReturn(emptyMirror);
+    when(emptyRepository.optionalFacet(HelmMirrorFacet.class)).thenReturn(Optional.of(emptyMirror));
+    when(repositoryManager.get("helm-empty")).thenReturn(emptyRepository);
+    when(mirror.getUpstreamIndex()).thenReturn(UpstreamIndex.parse(new ByteArrayInputStream(INDEX.getBytes(UTF_8))));
+    when(mirror.fetchChart(anyString())).thenReturn(new Content(new BytesPayload(new byte[16], "application/x-tgz")));
+  }
+
+  @Test
+  public void mirrorUncachedCharts() throws Exception {
+    when(mirror.isCached("mongodb-7.9.0.tgz")).thenReturn(true);
+
+    HelmMirrorTask task = task(null, 0);
+    task.execute();
+
+    assertThat(task.getMessage(), containsString("4/4 charts (3 downloaded, 1 already cached, 0 failed, 0 canceled)"));
+    verify(mirror, never()).fetchChart("mongodb-7.9.0.tgz");
+    verify(mirror).fetchChart("mongodb-7.10.0.tgz");
+    verify(mirror).fetchChart("mysql-1.0.0.tgz");
+    verify(mirror).fetchChart("mysql-1.1.0.tgz");
+  }
+
+  @Test
+  public void mirrorLatestVersionsOfSelectedCharts() throws Exception {
+    task("mysql", 1).execute();
+
+    verify(mirror).fetchChart("mysql-1.1.0.tgz");
+    verify(mirror, never()).fetchChart("mysql-1.0.0.tgz");
+    verify(mirror, never()).fetchChart("mongodb-7.10.0.tgz");
+  }
+
+  @Test
+  public void failWhenChartsCouldNotBeMirrored() throws Exception {
+    when(mirror.fetchChart("mysql-1.0.0.tgz")).thenThrow(new IOException("upstream failure"));
+
+    try {
+      task(null, 0).execute();
+      fail("Expected the task to fail");
+    }
+    catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("1 of 4 charts could not be mirrored into helm-proxy"));
+    }
+    verify(mirror).fetchChart("mysql-1.1.0.tgz");
+  }
+
+  @Test
+  public void failAfterMirroringTheRepositoriesThatHaveAnIndex() throws Exception {
+    when(emptyMirror.getUpstreamIndex()).thenReturn(null);
+
+    try {
+      task("helm-empty,helm-proxy", null, 0, 2).execute();
+      fail("Expected the task to fail");
+    }
+    catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is("No index.yaml could be found for helm-empty"));
+    }
+    verify(mirror).fetchChart("mysql-1.1.0.tgz");
+  }
+
+  @Test
+  public void canceledChartsAreNotCountedAsCached() throws Exception {
+    Thread runner = Thread.currentThread();
+    HelmMirrorTask task = task("helm-proxy", null, 0, 1);
+    when(mirror.fetchChart("mongodb-7.10.0.tgz")).thenAnswer(invocation -> {
+      // cancel once the next chart is waiting for its turn, so it is handed over to be canceled
+      while (runner.getState() != Thread.State.WAITING) {
+        Thread.sleep(1);
+      }
+      task.cancel();
+      return new Content(new BytesPayload(new byte[16], "application/x-tgz"));
+    });
+
+    task.execute();
+
+    assertThat(task.getMessage(), containsString("2/4 charts (1 downloaded, 0 already cached, 0 failed, 1 canceled)"));
+    verify(mirror, never()).isCached("mongodb-7.9.0.tgz");
+  }
+
+  private HelmMirrorTask task(final String charts, final int versions) {
+    return task("helm-proxy", charts, versions, 2);
+  }
+
+  private HelmMirrorTask task(final String repositories, final String charts, final int versions, final int concurrency)
+  {
+    TaskConfiguration configuration = new TaskConfiguration();
+    configuration.setId("mirror");
+    configuration.setTypeId(TYPE_ID);
+    configuration.setString(REPOSITORY_NAME_FIELD_ID, repositories);
+    configuration.setInteger(VERSIONS_FIELD_ID, versions);
+    configuration.setInteger(CONCURRENCY_FIELD_ID, concurrency);
+    if (charts != null) {
+      configuration.setString(CHARTS_FIELD_ID, charts);
+    }
+    HelmMirrorTask task = new HelmMirrorTask();
+    task.install(repositoryManager, new GroupType());
+    task.configure(configuration);
+    return task;
+  }
+}
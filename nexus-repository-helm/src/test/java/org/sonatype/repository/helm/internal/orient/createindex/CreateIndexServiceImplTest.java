@@ -31,10 +31,12 @@ import org.sonatype.nexus.transaction.TransactionModule;
 import org.sonatype.nexus.transaction.UnitOfWork;
 import org.sonatype.repository.helm.internal.orient.HelmFacet;
 import org.sonatype.repository.helm.internal.AssetKind;
+import org.sonatype.repository.helm.internal.metadata.ChartIndex;
 import org.sonatype.repository.helm.internal.orient.metadata.IndexYamlBuilder;
 
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
+import org.joda.time.DateTime;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,7 +45,6 @@ import org.mockito.Mock;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
-import static org.mockito.Matchers.anyObject;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 public class CreateIndexServiceImplTest
@@ -113,11 +114,23 @@ public class CreateIndexServiceImplTest
 
     when(assetAttributes.get("checksum", Map.class)).thenReturn(shaMap);
     when(helmFacet.browseComponentAssets(storageTx, AssetKind.HELM_PACKAGE)).thenReturn(list);
-    when(indexYamlBuilder.build(anyObject(), anyObject())).thenReturn(tempBlob);
 
-    TempBlob result = underTest.buildIndexYaml(repository);
+    ChartIndex result = underTest.buildIndex(repository);
 
-    assertThat(result, is(notNullValue()));
+    assertThat(result.countEntries(), is(1));
+  }
+
+  @Test
+  public void testWriteIndexYaml() throws Exception {
+    ChartIndex index = new ChartIndex();
+    DateTime generated = new DateTime(0L);
+    index.setGenerated(generated);
+    when(indexYamlBuilder.build(index, storageFacet)).thenReturn(tempBlob);
+
+    TempBlob result = underTest.writeIndexYaml(repository, index);
+
+    assertThat(result, is(tempBlob));
+    assertThat(index.getGenerated(), is(generated));
   }
 
   @Test
@@ -126,11 +139,11 @@ public class CreateIndexServiceImplTest
     when(assetIterator.next()).thenReturn(asset);
     when(asset.componentId()).thenReturn(null);
     when(helmFacet.browseComponentAssets(storageTx, AssetKind.HELM_PACKAGE)).thenReturn(assets);
-    when(indexYamlBuilder.build(anyObject(), anyObject())).thenReturn(tempBlob);
 
-    TempBlob result = underTest.buildIndexYaml(repository);
+    ChartIndex result = underTest.buildIndex(repository);
 
     assertThat(result, is(notNullValue()));
+    assertThat(result.countEntries(), is(0));
   }
 
   private void initializeSystemUnderTest() {
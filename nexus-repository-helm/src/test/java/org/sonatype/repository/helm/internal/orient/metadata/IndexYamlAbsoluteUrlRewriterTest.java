@@ -16,6 +16,8 @@ import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.Collections;
 
 import org.sonatype.goodies.testsupport.TestSupport;
 import org.sonatype.nexus.blobstore.api.Blob;
@@ -23,6 +25,7 @@ import org.sonatype.nexus.repository.Repository;
 import org.sonatype.nexus.repository.storage.StorageFacet;
 import org.sonatype.nexus.repository.storage.TempBlob;
 import org.sonatype.repository.helm.internal.metadata.IndexYamlAbsoluteUrlRewriter;
+import org.sonatype.repository.helm.internal.metadata.UpstreamChartUrls;
 
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
@@ -33,6 +36,7 @@ import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.either;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.CoreMatchers.startsWith;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
@@ -96,6 +100,46 @@ public class IndexYamlAbsoluteUrlRewriterTest
     checkThatAbsoluteUrlRemoved(newTempBlob.get());
   }
 
+  @Test
+  public void recordUpstreamUrlsOfRewrittenCharts() throws Exception {
+    String chartUrl = "https://kubernetes-charts.storage.googleapis.com/acs-engine-autoscaler-2.1.3.tgz";
+
+    UpstreamChartUrls elsewhere = new UpstreamChartUrls();
+    UpstreamChartUrls.Recorder recorder = elsewhere.record(new URI("https://charts.example.com/stable/"));
+    setupIndexMock(INDEX_YAML);
+    underTest.removeUrlsFromIndexYamlAndWriteToTempBlob(tempBlob, repository, recorder);
+    assertThat(elsewhere.get("acs-engine-autoscaler-2.1.3.tgz"), is(nullValue()));
+    assertThat(elsewhere.isRecorded(), is(false));
+    recorder.publish();
+    assertThat(elsewhere.get("acs-engine-autoscaler-2.1.3.tgz"), is(chartUrl));
+    assertThat(elsewhere.isRecorded(), is(true));
+
+    UpstreamChartUrls remote = new UpstreamChartUrls();
+    recorder = remote.record(new URI("https://kubernetes-charts.storage.googleapis.com/"));
+    setupIndexMock(INDEX_YAML);
+    underTest.removeUrlsFromIndexYamlAndWriteToTempBlob(tempBlob, repository, recorder);
+    recorder.publish();
+    assertThat(remote.get("acs-engine-autoscaler-2.1.3.tgz"), is(nullValue()));
+  }
+
+  @Test
+  public void restoreStoredUpstreamUrlsAfterRestart() throws Exception {
+    String chartUrl = "https://kubernetes-charts.storage.googleapis.com/acs-engine-autoscaler-2.1.3.tgz";
+
+    UpstreamChartUrls.Recorder recorder = new UpstreamChartUrls().record(new URI("https://charts.example.com/stable/"));
+    setupIndexMock(INDEX_YAML);
+    underTest.removeUrlsFromIndexYamlAndWriteToTempBlob(tempBlob, repository, recorder);
+
+    UpstreamChartUrls restarted = new UpstreamChartUrls();
+    assertThat(restarted.restore(null), is(false));
+    assertThat(restarted.restore(recorder.table()), is(true));
+    assertThat(restarted.get("acs-engine-autoscaler-2.1.3.tgz"), is(chartUrl));
+
+    // a table recorded since startup is newer than the stored one
+    restarted.restore(Collections.emptyMap());
+    assertThat(restarted.get("acs-engine-autoscaler-2.1.3.tgz"), is(chartUrl));
+  }
+
   private void checkThatAbsoluteUrlRemoved(final InputStream is) throws Exception {
     try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
       boolean checkNext = false;
@@ -0,0 +1,34 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+public class ChartVersionsTest
+    extends TestSupport
+{
+  @Test
+  public void compare() {
+    assertThat(ChartVersions.compare("1.10.0", "1.9.0"), greaterThan(0));
+    assertThat(ChartVersions.compare("1.0.0-rc.1", "1.0.0"), lessThan(0));
+    assertThat(ChartVersions.compare("1.0.0-rc.10", "1.0.0-rc.9"), greaterThan(0));
+    assertThat(ChartVersions.compare("v1.0.0+build.1", "1.0.0"), is(0));
+  }
+}
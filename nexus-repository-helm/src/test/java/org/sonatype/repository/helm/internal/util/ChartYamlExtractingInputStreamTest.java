@@ -0,0 +1,118 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class ChartYamlExtractingInputStreamTest
+    extends TestSupport
+{
+  private static final String CHART_YAML = "apiVersion: v1\nname: sample\nversion: 1.0.0\n";
+
+  @Test
+  public void extractsTheSameChartYamlAsTgzParser() throws Exception {
+    for (String chart : new String[]{"mongodb-0.4.9.tgz", "mongodb-4.0.4.tgz", "moodle-0.1.4.tgz"}) {
+      byte[] tgz = IOUtils.toByteArray(getClass().getResourceAsStream(chart));
+      String expected = IOUtils.toString(new TgzParser().getChartFromInputStream(new ByteArrayInputStream(tgz)), UTF_8);
+
+      assertThat(chart, extract(tgz, 8192), is(expected));
+      assertThat(chart, extract(tgz, 7), is(expected));
+    }
+  }
+
+  @Test
+  public void passesBytesThroughUnchanged() throws Exception {
+    byte[] tgz = IOUtils.toByteArray(getClass().getResourceAsStream("mongodb-0.4.9.tgz"));
+    try (ChartYamlExtractingInputStream in = new ChartYamlExtractingInputStream(new ByteArrayInputStream(tgz))) {
+      assertThat(IOUtils.toByteArray(in), is(tgz));
+    }
+  }
+
+  @Test
+  public void findsChartYamlAfterLargeEntries() throws Exception {
+    byte[] template = new byte[300_000];
+    new Random(1).nextBytes(template);
+    byte[] tgz = tgz(new TarArchiveEntry("sample/templates/deployment.yaml"), template);
+
+    assertThat(extract(tgz, 4096), is(CHART_YAML));
+  }
+
+  @Test
+  public void followsGnuLongNames() throws Exception {
+    StringBuilder dir = new StringBuilder();
+    while (dir.length() < 120) {
+      dir.append("nested/");
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(out))) {
+      tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_GNU);
+      addEntry(tar, new TarArchiveEntry(dir + "Chart.yaml"), CHART_YAML.getBytes(UTF_8));
+    }
+
+    assertThat(extract(out.toByteArray(), 100), is(CHART_YAML));
+  }
+
+  @Test
+  public void ignoresPayloadsThatAreNotCharts() throws Exception {
+    byte[] provenance = IOUtils.toByteArray(getClass().getResourceAsStream("mysql-1.4.0.tgz.prov"));
+    try (ChartYamlExtractingInputStream in = new ChartYamlExtractingInputStream(new ByteArrayInputStream(provenance))) {
+      assertThat(IOUtils.toByteArray(in), is(provenance));
+      assertThat(in.chartYaml().isPresent(), is(false));
+    }
+  }
+
+  private static String extract(final byte[] tgz, final int chunk) throws Exception {
+    try (ChartYamlExtractingInputStream in = new ChartYamlExtractingInputStream(new ByteArrayInputStream(tgz))) {
+      byte[] buf = new byte[chunk];
+      while (in.read(buf) != -1) {
+        // drain
+      }
+      try (InputStream chartYaml = in.chartYaml().orElseThrow(AssertionError::new)) {
+        return IOUtils.toString(chartYaml, UTF_8);
+      }
+    }
+  }
+
+  private static byte[] tgz(final TarArchiveEntry before, final byte[] content) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (TarArchiveOutputStream tar = new TarArchiveOutputStream(new GzipCompressorOutputStream(out))) {
+      addEntry(tar, before, content);
+      addEntry(tar, new TarArchiveEntry("sample/Chart.yaml"), CHART_YAML.getBytes(UTF_8));
+    }
+    return out.toByteArray();
+  }
+
+  private static void addEntry(final TarArchiveOutputStream tar, final TarArchiveEntry entry, final byte[] content)
+      throws Exception
+  {
+    entry.setSize(content.length);
+    tar.putArchiveEntry(entry);
+    tar.write(content);
+    tar.closeArchiveEntry();
+  }
+}
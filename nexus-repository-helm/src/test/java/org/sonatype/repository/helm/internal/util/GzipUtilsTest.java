@@ -0,0 +1,69 @@
+/*
+ * Sonatype Nexus (TM) Open Source Version
+ * Copyright (c) 2018-present Sonatype, Inc.
+ * All rights reserved. Includes the third-party code listed at http://links.sonatype.com/products/nexus/oss/attributions.
+ *
+ * This program and the accompanying materials are made available under the terms of the Eclipse Public License Version 1.0,
+ * which accompanies this distribution and is available at http://www.eclipse.org/legal/epl-v10.html.
+ *
+ * Sonatype Nexus (TM) Professional Version is available from Sonatype, Inc. "Sonatype" and "Sonatype Nexus" are trademarks
+ * of Sonatype, Inc. Apache Maven is a trademark of the Apache Software Foundation. M2eclipse is a trademark of the
+ * Eclipse Foundation. All other trademarks are the property of their respective owners.
+ */
+package org.sonatype.repository.helm.internal.util;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.sonatype.goodies.testsupport.TestSupport;
+import org.sonatype.nexus.repository.view.Headers;
+import org.sonatype.nexus.repository.view.Request;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Mockito.when;
+
+public class GzipUtilsTest
+    extends TestSupport
+{
+  @Mock
+  private Request request;
+
+  @Test
+  public void gzipRoundTrip() throws Exception {
+    String index = "apiVersion: v1\nentries: {}\n";
+    String result = GzipUtils.gzip(new ByteArrayInputStream(index.getBytes(UTF_8)), in -> {
+      try (GZIPInputStream gzip = new GZIPInputStream(in)) {
+        return IOUtils.toString(gzip, UTF_8);
+      }
+      catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    assertThat(result, is(index));
+  }
+
+  @Test
+  public void acceptsGzip() {
+    assertThat(acceptsGzip("gzip"), is(true));
+    assertThat(acceptsGzip("deflate, GZIP;q=0.5"), is(true));
+    assertThat(acceptsGzip("x-gzip"), is(true));
+    assertThat(acceptsGzip("gzip;q=0"), is(false));
+    assertThat(acceptsGzip("deflate, br"), is(false));
+    assertThat(acceptsGzip(null), is(false));
+  }
+
+  private boolean acceptsGzip(final String acceptEncoding) {
+    Headers headers = new Headers();
+    if (acceptEncoding != null) {
+      headers.set("Accept-Encoding", acceptEncoding);
+    }
+    when(request.getHeaders()).thenReturn(headers);
+    return GzipUtils.acceptsGzip(request);
+  }
+}
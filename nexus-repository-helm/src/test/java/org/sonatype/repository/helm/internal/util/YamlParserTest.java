@@ -12,10 +12,12 @@
  */
 package org.sonatype.repository.helm.internal.util;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,8 +32,12 @@ import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.joda.time.DateTime;
 import org.junit.Before;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.nodes.Tag;
 import org.junit.Test;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -65,6 +71,16 @@ public class YamlParserTest
     assertThat(helmYaml.get("sources"), is(equalTo(getSources())));
   }
 
+  @Test
+  public void testParseChartYamlWithUnknownTags() throws Exception {
+    String chartYaml = "name: !custom mongodb\nversion: 0.4.9\nkeywords: !list\n- database\n";
+    Map<String, Object> helmYaml = underTest.load(new ByteArrayInputStream(chartYaml.getBytes(UTF_8)));
+
+    assertThat(helmYaml.get("name"), is(equalTo("mongodb")));
+    assertThat(helmYaml.get("version").toString(), is(equalTo("0.4.9")));
+    assertThat(helmYaml.get("keywords"), is(equalTo(Collections.singletonList("database"))));
+  }
+
   @Test
   public void testWriteIndexYaml() throws Exception {
     InputStream expected = getClass().getResourceAsStream("indexresult.yaml");
@@ -78,6 +94,40 @@ public class YamlParserTest
     assertEquals(StringUtils.normalizeSpace(os.toString()), StringUtils.normalizeSpace(expectedResult));
   }
 
+  @Test
+  public void testStreamedIndexYamlMatchesDump() throws Exception {
+    ChartIndex chartIndex = createChartIndex();
+    chartIndex.setGenerated(DateTime.parse("2020-01-02T03:04:05.006Z"));
+    chartIndex.addEntry(createChartEntry("multi\nline: description", "true", "1.0", null, "1e3", null, null,
+        new ArrayList<>(), null, HelmListTestHelper.getMaintainersList()));
+
+    YamlParser.JodaTimeRepresenter representer = underTest.new JodaTimeRepresenter();
+    representer.addClassTag(ChartEntry.class, Tag.MAP);
+    String expected = new Yaml(representer, new DumperOptions()).dumpAsMap(chartIndex);
+
+    assertEquals(expected, underTest.getYamlContent(chartIndex));
+  }
+
+  @Test
+  public void testLoadWrittenIndexYaml() throws Exception {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    underTest.write(os, createChartIndex());
+
+    ChartIndex index = underTest.loadIndex(new ByteArrayInputStream(os.toByteArray()));
+
+    assertThat(index.getApiVersion(), is(equalTo("1.0")));
+    assertThat(index.countEntries(), is(3));
+    assertThat(index.getEntries().get("mongodb").size(), is(2));
+
+    ChartEntry entry = index.getEntries().get("notmongdb").get(0);
+    assertThat(entry.getVersion(), is(equalTo("1.0.0")));
+    assertThat(entry.getDigest(), is(equalTo("12345")));
+    assertThat(entry.getCreated().getMillis(), is(DateTime.parse("2018-08-13T22:05:33.023Z").getMillis()));
+    assertThat(entry.getUrls(), is(equalTo(HelmListTestHelper.getUrlList())));
+    assertThat(entry.getSources(), is(equalTo(HelmListTestHelper.getSourcesList())));
+    assertThat(entry.getMaintainers(), is(equalTo(HelmListTestHelper.getMaintainersList())));
+  }
+
   private List<String> getKeywords() {
     List<String> list = new ArrayList<>();
     list.add("mongodb");